@@ -0,0 +1,65 @@
+package cz.zcu.kiv.multicloud;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * cz.zcu.kiv.multicloud/ChecksumException.java			<br /><br />
+ *
+ * Exception for indication that the downloaded data does not match the checksum of the source file. It carries the names of the user accounts that delivered the data.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class ChecksumException extends MultiCloudException {
+
+	/** Serialization constant. */
+	private static final long serialVersionUID = 3719260874410256318L;
+
+	/** Checksum of the source file. */
+	private final String expected;
+	/** Checksum of the downloaded data. */
+	private final String actual;
+	/** Names of the user accounts that delivered the data. */
+	private final List<String> sources;
+
+	/**
+	 * Ctor with specified message, checksums and sources of the data.
+	 * @param message Message.
+	 * @param expected Checksum of the source file.
+	 * @param actual Checksum of the downloaded data.
+	 * @param sources Names of the user accounts that delivered the data.
+	 */
+	public ChecksumException(String message, String expected, String actual, List<String> sources) {
+		super(message);
+		this.expected = expected;
+		this.actual = actual;
+		this.sources = new ArrayList<>(sources);
+	}
+
+	/**
+	 * Returns the checksum of the downloaded data.
+	 * @return Checksum of the downloaded data.
+	 */
+	public String getActual() {
+		return actual;
+	}
+
+	/**
+	 * Returns the checksum of the source file.
+	 * @return Checksum of the source file.
+	 */
+	public String getExpected() {
+		return expected;
+	}
+
+	/**
+	 * Returns the names of the user accounts that delivered the data. If there is only one, the corrupted data came from it.
+	 * @return Names of the user accounts.
+	 */
+	public List<String> getSources() {
+		return sources;
+	}
+
+}
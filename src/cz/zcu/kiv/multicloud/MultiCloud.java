@@ -2,16 +2,31 @@ package cz.zcu.kiv.multicloud;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import cz.zcu.kiv.multicloud.filesystem.AccountInfoOp;
 import cz.zcu.kiv.multicloud.filesystem.AccountQuotaOp;
+import cz.zcu.kiv.multicloud.filesystem.BufferPool;
+import cz.zcu.kiv.multicloud.filesystem.ChunkJournal;
 import cz.zcu.kiv.multicloud.filesystem.CopyOp;
 import cz.zcu.kiv.multicloud.filesystem.DeleteOp;
 import cz.zcu.kiv.multicloud.filesystem.FileCloudSource;
 import cz.zcu.kiv.multicloud.filesystem.FileDownloadOp;
+import cz.zcu.kiv.multicloud.filesystem.FileListCallback;
+import cz.zcu.kiv.multicloud.filesystem.FileListIterator;
 import cz.zcu.kiv.multicloud.filesystem.FileType;
 import cz.zcu.kiv.multicloud.filesystem.FileUploadOp;
 import cz.zcu.kiv.multicloud.filesystem.FolderCreateOp;
@@ -22,6 +37,7 @@ import cz.zcu.kiv.multicloud.filesystem.Operation;
 import cz.zcu.kiv.multicloud.filesystem.ProgressListener;
 import cz.zcu.kiv.multicloud.filesystem.RenameOp;
 import cz.zcu.kiv.multicloud.filesystem.SearchOp;
+import cz.zcu.kiv.multicloud.http.HttpClientManager;
 import cz.zcu.kiv.multicloud.json.AccountInfo;
 import cz.zcu.kiv.multicloud.json.AccountQuota;
 import cz.zcu.kiv.multicloud.json.AccountSettings;
@@ -32,6 +48,7 @@ import cz.zcu.kiv.multicloud.oauth2.AuthorizationCallback;
 import cz.zcu.kiv.multicloud.oauth2.OAuth2;
 import cz.zcu.kiv.multicloud.oauth2.OAuth2Error;
 import cz.zcu.kiv.multicloud.oauth2.OAuth2ErrorType;
+import cz.zcu.kiv.multicloud.oauth2.OAuth2Settings;
 import cz.zcu.kiv.multicloud.oauth2.OAuth2SettingsException;
 import cz.zcu.kiv.multicloud.oauth2.OAuth2Token;
 import cz.zcu.kiv.multicloud.utils.AccountManager;
@@ -47,7 +64,8 @@ import cz.zcu.kiv.multicloud.utils.Utils;
  * cz.zcu.kiv.multicloud/MultiCloud.java			<br /><br />
  *
  * The MultiCloud library.
- * All methods are synchronous. For asynchronous usage, external threading should be used.
+ * All methods are synchronous and can be called from multiple threads at once. Each thread runs its operations under its own {@link cz.zcu.kiv.multicloud.OperationHandle}.
+ * Asynchronous variants of the operations return {@link cz.zcu.kiv.multicloud.OperationFuture} and run on a configurable {@link java.util.concurrent.Executor}.
  *
  * @author Jaromír Staněk
  * @version 1.0
@@ -76,19 +94,27 @@ public class MultiCloud {
 	private CredentialStore credentialStore;
 	/** User account manager. */
 	private AccountManager accountManager;
-	/** Last error that occurred during any operation. */
-	private OperationError lastError;
-	/** List of sources for downloading a file from. */
-	private final List<FileCloudSource> fileMultiDownloadSources;
-	/**	List of destinations for uploading a file to. */
-	private final List<FileCloudSource> fileMultiUploadDestinations;
+	/** Manager of the pooled HTTP clients. */
+	private final HttpClientManager clientManager;
+	/** Pool of the transfer buffers shared by all the transfers. */
+	private final BufferPool bufferPool;
+	/** Handles of the operations bound to the calling threads. */
+	private final ThreadLocal<OperationHandle> handle;
+	/** Handles of all the running operations. */
+	private final Set<OperationHandle> running;
+	/** Executor of the asynchronous operations. */
+	private Executor executor;
+	/** Default executor of the asynchronous operations, created on first use. */
+	private ExecutorService defaultExecutor;
+	/** Maximum number of parallel connections to one source of a downloaded file. */
+	private int downloadConnections;
+	/** If the uploads of files should be journaled, so that they can be resumed. */
+	private boolean resumableUploads;
 
 	/** Currently running authorization process. */
 	private OAuth2 auth;
-	/** Listener of the transfer progress. */
+	/** Default listener of the transfer progress. */
 	private ProgressListener listener;
-	/** Currently running operation. */
-	private Operation<?> op;
 	/** Lock object for concurrent method calls. */
 	private final Object lock;
 
@@ -111,11 +137,23 @@ public class MultiCloud {
 			System.err.println("Failed to load accounts: " + e.getMessage());
 		}
 		accountManager = um;
-		lastError = null;
-		fileMultiDownloadSources = new ArrayList<>();
-		fileMultiUploadDestinations = new ArrayList<>();
+		clientManager = new HttpClientManager();
+		bufferPool = new BufferPool();
+		handle = new ThreadLocal<OperationHandle>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			protected OperationHandle initialValue() {
+				return new OperationHandle();
+			}
+		};
+		running = new HashSet<>();
+		executor = null;
+		defaultExecutor = null;
+		downloadConnections = FileDownloadOp.DEFAULT_MAX_CONNECTIONS;
+		resumableUploads = false;
 		auth = null;
-		op = null;
 		lock = new Object();
 	}
 
@@ -147,14 +185,35 @@ public class MultiCloud {
 			} catch (IOException e) {
 				System.err.println("Failed to load accounts: " + e.getMessage());
 			}
+			accountManager = um;
 		} else {
 			accountManager = settings.getAccountManager();
 		}
-		lastError = null;
-		fileMultiDownloadSources = new ArrayList<>();
-		fileMultiUploadDestinations = new ArrayList<>();
+		if (settings.getClientManager() == null) {
+			clientManager = new HttpClientManager();
+		} else {
+			clientManager = settings.getClientManager();
+		}
+		if (settings.getBufferPool() == null) {
+			bufferPool = new BufferPool();
+		} else {
+			bufferPool = settings.getBufferPool();
+		}
+		handle = new ThreadLocal<OperationHandle>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			protected OperationHandle initialValue() {
+				return new OperationHandle();
+			}
+		};
+		running = new HashSet<>();
+		executor = settings.getExecutor();
+		defaultExecutor = null;
+		downloadConnections = settings.getDownloadConnections();
+		resumableUploads = settings.isResumableUploads();
 		auth = null;
-		op = null;
 		lock = new Object();
 	}
 
@@ -171,12 +230,13 @@ public class MultiCloud {
 	}
 
 	/**
-	 * Aborts the currently running operation, if any.
+	 * Aborts all the currently running operations, if any.
+	 * To abort a single operation, use {@link cz.zcu.kiv.multicloud.OperationHandle#abort()} of the thread running it.
 	 */
 	public void abortOperation() {
 		synchronized (lock) {
-			if (op != null) {
-				op.abort();
+			for (OperationHandle h: running) {
+				h.abort();
 			}
 		}
 	}
@@ -190,11 +250,6 @@ public class MultiCloud {
 	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
 	public AccountInfo accountInfo(String accountName) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
 		AccountSettings account = accountManager.getAccountSettings(accountName);
 		if (account == null) {
 			throw new MultiCloudException("User account not found.");
@@ -211,32 +266,30 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		if (token.isExpired()) {
-			refreshAccount(accountName, null);
-		}
-		synchronized (lock) {
-			op = new AccountInfoOp(token, settings.getAccountInfoRequest());
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
-		}
-		AccountInfo result = ((AccountInfoOp) op).getResult();
-		synchronized (lock) {
-			op = null;
-		}
-		return result;
+		refreshToken(accountName, token);
+		AccountInfoOp op = new AccountInfoOp(token, settings.getAccountInfoRequest());
+		op.setClient(clientManager.getClient(settings.getSettingsId()));
+		execute(op);
+		return op.getResult();
+	}
+
+	/**
+	 * Asynchronous variant of {@link #accountInfo(String)}.
+	 * @param accountName Name of the user account.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<AccountInfo> accountInfoAsync(final String accountName, OperationCallback<AccountInfo> callback) {
+		OperationHandle h = createHandle();
+		return submit(h, new Callable<AccountInfo>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public AccountInfo call() throws Exception {
+				return accountInfo(accountName);
+			}
+		}, callback);
 	}
 
 	/**
@@ -248,11 +301,6 @@ public class MultiCloud {
 	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
 	public AccountQuota accountQuota(String accountName) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
 		AccountSettings account = accountManager.getAccountSettings(accountName);
 		if (account == null) {
 			throw new MultiCloudException("User account not found.");
@@ -269,36 +317,34 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		if (token.isExpired()) {
-			refreshAccount(accountName, null);
-		}
-		synchronized (lock) {
-			op = new AccountQuotaOp(token, settings.getAccountQuotaRequest());
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
-		}
-		AccountQuota result = ((AccountQuotaOp) op).getResult();
-		synchronized (lock) {
-			op = null;
-		}
-		return result;
+		refreshToken(accountName, token);
+		AccountQuotaOp op = new AccountQuotaOp(token, settings.getAccountQuotaRequest());
+		op.setClient(clientManager.getClient(settings.getSettingsId()));
+		execute(op);
+		return op.getResult();
+	}
+
+	/**
+	 * Asynchronous variant of {@link #accountQuota(String)}.
+	 * @param accountName Name of the user account.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<AccountQuota> accountQuotaAsync(final String accountName, OperationCallback<AccountQuota> callback) {
+		OperationHandle h = createHandle();
+		return submit(h, new Callable<AccountQuota>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public AccountQuota call() throws Exception {
+				return accountQuota(accountName);
+			}
+		}, callback);
 	}
 
 	/**
-	 * Adds a new source for download from multiple cloud storage services.
+	 * Adds a new source for download from multiple cloud storage services. The source is collected in the operation handle of the calling thread.
 	 * @param accountName Name of the user account.
 	 * @param sourceFile File to be downloaded.
 	 * @throws MultiCloudException If the operation failed.
@@ -320,11 +366,14 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		fileMultiDownloadSources.add(new FileCloudSource(accountName, sourceFile, null, null, null, settings.getDownloadFileRequest(), null, token));
+		FileCloudSource source = new FileCloudSource(accountName, sourceFile, null, null, null, settings.getDownloadFileRequest(), null, token);
+		source.setTransfer(settings.getTransfer());
+		source.setClient(clientManager.getClient(settings.getSettingsId()));
+		getHandle().addDownloadSource(source);
 	}
 
 	/**
-	 * Adds a new destination for update to multiple cloud storage services.
+	 * Adds a new destination for update to multiple cloud storage services. The destination is collected in the operation handle of the calling thread.
 	 * @param accountName Name of the user account.
 	 * @param destination Destination folder to be uploaded to.
 	 * @param destinationFile Destination file to be updated.
@@ -348,11 +397,15 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		fileMultiUploadDestinations.add(new FileCloudSource(accountName, destination, destinationFile, destinationName, settings.getUpdateFileBeginRequest(), settings.getUpdateFileRequest(), settings.getUpdateFileFinishRequest(), token));
+		FileCloudSource dst = new FileCloudSource(accountName, destination, destinationFile, destinationName, settings.getUpdateFileBeginRequest(), settings.getUpdateFileRequest(), settings.getUpdateFileFinishRequest(), token);
+		dst.setStatusRequest(settings.getUploadStatusRequest());
+		dst.setTransfer(settings.getTransfer());
+		dst.setClient(clientManager.getClient(settings.getSettingsId()));
+		getHandle().addUploadDestination(dst);
 	}
 
 	/**
-	 * Adds a new destination for upload to multiple cloud storage services.
+	 * Adds a new destination for upload to multiple cloud storage services. The destination is collected in the operation handle of the calling thread.
 	 * @param accountName Name of the user account.
 	 * @param destination Destination file or folder to be uploaded to.
 	 * @param destinationName New name at the destination location.
@@ -375,7 +428,11 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		fileMultiUploadDestinations.add(new FileCloudSource(accountName, destination, null, destinationName, settings.getUploadFileBeginRequest(), settings.getUploadFileRequest(), settings.getUploadFileFinishRequest(), token));
+		FileCloudSource dst = new FileCloudSource(accountName, destination, null, destinationName, settings.getUploadFileBeginRequest(), settings.getUploadFileRequest(), settings.getUploadFileFinishRequest(), token);
+		dst.setStatusRequest(settings.getUploadStatusRequest());
+		dst.setTransfer(settings.getTransfer());
+		dst.setClient(clientManager.getClient(settings.getSettingsId()));
+		getHandle().addUploadDestination(dst);
 	}
 
 	/**
@@ -404,8 +461,13 @@ public class MultiCloud {
 		if (settings == null) {
 			throw new MultiCloudException("Cloud storage settings not found.");
 		}
+		OAuth2Settings authSettings = Utils.cloudSettingsToOAuth2Settings(settings);
+		if (authSettings == null) {
+			throw new MultiCloudException("Authorization settings incomplete.");
+		}
+		authSettings.setClient(clientManager.getClient(settings.getSettingsId()));
 		synchronized (lock) {
-			auth = new OAuth2(Utils.cloudSettingsToOAuth2Settings(settings), credentialStore);
+			auth = new OAuth2(authSettings, credentialStore);
 		}
 		if (callback != null) {
 			auth.setAuthCallback(callback);
@@ -436,6 +498,19 @@ public class MultiCloud {
 		accountManager.saveAccountSettings();
 	}
 
+	/**
+	 * Closes all the pooled HTTP connections held by this instance of the library and stops the default executor of the asynchronous operations.
+	 */
+	public void close() {
+		clientManager.close();
+		synchronized (lock) {
+			if (defaultExecutor != null) {
+				defaultExecutor.shutdown();
+				defaultExecutor = null;
+			}
+		}
+	}
+
 	/**
 	 * Copy existing file or folder to new destination.
 	 * @param accountName Name of the user account.
@@ -448,11 +523,6 @@ public class MultiCloud {
 	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
 	public FileInfo copy(String accountName, FileInfo file, FileInfo destination, String destinationName) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
 		AccountSettings account = accountManager.getAccountSettings(accountName);
 		if (account == null) {
 			throw new MultiCloudException("User account not found.");
@@ -469,9 +539,7 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		if (token.isExpired()) {
-			refreshAccount(accountName, null);
-		}
+		refreshToken(accountName, token);
 		if (file == null) {
 			throw new MultiCloudException("File or folder must be supplied.");
 		}
@@ -481,29 +549,32 @@ public class MultiCloud {
 		if (destination.getFileType() != FileType.FOLDER) {
 			throw new MultiCloudException("Destination must be a folder.");
 		}
-		synchronized (lock) {
-			op = new CopyOp(token, settings.getCopyRequest(), file, destination, destinationName);
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
-		}
-		FileInfo result = ((CopyOp) op).getResult();
-		synchronized (lock) {
-			op = null;
-		}
-		return result;
+		CopyOp op = new CopyOp(token, settings.getCopyRequest(), file, destination, destinationName);
+		op.setClient(clientManager.getClient(settings.getSettingsId()));
+		execute(op);
+		return op.getResult();
+	}
+
+	/**
+	 * Asynchronous variant of {@link #copy(String, FileInfo, FileInfo, String)}.
+	 * @param accountName Name of the user account.
+	 * @param file Original file or folder to be copied.
+	 * @param destination Folder to copy the source to.
+	 * @param destinationName File or folder name in the destination location. Null to retain original.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<FileInfo> copyAsync(final String accountName, final FileInfo file, final FileInfo destination, final String destinationName, OperationCallback<FileInfo> callback) {
+		OperationHandle h = createHandle();
+		return submit(h, new Callable<FileInfo>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public FileInfo call() throws Exception {
+				return copy(accountName, file, destination, destinationName);
+			}
+		}, callback);
 	}
 
 	/**
@@ -537,11 +608,6 @@ public class MultiCloud {
 	 * @throws OAuth2SettingsException If the authorization failed.
 	 */
 	public FileInfo createFolder(String accountName, String folderName, FileInfo parent) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
 		AccountSettings account = accountManager.getAccountSettings(accountName);
 		if (account == null) {
 			throw new MultiCloudException("User account not found.");
@@ -558,9 +624,7 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		if (token.isExpired()) {
-			refreshAccount(accountName, null);
-		}
+		refreshToken(accountName, token);
 		FileInfo useFolder = settings.getRootFolder();
 		if (parent != null) {
 			useFolder = parent;
@@ -568,29 +632,41 @@ public class MultiCloud {
 		if (useFolder.getFileType() != FileType.FOLDER) {
 			throw new MultiCloudException("Supplied file instead of folder.");
 		}
-		synchronized (lock) {
-			op = new FolderCreateOp(token, settings.getCreateDirRequest(), folderName, useFolder);
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
-		}
-		FileInfo result = ((FolderCreateOp) op).getResult();
-		synchronized (lock) {
-			op = null;
-		}
-		return result;
+		FolderCreateOp op = new FolderCreateOp(token, settings.getCreateDirRequest(), folderName, useFolder);
+		op.setClient(clientManager.getClient(settings.getSettingsId()));
+		execute(op);
+		return op.getResult();
+	}
+
+	/**
+	 * Asynchronous variant of {@link #createFolder(String, String, FileInfo)}.
+	 * @param accountName Name of the user account.
+	 * @param folderName Name of the folder.
+	 * @param parent Parent folder.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<FileInfo> createFolderAsync(final String accountName, final String folderName, final FileInfo parent, OperationCallback<FileInfo> callback) {
+		OperationHandle h = createHandle();
+		return submit(h, new Callable<FileInfo>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public FileInfo call() throws Exception {
+				return createFolder(accountName, folderName, parent);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Creates a new handle for an asynchronous operation. The handle inherits the progress listener of the calling thread.
+	 * @return Operation handle.
+	 */
+	private OperationHandle createHandle() {
+		OperationHandle h = new OperationHandle();
+		h.setListener(getHandle().getListener());
+		return h;
 	}
 
 	/**
@@ -603,11 +679,6 @@ public class MultiCloud {
 	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
 	public FileInfo delete(String accountName, FileInfo file) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
 		AccountSettings account = accountManager.getAccountSettings(accountName);
 		if (account == null) {
 			throw new MultiCloudException("User account not found.");
@@ -624,35 +695,14 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		if (token.isExpired()) {
-			refreshAccount(accountName, null);
-		}
+		refreshToken(accountName, token);
 		if (file == null) {
 			throw new MultiCloudException("File or folder must be supplied.");
 		}
-		synchronized (lock) {
-			op = new DeleteOp(token, settings.getDeleteRequest(), file);
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
-		}
-		FileInfo result = ((DeleteOp) op).getResult();
-		synchronized (lock) {
-			op = null;
-		}
-		return result;
+		DeleteOp op = new DeleteOp(token, settings.getDeleteRequest(), file);
+		op.setClient(clientManager.getClient(settings.getSettingsId()));
+		execute(op);
+		return op.getResult();
 	}
 
 	/**
@@ -672,6 +722,26 @@ public class MultiCloud {
 		accountManager.saveAccountSettings();
 	}
 
+	/**
+	 * Asynchronous variant of {@link #delete(String, FileInfo)}.
+	 * @param accountName Name of the user account.
+	 * @param file File or folder to be deleted.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<FileInfo> deleteAsync(final String accountName, final FileInfo file, OperationCallback<FileInfo> callback) {
+		OperationHandle h = createHandle();
+		return submit(h, new Callable<FileInfo>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public FileInfo call() throws Exception {
+				return delete(accountName, file);
+			}
+		}, callback);
+	}
+
 	/**
 	 * Download file from a single destination.
 	 * @param accountName Name of the user account.
@@ -684,11 +754,22 @@ public class MultiCloud {
 	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
 	public File downloadFile(String accountName, FileInfo sourceFile, File destination, boolean overwrite) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
+		return downloadFile(accountName, sourceFile, destination, overwrite, false);
+	}
+
+	/**
+	 * Download file from a single destination.
+	 * @param accountName Name of the user account.
+	 * @param sourceFile File to be downloaded.
+	 * @param destination Location to save the file to.
+	 * @param overwrite If existing files should be overwritten. Interrupted downloads with a journal next to the target are resumed regardless.
+	 * @param mapped If the target file should be memory-mapped. Files larger than {@link cz.zcu.kiv.multicloud.filesystem.FileDownloadOp#DEFAULT_MAX_MAPPED_SIZE} are written through the file channel.
+	 * @return File downloaded.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public File downloadFile(String accountName, FileInfo sourceFile, File destination, boolean overwrite, boolean mapped) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
 		AccountSettings account = accountManager.getAccountSettings(accountName);
 		if (account == null) {
 			throw new MultiCloudException("User account not found.");
@@ -705,50 +786,31 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		if (token.isExpired()) {
-			refreshAccount(accountName, null);
-		}
+		refreshToken(accountName, token);
 		File target = destination;
 		if (destination.isDirectory()) {
 			target = new File(destination, sourceFile.getName());
 		}
 		try {
-			if (destination.exists() && !overwrite) {
+			if (destination.exists() && !overwrite && !ChunkJournal.getJournalFile(target).exists()) {
 				throw new MultiCloudException("Target file already exists.");
 			} else {
 				target.createNewFile();
 			}
-			RandomAccessFile raf = new RandomAccessFile(target, "rw");
-			raf.setLength(sourceFile.getSize());
-			raf.close();
 		} catch (IOException e) {
 			throw new MultiCloudException("Failed to create the target file.");
 		}
 		List<FileCloudSource> sources = new ArrayList<>();
-		sources.add(new FileCloudSource(accountName, sourceFile, null, null, null, settings.getDownloadFileRequest(), null, token));
-		synchronized (lock) {
-			op = new FileDownloadOp(sources, target, listener);
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
-		}
-		File result = ((FileDownloadOp) op).getResult();
-		synchronized (lock) {
-			op = null;
-		}
-		return result;
+		FileCloudSource source = new FileCloudSource(accountName, sourceFile, null, null, null, settings.getDownloadFileRequest(), null, token);
+		source.setTransfer(settings.getTransfer());
+		source.setClient(clientManager.getClient(settings.getSettingsId()));
+		sources.add(source);
+		FileDownloadOp op = new FileDownloadOp(sources, target, getOperationListener());
+		op.setMapped(mapped);
+		op.setMaxConnections(getDownloadConnections());
+		op.setBufferPool(bufferPool);
+		execute(op);
+		return op.getResult();
 	}
 
 	/**
@@ -766,6 +828,84 @@ public class MultiCloud {
 		return downloadFile(accountName, sourceFile, new File(destination), overwrite);
 	}
 
+	/**
+	 * Download file from a single destination and write it to the stream. The stream receives the file in order and is flushed, but not closed, afterwards.
+	 * @param accountName Name of the user account.
+	 * @param sourceFile File to be downloaded.
+	 * @param destination Stream to write the file to.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public void downloadFile(String accountName, FileInfo sourceFile, OutputStream destination) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		downloadFile(accountName, sourceFile, Channels.newChannel(destination));
+		try {
+			destination.flush();
+		} catch (IOException e) {
+			throw new MultiCloudException("Failed to flush the output stream.");
+		}
+	}
+
+	/**
+	 * Download file from a single destination and write it to the channel. Chunks downloaded in parallel are reordered through a bounded buffer, so the channel receives the file in order. The channel is not closed afterwards.
+	 * @param accountName Name of the user account.
+	 * @param sourceFile File to be downloaded.
+	 * @param destination Channel to write the file to.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public void downloadFile(String accountName, FileInfo sourceFile, WritableByteChannel destination) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		AccountSettings account = accountManager.getAccountSettings(accountName);
+		if (account == null) {
+			throw new MultiCloudException("User account not found.");
+		}
+		if (!account.isAuthorized()) {
+			throw new MultiCloudException("User account not authorized.");
+		}
+		CloudSettings settings = cloudManager.getCloudSettings(account.getSettingsId());
+		if (settings == null) {
+			throw new MultiCloudException("Cloud storage settings not found.");
+		}
+		OAuth2Token token = credentialStore.retrieveCredential(account.getTokenId());
+		if (token == null) {
+			account.setTokenId(null);
+			throw new MultiCloudException("Access token not found.");
+		}
+		refreshToken(accountName, token);
+		List<FileCloudSource> sources = new ArrayList<>();
+		FileCloudSource source = new FileCloudSource(accountName, sourceFile, null, null, null, settings.getDownloadFileRequest(), null, token);
+		source.setTransfer(settings.getTransfer());
+		source.setClient(clientManager.getClient(settings.getSettingsId()));
+		sources.add(source);
+		FileDownloadOp op = new FileDownloadOp(sources, destination, getOperationListener());
+		op.setMaxConnections(getDownloadConnections());
+		op.setBufferPool(bufferPool);
+		execute(op);
+	}
+
+	/**
+	 * Asynchronous variant of {@link #downloadFile(String, FileInfo, File, boolean)}.
+	 * @param accountName Name of the user account.
+	 * @param sourceFile File to be downloaded.
+	 * @param destination Location to save the file to.
+	 * @param overwrite If existing files should be overwritten.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<File> downloadFileAsync(final String accountName, final FileInfo sourceFile, final File destination, final boolean overwrite, OperationCallback<File> callback) {
+		OperationHandle h = createHandle();
+		return submit(h, new Callable<File>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public File call() throws Exception {
+				return downloadFile(accountName, sourceFile, destination, overwrite);
+			}
+		}, callback);
+	}
+
 	/**
 	 * Download file from multiple cloud storage services.
 	 * @param destination Location to save the file to.
@@ -776,61 +916,47 @@ public class MultiCloud {
 	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
 	public File downloadMultiFile(File destination, boolean overwrite) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
-		if (fileMultiDownloadSources.size() == 0) {
+		return downloadMultiFile(destination, overwrite, false);
+	}
+
+	/**
+	 * Download file from multiple cloud storage services.
+	 * @param destination Location to save the file to.
+	 * @param overwrite If existing files should be overwritten. Interrupted downloads with a journal next to the target are resumed regardless.
+	 * @param mapped If the target file should be memory-mapped. Files larger than {@link cz.zcu.kiv.multicloud.filesystem.FileDownloadOp#DEFAULT_MAX_MAPPED_SIZE} are written through the file channel.
+	 * @return File downloaded.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public File downloadMultiFile(File destination, boolean overwrite, boolean mapped) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		List<FileCloudSource> sources = getHandle().takeDownloadSources();
+		if (sources.size() == 0) {
 			throw new MultiCloudException("No source supplied.");
 		}
-		FileInfo sourceFile = fileMultiDownloadSources.get(0).getFile();
+		FileInfo sourceFile = sources.get(0).getFile();
 		File target = destination;
 		if (destination.isDirectory()) {
 			target = new File(destination, sourceFile.getName());
 		}
 		try {
-			if (destination.exists() && !overwrite) {
+			if (destination.exists() && !overwrite && !ChunkJournal.getJournalFile(target).exists()) {
 				throw new MultiCloudException("Target file already exists.");
 			} else {
 				target.createNewFile();
 			}
-			RandomAccessFile raf = new RandomAccessFile(target, "rw");
-			raf.setLength(sourceFile.getSize());
-			raf.close();
 		} catch (IOException e) {
 			throw new MultiCloudException("Failed to create the target file.");
 		}
-		for (FileCloudSource source: fileMultiDownloadSources) {
-			if (source.getToken().isExpired()) {
-				refreshAccount(source.getAccountName(), null);
-			}
-		}
-		synchronized (lock) {
-			op = new FileDownloadOp(fileMultiDownloadSources, target, listener);
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			fileMultiDownloadSources.clear();
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		fileMultiDownloadSources.clear();
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
-		}
-		File result = ((FileDownloadOp) op).getResult();
-		synchronized (lock) {
-			op = null;
+		for (FileCloudSource source: sources) {
+			refreshToken(source.getAccountName(), source.getToken());
 		}
-		return result;
+		FileDownloadOp op = new FileDownloadOp(sources, target, getOperationListener());
+		op.setMapped(mapped);
+		op.setMaxConnections(getDownloadConnections());
+		op.setBufferPool(bufferPool);
+		execute(op);
+		return op.getResult();
 	}
 
 	/**
@@ -847,23 +973,165 @@ public class MultiCloud {
 	}
 
 	/**
-	 * Returns the last error that occurred during any operation.
-	 * @return Last error occurred.
+	 * Download file from multiple cloud storage services and write it to the stream. The stream receives the file in order and is flushed, but not closed, afterwards.
+	 * @param destination Stream to write the file to.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
-	public OperationError getLastError() {
-		return lastError;
+	public void downloadMultiFile(OutputStream destination) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		downloadMultiFile(Channels.newChannel(destination));
+		try {
+			destination.flush();
+		} catch (IOException e) {
+			throw new MultiCloudException("Failed to flush the output stream.");
+		}
 	}
 
 	/**
-	 * Returns the progress listener.
-	 * @return Progress listener.
+	 * Download file from multiple cloud storage services and write it to the channel. Chunks downloaded in parallel are reordered through a bounded buffer, so the channel receives the file in order. The channel is not closed afterwards.
+	 * @param destination Channel to write the file to.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public void downloadMultiFile(WritableByteChannel destination) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		List<FileCloudSource> sources = getHandle().takeDownloadSources();
+		if (sources.size() == 0) {
+			throw new MultiCloudException("No source supplied.");
+		}
+		for (FileCloudSource source: sources) {
+			refreshToken(source.getAccountName(), source.getToken());
+		}
+		FileDownloadOp op = new FileDownloadOp(sources, destination, getOperationListener());
+		op.setMaxConnections(getDownloadConnections());
+		op.setBufferPool(bufferPool);
+		execute(op);
+	}
+
+	/**
+	 * Asynchronous variant of {@link #downloadMultiFile(File, boolean)}.
+	 * @param destination Location to save the file to.
+	 * @param overwrite If existing files should be overwritten.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<File> downloadMultiFileAsync(final File destination, final boolean overwrite, OperationCallback<File> callback) {
+		OperationHandle h = createHandle();
+		for (FileCloudSource source: getHandle().takeDownloadSources()) {
+			h.addDownloadSource(source);
+		}
+		return submit(h, new Callable<File>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public File call() throws Exception {
+				return downloadMultiFile(destination, overwrite);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Executes the operation under the handle bound to the calling thread.
+	 * @param op Operation to be executed.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws AbortedException If the operation was aborted.
+	 */
+	private void execute(Operation<?> op) throws MultiCloudException {
+		OperationHandle h = getHandle();
+		h.begin(op);
+		synchronized (lock) {
+			running.add(h);
+		}
+		try {
+			op.execute();
+		} finally {
+			synchronized (lock) {
+				running.remove(h);
+			}
+			h.finish();
+		}
+		if (op.isAborted()) {
+			throw new AbortedException("Operation aborted.");
+		}
+	}
+
+	/**
+	 * Returns the maximum number of parallel connections to one source of a downloaded file.
+	 * @return Maximum number of connections per source.
+	 */
+	public int getDownloadConnections() {
+		synchronized (lock) {
+			return downloadConnections;
+		}
+	}
+
+	/**
+	 * Returns the executor of the asynchronous operations. If no executor was set, a default pool of daemon threads is created.
+	 * @return Executor of the asynchronous operations.
+	 */
+	public Executor getExecutor() {
+		synchronized (lock) {
+			if (executor != null) {
+				return executor;
+			}
+			if (defaultExecutor == null) {
+				defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+					/**
+					 * {@inheritDoc}
+					 */
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r);
+						t.setName("MultiCloud worker");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			}
+			return defaultExecutor;
+		}
+	}
+
+	/**
+	 * Returns the operation handle bound to the calling thread. The handle is created on first use.
+	 * @return Operation handle.
+	 */
+	public OperationHandle getHandle() {
+		return handle.get();
+	}
+
+	/**
+	 * Returns the last error that occurred during an operation run by the calling thread.
+	 * @return Last error occurred.
+	 */
+	public OperationError getLastError() {
+		return getHandle().getError();
+	}
+
+	/**
+	 * Returns the default progress listener.
+	 * @return Progress listener.
 	 */
 	public ProgressListener getListener() {
 		return listener;
 	}
 
 	/**
-	 * Returns the {@link cz.zcu.kiv.multicloud.utils.AccountManager}, {@link cz.zcu.kiv.multicloud.utils.CloudManager} and {@link cz.zcu.kiv.multicloud.utils.CredentialStore} used in this library instance.
+	 * Returns the progress listener for the operation run by the calling thread.
+	 * @return Listener of the operation handle, or the default listener if not set.
+	 */
+	private ProgressListener getOperationListener() {
+		ProgressListener l = getHandle().getListener();
+		if (l == null) {
+			l = listener;
+		}
+		return l;
+	}
+
+	/**
+	 * Returns the {@link cz.zcu.kiv.multicloud.utils.AccountManager}, {@link cz.zcu.kiv.multicloud.utils.CloudManager}, {@link cz.zcu.kiv.multicloud.utils.CredentialStore}, {@link cz.zcu.kiv.multicloud.http.HttpClientManager} and {@link cz.zcu.kiv.multicloud.filesystem.BufferPool} used in this library instance.
 	 * @return Settings used in the instance of the library.
 	 */
 	public MultiCloudSettings getSettings() {
@@ -871,9 +1139,24 @@ public class MultiCloud {
 		settings.setAccountManager(accountManager);
 		settings.setCloudManager(cloudManager);
 		settings.setCredentialStore(credentialStore);
+		settings.setClientManager(clientManager);
+		settings.setBufferPool(bufferPool);
+		settings.setExecutor(executor);
+		settings.setDownloadConnections(getDownloadConnections());
+		settings.setResumableUploads(isResumableUploads());
 		return settings;
 	}
 
+	/**
+	 * Determines if the uploads of files are journaled, so that they can be resumed.
+	 * @return If the uploads of files are resumable.
+	 */
+	public boolean isResumableUploads() {
+		synchronized (lock) {
+			return resumableUploads;
+		}
+	}
+
 	/**
 	 * List the contents of the supplied folder.
 	 * @param accountName Name of the user account.
@@ -913,11 +1196,22 @@ public class MultiCloud {
 	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
 	public FileInfo listFolder(String accountName, FileInfo folder, boolean showDeleted, boolean showShared) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
+		return listFolder(accountName, folder, showDeleted, showShared, null);
+	}
+
+	/**
+	 * List the contents of the supplied folder. If the callback is supplied, the contents are passed to it page by page, as soon as each page is fetched.
+	 * @param accountName Name of the user account.
+	 * @param folder Folder to be listed.
+	 * @param showDeleted If deleted content should be listed.
+	 * @param showShared If files shared with the user should be listed.
+	 * @param callback Callback for receiving the contents page by page. If null, all the contents are returned in the result.
+	 * @return Folder contents. If the callback is supplied, the contents are not included.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public FileInfo listFolder(String accountName, FileInfo folder, final boolean showDeleted, final boolean showShared, final FileListCallback callback) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
 		AccountSettings account = accountManager.getAccountSettings(accountName);
 		if (account == null) {
 			throw new MultiCloudException("User account not found.");
@@ -934,9 +1228,7 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		if (token.isExpired()) {
-			refreshAccount(accountName, null);
-		}
+		refreshToken(accountName, token);
 		FileInfo useFolder = settings.getRootFolder();
 		if (folder != null) {
 			useFolder = folder;
@@ -944,51 +1236,88 @@ public class MultiCloud {
 		if (useFolder.getFileType() != FileType.FOLDER) {
 			throw new MultiCloudException("Supplied file instead of folder.");
 		}
-		synchronized (lock) {
-			op = new FolderListOp(token, settings.getListDirBeginRequest(), settings.getListDirRequest(), useFolder, showDeleted);
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
-		}
-		FileInfo info = ((FolderListOp) op).getResult();
-		synchronized (lock) {
-			op = null;
+		FolderListOp op = new FolderListOp(token, settings.getListDirBeginRequest(), settings.getListDirRequest(), useFolder, showDeleted);
+		if (callback != null) {
+			op.setCallback(new FileListCallback() {
+				/**
+				 * {@inheritDoc}
+				 */
+				@Override
+				public boolean onPage(List<FileInfo> page) {
+					removeHidden(page, showDeleted, showShared);
+					return callback.onPage(page);
+				}
+			});
 		}
+		op.setClient(clientManager.getClient(settings.getSettingsId()));
+		execute(op);
+		FileInfo info = op.getResult();
 		if (info != null) {
-			/* remove shared files from the result */
-			if (!showShared) {
-				List<FileInfo> remove = new ArrayList<>();
-				for (FileInfo content: info.getContent()) {
-					if (content.isShared()) {
-						remove.add(content);
-					}
-				}
-				info.getContent().removeAll(remove);
-			}
-			/* remove deleted files from the result */
-			if (!showDeleted) {
-				List<FileInfo> remove = new ArrayList<>();
-				for (FileInfo content: info.getContent()) {
-					if (content.isDeleted()) {
-						remove.add(content);
+			removeHidden(info.getContent(), showDeleted, showShared);
+		}
+		return info;
+	}
+
+	/**
+	 * Asynchronous variant of {@link #listFolder(String, FileInfo, boolean, boolean)}.
+	 * @param accountName Name of the user account.
+	 * @param folder Folder to be listed.
+	 * @param showDeleted If deleted content should be listed.
+	 * @param showShared If files shared with the user should be listed.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<FileInfo> listFolderAsync(final String accountName, final FileInfo folder, final boolean showDeleted, final boolean showShared, OperationCallback<FileInfo> callback) {
+		OperationHandle h = createHandle();
+		return submit(h, new Callable<FileInfo>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public FileInfo call() throws Exception {
+				return listFolder(accountName, folder, showDeleted, showShared);
+			}
+		}, callback);
+	}
+
+	/**
+	 * List the contents of the supplied folder in the background. The contents are fetched page by page, while the caller iterates over the previous pages.
+	 * Any failure of the operation is thrown from the iterator as {@link java.lang.IllegalStateException}. The iterator should be closed, if it is not iterated to the end.
+	 * @param accountName Name of the user account.
+	 * @param folder Folder to be listed.
+	 * @param showDeleted If deleted content should be listed.
+	 * @param showShared If files shared with the user should be listed.
+	 * @return Iterator over the folder contents.
+	 */
+	public FileListIterator listFolderIterator(final String accountName, final FileInfo folder, final boolean showDeleted, final boolean showShared) {
+		final FileListIterator iterator = new FileListIterator();
+		Thread worker = new Thread() {
+			/**
+			 * Lists the folder and passes the contents to the iterator.
+			 */
+			@Override
+			public void run() {
+				/* the iterator must learn about the end even if the listing breaks unexpectedly */
+				Exception failure = new MultiCloudException("Folder listing ended unexpectedly.");
+				try {
+					if (listFolder(accountName, folder, showDeleted, showShared, iterator) == null) {
+						/* no result without exception means the first page failed */
+						OperationError error = getLastError();
+						failure = new MultiCloudException((error == null) ? "Failed to list the selected folder." : error.toString());
+					} else {
+						failure = null;
 					}
+				} catch (MultiCloudException | OAuth2SettingsException | InterruptedException | RuntimeException e) {
+					failure = e;
+				} finally {
+					iterator.finish(failure);
 				}
-				info.getContent().removeAll(remove);
 			}
-		}
-		return info;
+		};
+		worker.setName("MultiCloud folder listing");
+		worker.setDaemon(true);
+		worker.start();
+		return iterator;
 	}
 
 	/**
@@ -1001,11 +1330,6 @@ public class MultiCloud {
 	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
 	public FileInfo metadata(String accountName, FileInfo file) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
 		AccountSettings account = accountManager.getAccountSettings(accountName);
 		if (account == null) {
 			throw new MultiCloudException("User account not found.");
@@ -1022,38 +1346,37 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		if (token.isExpired()) {
-			refreshAccount(accountName, null);
-		}
+		refreshToken(accountName, token);
 		if (file == null) {
 			throw new MultiCloudException("File or folder must be supplied.");
 		}
-		synchronized (lock) {
-			op = new MetadataOp(token, settings.getMetadataRequest(), file);
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
-		}
-		FileInfo info = ((MetadataOp) op).getResult();
-		synchronized (lock) {
-			op = null;
-		}
-		return info;
+		MetadataOp op = new MetadataOp(token, settings.getMetadataRequest(), file);
+		op.setClient(clientManager.getClient(settings.getSettingsId()));
+		execute(op);
+		return op.getResult();
 	}
 
 
+	/**
+	 * Asynchronous variant of {@link #metadata(String, FileInfo)}.
+	 * @param accountName Name of the user account.
+	 * @param file File or folder for retrieving metadata.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<FileInfo> metadataAsync(final String accountName, final FileInfo file, OperationCallback<FileInfo> callback) {
+		OperationHandle h = createHandle();
+		return submit(h, new Callable<FileInfo>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public FileInfo call() throws Exception {
+				return metadata(accountName, file);
+			}
+		}, callback);
+	}
+
 	/**
 	 * Move existing file or folder to new destination.
 	 * @param accountName Name of the user account.
@@ -1066,11 +1389,6 @@ public class MultiCloud {
 	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
 	public FileInfo move(String accountName, FileInfo file, FileInfo destination, String destinationName) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
 		AccountSettings account = accountManager.getAccountSettings(accountName);
 		if (account == null) {
 			throw new MultiCloudException("User account not found.");
@@ -1087,9 +1405,7 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		if (token.isExpired()) {
-			refreshAccount(accountName, null);
-		}
+		refreshToken(accountName, token);
 		if (file == null) {
 			throw new MultiCloudException("File or folder must be supplied.");
 		}
@@ -1099,29 +1415,32 @@ public class MultiCloud {
 		if (destination.getFileType() != FileType.FOLDER) {
 			throw new MultiCloudException("Destination must be a folder.");
 		}
-		synchronized (lock) {
-			op = new MoveOp(token, settings.getMoveRequest(), file, destination, destinationName);
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
-		}
-		FileInfo result = ((MoveOp) op).getResult();
-		synchronized (lock) {
-			op = null;
-		}
-		return result;
+		MoveOp op = new MoveOp(token, settings.getMoveRequest(), file, destination, destinationName);
+		op.setClient(clientManager.getClient(settings.getSettingsId()));
+		execute(op);
+		return op.getResult();
+	}
+
+	/**
+	 * Asynchronous variant of {@link #move(String, FileInfo, FileInfo, String)}.
+	 * @param accountName Name of the user account.
+	 * @param file Original file or folder to be moved.
+	 * @param destination Folder to move the source to.
+	 * @param destinationName File or folder name in the destination location. Null to retain original.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<FileInfo> moveAsync(final String accountName, final FileInfo file, final FileInfo destination, final String destinationName, OperationCallback<FileInfo> callback) {
+		OperationHandle h = createHandle();
+		return submit(h, new Callable<FileInfo>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public FileInfo call() throws Exception {
+				return move(accountName, file, destination, destinationName);
+			}
+		}, callback);
 	}
 
 	/**
@@ -1134,11 +1453,6 @@ public class MultiCloud {
 	 * @throws InterruptedException If the authorization process was interrupted.
 	 */
 	public void refreshAccount(String accountName, AuthorizationCallback callback) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (auth != null) {
-				throw new MultiCloudException("Concurrent authorization forbidden.");
-			}
-		}
 		AccountSettings account = accountManager.getAccountSettings(accountName);
 		if (account == null) {
 			throw new MultiCloudException("User account not found.");
@@ -1150,23 +1464,24 @@ public class MultiCloud {
 		if (settings == null) {
 			throw new MultiCloudException("Cloud storage settings not found.");
 		}
-		synchronized (lock) {
-			auth = new OAuth2(Utils.cloudSettingsToOAuth2Settings(settings), credentialStore);
+		OAuth2Settings authSettings = Utils.cloudSettingsToOAuth2Settings(settings);
+		if (authSettings == null) {
+			throw new MultiCloudException("Authorization settings incomplete.");
+		}
+		authSettings.setClient(clientManager.getClient(settings.getSettingsId()));
+		OAuth2Token token = credentialStore.retrieveCredential(account.getTokenId());
+		if (token == null) {
+			account.setTokenId(null);
+			throw new MultiCloudException("Access token not found.");
 		}
+		OAuth2 refresh = new OAuth2(authSettings, credentialStore);
 		if (callback != null) {
-			auth.setAuthCallback(callback);
+			refresh.setAuthCallback(callback);
 		}
 		OAuth2Error error = new OAuth2Error();
-		try {
-			error = auth.refresh(account.getTokenId());
-		} catch (Exception e) {
-			synchronized (lock) {
-				auth = null;
-			}
-			throw e;
-		}
-		synchronized (lock) {
-			auth = null;
+		/* the token is updated in place, so concurrent refreshing of the same token must be serialized */
+		synchronized (token) {
+			error = refresh.refresh(account.getTokenId());
 		}
 		if (error.getType() != OAuth2ErrorType.SUCCESS) {
 			throw new MultiCloudException("Refreshing token failed.");
@@ -1174,6 +1489,22 @@ public class MultiCloud {
 		accountManager.saveAccountSettings();
 	}
 
+	/**
+	 * Refreshes the access token, if it is expired. Operations sharing the token wait for a single refresh.
+	 * @param accountName Name of the user account.
+	 * @param token Access token to be checked.
+	 * @throws MultiCloudException If some parameters were wrong.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	private void refreshToken(String accountName, OAuth2Token token) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		synchronized (token) {
+			if (token.isExpired()) {
+				refreshAccount(accountName, null);
+			}
+		}
+	}
+
 	/**
 	 * Renames the supplied file or folder.
 	 * @param accountName Name of the user account.
@@ -1185,11 +1516,6 @@ public class MultiCloud {
 	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
 	public FileInfo rename(String accountName, FileInfo file, String fileName) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
 		AccountSettings account = accountManager.getAccountSettings(accountName);
 		if (account == null) {
 			throw new MultiCloudException("User account not found.");
@@ -1206,35 +1532,31 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		if (token.isExpired()) {
-			refreshAccount(accountName, null);
-		}
+		refreshToken(accountName, token);
 		if (file == null) {
 			throw new MultiCloudException("File or folder must be supplied.");
 		}
-		synchronized (lock) {
-			op = new RenameOp(token, settings.getRenameRequest(), file, fileName);
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
+		RenameOp op = new RenameOp(token, settings.getRenameRequest(), file, fileName);
+		op.setClient(clientManager.getClient(settings.getSettingsId()));
+		execute(op);
+		return op.getResult();
+	}
+
+	/**
+	 * Removes the files, that should not be shown, from the list.
+	 * @param content List of files.
+	 * @param showDeleted If deleted files should be kept.
+	 * @param showShared If files shared with the user should be kept.
+	 */
+	private void removeHidden(List<FileInfo> content, boolean showDeleted, boolean showShared) {
+		List<FileInfo> remove = new ArrayList<>();
+		for (FileInfo file: content) {
+			/* remove shared and deleted files from the result */
+			if ((!showShared && file.isShared()) || (!showDeleted && file.isDeleted())) {
+				remove.add(file);
 			}
-			throw new AbortedException("Operation aborted.");
 		}
-		FileInfo result = ((RenameOp) op).getResult();
-		synchronized (lock) {
-			op = null;
-		}
-		return result;
+		content.removeAll(remove);
 	}
 
 	/**
@@ -1258,11 +1580,42 @@ public class MultiCloud {
 	}
 
 	public List<FileInfo> search(String accountName, String search, boolean showDeleted) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
+		return search(accountName, search, showDeleted, null);
+	}
+
+	/**
+	 * Asynchronous variant of {@link #rename(String, FileInfo, String)}.
+	 * @param accountName Name of the user account.
+	 * @param file File or folder to be renamed.
+	 * @param fileName New file or folder name.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<FileInfo> renameAsync(final String accountName, final FileInfo file, final String fileName, OperationCallback<FileInfo> callback) {
+		OperationHandle h = createHandle();
+		return submit(h, new Callable<FileInfo>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public FileInfo call() throws Exception {
+				return rename(accountName, file, fileName);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Search for files and folders matching the query. If the callback is supplied, the results are passed to it page by page, as soon as each page is fetched.
+	 * @param accountName Name of the user account.
+	 * @param search Search query.
+	 * @param showDeleted If deleted content should be listed.
+	 * @param callback Callback for receiving the results page by page. If null, all the results are returned.
+	 * @return Search results. If the callback is supplied, empty list.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public List<FileInfo> search(String accountName, String search, boolean showDeleted, FileListCallback callback) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
 		AccountSettings account = accountManager.getAccountSettings(accountName);
 		if (account == null) {
 			throw new MultiCloudException("User account not found.");
@@ -1279,42 +1632,151 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		if (token.isExpired()) {
-			refreshAccount(accountName, null);
-		}
-		synchronized (lock) {
-			op = new SearchOp(token, settings.getSearchRequest(), search, showDeleted);
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
+		refreshToken(accountName, token);
+		SearchOp op = new SearchOp(token, settings.getSearchRequest(), search, showDeleted);
+		op.setCallback(callback);
+		op.setClient(clientManager.getClient(settings.getSettingsId()));
+		execute(op);
+		return op.getResult();
+	}
+
+	/**
+	 * Asynchronous variant of {@link #search(String, String, boolean)}.
+	 * @param accountName Name of the user account.
+	 * @param search Search query.
+	 * @param showDeleted If deleted content should be listed.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<List<FileInfo>> searchAsync(final String accountName, final String search, final boolean showDeleted, OperationCallback<List<FileInfo>> callback) {
+		OperationHandle h = createHandle();
+		return submit(h, new Callable<List<FileInfo>>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public List<FileInfo> call() throws Exception {
+				return search(accountName, search, showDeleted);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Search for files and folders matching the query in the background. The results are fetched page by page, while the caller iterates over the previous pages.
+	 * Any failure of the operation is thrown from the iterator as {@link java.lang.IllegalStateException}. The iterator should be closed, if it is not iterated to the end.
+	 * @param accountName Name of the user account.
+	 * @param search Search query.
+	 * @param showDeleted If deleted content should be listed.
+	 * @return Iterator over the search results.
+	 */
+	public FileListIterator searchIterator(final String accountName, final String search, final boolean showDeleted) {
+		final FileListIterator iterator = new FileListIterator();
+		Thread worker = new Thread() {
+			/**
+			 * Searches for the files and passes the results to the iterator.
+			 */
+			@Override
+			public void run() {
+				/* the iterator must learn about the end even if the search breaks unexpectedly */
+				Exception failure = new MultiCloudException("Search ended unexpectedly.");
+				try {
+					if (search(accountName, search, showDeleted, iterator) == null) {
+						/* no result without exception means the first page failed */
+						OperationError error = getLastError();
+						failure = new MultiCloudException((error == null) ? "Failed to obtain search results." : error.toString());
+					} else {
+						failure = null;
+					}
+				} catch (MultiCloudException | OAuth2SettingsException | InterruptedException | RuntimeException e) {
+					failure = e;
+				} finally {
+					iterator.finish(failure);
+				}
 			}
-			throw new AbortedException("Operation aborted.");
+		};
+		worker.setName("MultiCloud search");
+		worker.setDaemon(true);
+		worker.start();
+		return iterator;
+	}
+
+	/**
+	 * Sets the maximum number of parallel connections to one source of a downloaded file. Connections are opened gradually while the throughput of the source keeps rising.
+	 * @param downloadConnections Maximum number of connections per source.
+	 */
+	public void setDownloadConnections(int downloadConnections) {
+		synchronized (lock) {
+			this.downloadConnections = downloadConnections;
 		}
-		List<FileInfo> result = ((SearchOp) op).getResult();
+	}
+
+	/**
+	 * Sets the executor of the asynchronous operations.
+	 * @param executor Executor of the asynchronous operations. If null, the default pool of daemon threads is used.
+	 */
+	public void setExecutor(Executor executor) {
 		synchronized (lock) {
-			op = null;
+			this.executor = executor;
+		}
+	}
+
+	/**
+	 * Binds the operation handle to the calling thread. All the following operations run by the thread use this handle.
+	 * @param handle Operation handle. If null, a new handle is created on next use.
+	 */
+	public void setHandle(OperationHandle handle) {
+		if (handle == null) {
+			this.handle.remove();
+		} else {
+			this.handle.set(handle);
 		}
-		return result;
 	}
 
 	/**
-	 * Sets the progress listener.
+	 * Sets the default progress listener, used by the operations whose handle has no listener set.
 	 * @param listener Listener.
 	 */
 	public void setListener(ProgressListener listener) {
 		this.listener = listener;
 	}
 
+	/**
+	 * Sets if the uploads of files should be journaled, so that an interrupted upload continues in the same upload sessions. Off by default.
+	 * The journal is written next to the uploaded file, with the {@link cz.zcu.kiv.multicloud.filesystem.SessionJournal#JOURNAL_EXTENSION} appended to its name, so the folder of the file must be writable. Uploads of streams are never journaled.
+	 * @param resumableUploads If the uploads of files are resumable.
+	 */
+	public void setResumableUploads(boolean resumableUploads) {
+		synchronized (lock) {
+			this.resumableUploads = resumableUploads;
+		}
+	}
+
+	/**
+	 * Submits the task running an operation to the executor of the asynchronous operations.
+	 * @param h Handle the operation runs under.
+	 * @param task Task running the operation.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	private <T> OperationFuture<T> submit(final OperationHandle h, final Callable<T> task, OperationCallback<T> callback) {
+		OperationFuture<T> future = new OperationFuture<>(new Callable<T>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public T call() throws Exception {
+				setHandle(h);
+				try {
+					return task.call();
+				} finally {
+					setHandle(null);
+				}
+			}
+		}, h, callback);
+		getExecutor().execute(future);
+		return future;
+	}
+
 	/**
 	 * Update the supplied file to the desired cloud storage service.
 	 * @param accountName Name of the user account.
@@ -1328,139 +1790,332 @@ public class MultiCloud {
 	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
 	public FileInfo updateFile(String accountName, FileInfo destination, FileInfo destinationFile, String destinationName, File data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
-		AccountSettings account = accountManager.getAccountSettings(accountName);
-		if (account == null) {
-			throw new MultiCloudException("User account not found.");
-		}
-		if (!account.isAuthorized()) {
-			throw new MultiCloudException("User account not authorized.");
-		}
-		CloudSettings settings = cloudManager.getCloudSettings(account.getSettingsId());
-		if (settings == null) {
-			throw new MultiCloudException("Cloud storage settings not found.");
-		}
-		OAuth2Token token = credentialStore.retrieveCredential(account.getTokenId());
-		if (token == null) {
-			account.setTokenId(null);
-			throw new MultiCloudException("Access token not found.");
-		}
-		if (token.isExpired()) {
-			refreshAccount(accountName, null);
+		return uploadSingleFile(accountName, destination, destinationFile, destinationName, true, true, data, null);
+	}
+
+	/**
+	 * Update the file in the desired cloud storage service with data read from the stream. The stream is not closed afterwards.
+	 * @param accountName Name of the user account.
+	 * @param destination Destination folder to be uploaded to.
+	 * @param destinationFile Destination file to be updated.
+	 * @param destinationName New name at the destination location.
+	 * @param data Stream to be uploaded.
+	 * @return File information about the uploaded file.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public FileInfo updateFile(String accountName, FileInfo destination, FileInfo destinationFile, String destinationName, InputStream data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		return updateFile(accountName, destination, destinationFile, destinationName, Channels.newChannel(data));
+	}
+
+	/**
+	 * Update the file in the desired cloud storage service with data read from the channel. The length of the data need not be known in advance, it is sent chunk by chunk in an upload session and its size is sent once the end of the channel is reached. The channel is not closed afterwards.
+	 * @param accountName Name of the user account.
+	 * @param destination Destination folder to be uploaded to.
+	 * @param destinationFile Destination file to be updated.
+	 * @param destinationName New name at the destination location.
+	 * @param data Channel to be uploaded.
+	 * @return File information about the uploaded file.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public FileInfo updateFile(String accountName, FileInfo destination, FileInfo destinationFile, String destinationName, ReadableByteChannel data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		return uploadSingleFile(accountName, destination, destinationFile, destinationName, true, true, null, data);
+	}
+
+	/**
+	 * Asynchronous variant of {@link #updateFile(String, FileInfo, FileInfo, String, File)}.
+	 * @param accountName Name of the user account.
+	 * @param destination Destination folder to be uploaded to.
+	 * @param destinationFile Destination file to be updated.
+	 * @param destinationName New name at the destination location.
+	 * @param data File to be uploaded.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<FileInfo> updateFileAsync(final String accountName, final FileInfo destination, final FileInfo destinationFile, final String destinationName, final File data, OperationCallback<FileInfo> callback) {
+		OperationHandle h = createHandle();
+		return submit(h, new Callable<FileInfo>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public FileInfo call() throws Exception {
+				return updateFile(accountName, destination, destinationFile, destinationName, data);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Update a file in multiple destinations.
+	 * @param data File to be uploaded.
+	 * @return File information about the uploaded file.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public FileInfo updateMultiFile(File data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		List<FileCloudSource> destinations = getHandle().takeUploadDestinations();
+		if (destinations.size() == 0) {
+			throw new MultiCloudException("No destination supplied.");
 		}
-		if (destination == null) {
-			throw new MultiCloudException("Destination folder must be supplied.");
+		if (data.isDirectory()) {
+			throw new MultiCloudException("Source must be a file.");
 		}
-		if (destination.getFileType() != FileType.FOLDER) {
-			throw new MultiCloudException("Destination must be a folder.");
+		for (FileCloudSource destination: destinations) {
+			refreshToken(destination.getAccountName(), destination.getToken());
 		}
-		List<FileCloudSource> destinations = new ArrayList<>();
-		destinations.add(new FileCloudSource(accountName, destination, destinationFile, destinationName, settings.getUpdateFileBeginRequest(), settings.getUpdateFileRequest(), settings.getUpdateFileFinishRequest(), token));
-		synchronized (lock) {
-			op = new FileUploadOp(destinations, true, data, listener);
+		FileUploadOp op = new FileUploadOp(destinations, true, data, getOperationListener());
+		op.setBufferPool(bufferPool);
+		op.setResumable(isResumableUploads());
+		execute(op);
+		if (!op.isDone()) {
+			throw new MultiCloudException("Failed to upload the file to one or more destinations.");
 		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
+		return op.getResult();
+	}
+
+	/**
+	 * Update a file in multiple destinations with data read from the stream. The stream is not closed afterwards.
+	 * @param data Stream to be uploaded.
+	 * @return File information about the uploaded file.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public FileInfo updateMultiFile(InputStream data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		return updateMultiFile(Channels.newChannel(data));
+	}
+
+	/**
+	 * Update a file in multiple destinations with data read from the channel. The data is read once and shared by all the destinations, its size is sent once the end of the channel is reached. The channel is not closed afterwards.
+	 * @param data Channel to be uploaded.
+	 * @return File information about the uploaded file.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public FileInfo updateMultiFile(ReadableByteChannel data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		List<FileCloudSource> destinations = getHandle().takeUploadDestinations();
+		if (destinations.size() == 0) {
+			throw new MultiCloudException("No destination supplied.");
 		}
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
+		for (FileCloudSource destination: destinations) {
+			refreshToken(destination.getAccountName(), destination.getToken());
 		}
-		FileInfo result = ((FileUploadOp) op).getResult();
-		synchronized (lock) {
-			op = null;
+		FileUploadOp op = new FileUploadOp(destinations, true, data, getOperationListener());
+		op.setBufferPool(bufferPool);
+		execute(op);
+		if (!op.isDone()) {
+			throw new MultiCloudException("Failed to upload the file to one or more destinations.");
 		}
-		return result;
+		return op.getResult();
 	}
 
 	/**
-	 * Update a file in multiple destinations.
+	 * Asynchronous variant of {@link #updateMultiFile(File)}.
+	 * @param data File to be uploaded.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<FileInfo> updateMultiFileAsync(final File data, OperationCallback<FileInfo> callback) {
+		OperationHandle h = createHandle();
+		for (FileCloudSource destination: getHandle().takeUploadDestinations()) {
+			h.addUploadDestination(destination);
+		}
+		return submit(h, new Callable<FileInfo>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public FileInfo call() throws Exception {
+				return updateMultiFile(data);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Upload the supplied file to the desired cloud storage service.
+	 * @param accountName Name of the user account.
+	 * @param destination Destination folder to be uploaded to.
+	 * @param destinationName New name at the destination location.
+	 * @param overwrite If the destination file should be overwritten.
 	 * @param data File to be uploaded.
 	 * @return File information about the uploaded file.
 	 * @throws MultiCloudException If the operation failed.
 	 * @throws OAuth2SettingsException If the authorization failed.
 	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
-	public FileInfo updateMultiFile(File data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
-		if (fileMultiUploadDestinations.size() == 0) {
+	public FileInfo uploadFile(String accountName, FileInfo destination, String destinationName, boolean overwrite, File data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		return uploadSingleFile(accountName, destination, null, destinationName, false, overwrite, data, null);
+	}
+
+	/**
+	 * Upload data read from the stream to the desired cloud storage service. The stream is not closed afterwards.
+	 * @param accountName Name of the user account.
+	 * @param destination Destination folder to be uploaded to.
+	 * @param destinationName New name at the destination location.
+	 * @param overwrite If the destination file should be overwritten.
+	 * @param data Stream to be uploaded.
+	 * @return File information about the uploaded file.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public FileInfo uploadFile(String accountName, FileInfo destination, String destinationName, boolean overwrite, InputStream data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		return uploadFile(accountName, destination, destinationName, overwrite, Channels.newChannel(data));
+	}
+
+	/**
+	 * Upload data read from the channel to the desired cloud storage service. The length of the data need not be known in advance, it is sent chunk by chunk in an upload session and its size is sent once the end of the channel is reached. The channel is not closed afterwards.
+	 * @param accountName Name of the user account.
+	 * @param destination Destination folder to be uploaded to.
+	 * @param destinationName New name at the destination location.
+	 * @param overwrite If the destination file should be overwritten.
+	 * @param data Channel to be uploaded.
+	 * @return File information about the uploaded file.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public FileInfo uploadFile(String accountName, FileInfo destination, String destinationName, boolean overwrite, ReadableByteChannel data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		return uploadSingleFile(accountName, destination, null, destinationName, false, overwrite, null, data);
+	}
+
+	/**
+	 * Asynchronous variant of {@link #uploadFile(String, FileInfo, String, boolean, File)}.
+	 * @param accountName Name of the user account.
+	 * @param destination Destination folder to be uploaded to.
+	 * @param destinationName New name at the destination location.
+	 * @param overwrite If the destination file should be overwritten.
+	 * @param data File to be uploaded.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<FileInfo> uploadFileAsync(final String accountName, final FileInfo destination, final String destinationName, final boolean overwrite, final File data, OperationCallback<FileInfo> callback) {
+		OperationHandle h = createHandle();
+		return submit(h, new Callable<FileInfo>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public FileInfo call() throws Exception {
+				return uploadFile(accountName, destination, destinationName, overwrite, data);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Upload a file to multiple destinations.
+	 * @param overwrite If the destination file should be overwritten.
+	 * @param data File to be uploaded.
+	 * @return File information about the uploaded file.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public FileInfo uploadMultiFile(boolean overwrite, File data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		List<FileCloudSource> destinations = getHandle().takeUploadDestinations();
+		if (destinations.size() == 0) {
 			throw new MultiCloudException("No destination supplied.");
 		}
 		if (data.isDirectory()) {
 			throw new MultiCloudException("Source must be a file.");
 		}
-		for (FileCloudSource destination: fileMultiUploadDestinations) {
-			if (destination.getToken().isExpired()) {
-				refreshAccount(destination.getAccountName(), null);
-			}
+		for (FileCloudSource destination: destinations) {
+			refreshToken(destination.getAccountName(), destination.getToken());
 		}
-		synchronized (lock) {
-			op = new FileUploadOp(fileMultiUploadDestinations, true, data, listener);
+		FileUploadOp op = new FileUploadOp(destinations, overwrite, data, getOperationListener());
+		op.setBufferPool(bufferPool);
+		op.setResumable(isResumableUploads());
+		execute(op);
+		if (!op.isDone()) {
+			throw new MultiCloudException("Failed to upload the file to one or more destinations.");
 		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			fileMultiUploadDestinations.clear();
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
+		return op.getResult();
+	}
+
+	/**
+	 * Upload a file to multiple destinations with data read from the stream. The stream is not closed afterwards.
+	 * @param overwrite If the destination file should be overwritten.
+	 * @param data Stream to be uploaded.
+	 * @return File information about the uploaded file.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public FileInfo uploadMultiFile(boolean overwrite, InputStream data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		return uploadMultiFile(overwrite, Channels.newChannel(data));
+	}
+
+	/**
+	 * Upload a file to multiple destinations with data read from the channel. The data is read once and shared by all the destinations, its size is sent once the end of the channel is reached. The channel is not closed afterwards.
+	 * @param overwrite If the destination file should be overwritten.
+	 * @param data Channel to be uploaded.
+	 * @return File information about the uploaded file.
+	 * @throws MultiCloudException If the operation failed.
+	 * @throws OAuth2SettingsException If the authorization failed.
+	 * @throws InterruptedException If the token refreshing process was interrupted.
+	 */
+	public FileInfo uploadMultiFile(boolean overwrite, ReadableByteChannel data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
+		List<FileCloudSource> destinations = getHandle().takeUploadDestinations();
+		if (destinations.size() == 0) {
+			throw new MultiCloudException("No destination supplied.");
 		}
-		fileMultiUploadDestinations.clear();
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
+		for (FileCloudSource destination: destinations) {
+			refreshToken(destination.getAccountName(), destination.getToken());
 		}
-		FileInfo result = ((FileUploadOp) op).getResult();
-		if (!((FileUploadOp) op).isDone()) {
-			synchronized (lock) {
-				op = null;
-			}
+		FileUploadOp op = new FileUploadOp(destinations, overwrite, data, getOperationListener());
+		op.setBufferPool(bufferPool);
+		execute(op);
+		if (!op.isDone()) {
 			throw new MultiCloudException("Failed to upload the file to one or more destinations.");
 		}
-		synchronized (lock) {
-			op = null;
-		}
-		return result;
+		return op.getResult();
 	}
 
 	/**
-	 * Upload the supplied file to the desired cloud storage service.
+	 * Asynchronous variant of {@link #uploadMultiFile(boolean, File)}.
+	 * @param overwrite If the destination file should be overwritten.
+	 * @param data File to be uploaded.
+	 * @param callback Callback notified when the operation finishes. Can be null.
+	 * @return Future result of the operation.
+	 */
+	public OperationFuture<FileInfo> uploadMultiFileAsync(final boolean overwrite, final File data, OperationCallback<FileInfo> callback) {
+		OperationHandle h = createHandle();
+		for (FileCloudSource destination: getHandle().takeUploadDestinations()) {
+			h.addUploadDestination(destination);
+		}
+		return submit(h, new Callable<FileInfo>() {
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public FileInfo call() throws Exception {
+				return uploadMultiFile(overwrite, data);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Uploads the file or the data read from the channel to a single destination in the desired cloud storage service. Exactly one of the file and the channel is supplied.
+	 * Only uploads of files can query the status of the upload session and be journaled, the channel cannot be read again.
 	 * @param accountName Name of the user account.
 	 * @param destination Destination folder to be uploaded to.
+	 * @param destinationFile Destination file to be updated. Null for a new file.
 	 * @param destinationName New name at the destination location.
+	 * @param update If the update requests should be used instead of the upload ones.
 	 * @param overwrite If the destination file should be overwritten.
-	 * @param data File to be uploaded.
+	 * @param file File to be uploaded. Null if the channel is uploaded.
+	 * @param channel Channel to be uploaded. Null if the file is uploaded.
 	 * @return File information about the uploaded file.
 	 * @throws MultiCloudException If the operation failed.
 	 * @throws OAuth2SettingsException If the authorization failed.
 	 * @throws InterruptedException If the token refreshing process was interrupted.
 	 */
-	public FileInfo uploadFile(String accountName, FileInfo destination, String destinationName, boolean overwrite, File data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
+	private FileInfo uploadSingleFile(String accountName, FileInfo destination, FileInfo destinationFile, String destinationName, boolean update, boolean overwrite, File file, ReadableByteChannel channel) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
 		AccountSettings account = accountManager.getAccountSettings(accountName);
 		if (account == null) {
 			throw new MultiCloudException("User account not found.");
@@ -1477,9 +2132,7 @@ public class MultiCloud {
 			account.setTokenId(null);
 			throw new MultiCloudException("Access token not found.");
 		}
-		if (token.isExpired()) {
-			refreshAccount(accountName, null);
-		}
+		refreshToken(accountName, token);
 		if (destination == null) {
 			throw new MultiCloudException("Destination folder must be supplied.");
 		}
@@ -1487,89 +2140,31 @@ public class MultiCloud {
 			throw new MultiCloudException("Destination must be a folder.");
 		}
 		List<FileCloudSource> destinations = new ArrayList<>();
-		destinations.add(new FileCloudSource(accountName, destination, null, destinationName, settings.getUploadFileBeginRequest(), settings.getUploadFileRequest(), settings.getUploadFileFinishRequest(), token));
-		synchronized (lock) {
-			op = new FileUploadOp(destinations, overwrite, data, listener);
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
-		}
-		FileInfo result = ((FileUploadOp) op).getResult();
-		synchronized (lock) {
-			op = null;
-		}
-		return result;
-	}
-
-	/**
-	 * Upload a file to multiple destinations.
-	 * @param overwrite If the destination file should be overwritten.
-	 * @param data File to be uploaded.
-	 * @return File information about the uploaded file.
-	 * @throws MultiCloudException If the operation failed.
-	 * @throws OAuth2SettingsException If the authorization failed.
-	 * @throws InterruptedException If the token refreshing process was interrupted.
-	 */
-	public FileInfo uploadMultiFile(boolean overwrite, File data) throws MultiCloudException, OAuth2SettingsException, InterruptedException {
-		synchronized (lock) {
-			if (op != null) {
-				throw new MultiCloudException("Concurrent operation forbidden.");
-			}
-		}
-		if (fileMultiUploadDestinations.size() == 0) {
-			throw new MultiCloudException("No destination supplied.");
-		}
-		if (data.isDirectory()) {
-			throw new MultiCloudException("Source must be a file.");
-		}
-		for (FileCloudSource destination: fileMultiUploadDestinations) {
-			if (destination.getToken().isExpired()) {
-				refreshAccount(destination.getAccountName(), null);
-			}
-		}
-		synchronized (lock) {
-			op = new FileUploadOp(fileMultiUploadDestinations, overwrite, data, listener);
-		}
-		try {
-			op.execute();
-		} catch (MultiCloudException e) {
-			fileMultiUploadDestinations.clear();
-			synchronized (lock) {
-				op = null;
-			}
-			throw e;
-		}
-		fileMultiUploadDestinations.clear();
-		lastError = op.getError();
-		if (op.isAborted()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new AbortedException("Operation aborted.");
-		}
-		FileInfo result = ((FileUploadOp) op).getResult();
-		if (!((FileUploadOp) op).isDone()) {
-			synchronized (lock) {
-				op = null;
-			}
-			throw new MultiCloudException("Failed to upload the file to one or more destinations.");
+		FileCloudSource dst;
+		if (update) {
+			dst = new FileCloudSource(accountName, destination, destinationFile, destinationName, settings.getUpdateFileBeginRequest(), settings.getUpdateFileRequest(), settings.getUpdateFileFinishRequest(), token);
+		} else {
+			dst = new FileCloudSource(accountName, destination, null, destinationName, settings.getUploadFileBeginRequest(), settings.getUploadFileRequest(), settings.getUploadFileFinishRequest(), token);
+		}
+		if (file != null) {
+			dst.setStatusRequest(settings.getUploadStatusRequest());
+		}
+		dst.setTransfer(settings.getTransfer());
+		dst.setClient(clientManager.getClient(settings.getSettingsId()));
+		destinations.add(dst);
+		FileUploadOp op;
+		if (file != null) {
+			op = new FileUploadOp(destinations, overwrite, file, getOperationListener());
+			op.setResumable(isResumableUploads());
+		} else {
+			op = new FileUploadOp(destinations, overwrite, channel, getOperationListener());
 		}
-		synchronized (lock) {
-			op = null;
+		op.setBufferPool(bufferPool);
+		execute(op);
+		if (!op.isDone()) {
+			throw new MultiCloudException("Failed to upload the file.");
 		}
-		return result;
+		return op.getResult();
 	}
 
 	/**
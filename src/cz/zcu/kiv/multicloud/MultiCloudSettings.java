@@ -1,5 +1,10 @@
 package cz.zcu.kiv.multicloud;
 
+import java.util.concurrent.Executor;
+
+import cz.zcu.kiv.multicloud.filesystem.BufferPool;
+import cz.zcu.kiv.multicloud.filesystem.FileDownloadOp;
+import cz.zcu.kiv.multicloud.http.HttpClientManager;
 import cz.zcu.kiv.multicloud.utils.AccountManager;
 import cz.zcu.kiv.multicloud.utils.CloudManager;
 import cz.zcu.kiv.multicloud.utils.CredentialStore;
@@ -21,6 +26,16 @@ public class MultiCloudSettings {
 	private CredentialStore credentialStore;
 	/** User account manager. */
 	private AccountManager accountManager;
+	/** Manager of the pooled HTTP clients. */
+	private HttpClientManager clientManager;
+	/** Pool of the transfer buffers. */
+	private BufferPool bufferPool;
+	/** Executor of the asynchronous operations. */
+	private Executor executor;
+	/** Maximum number of parallel connections to one source of a downloaded file. */
+	private int downloadConnections;
+	/** If the uploads of files should be journaled, so that they can be resumed. */
+	private boolean resumableUploads;
 
 	/**
 	 * Ctor.
@@ -29,6 +44,11 @@ public class MultiCloudSettings {
 		cloudManager = null;
 		credentialStore = null;
 		accountManager = null;
+		clientManager = null;
+		bufferPool = null;
+		executor = null;
+		downloadConnections = FileDownloadOp.DEFAULT_MAX_CONNECTIONS;
+		resumableUploads = false;
 	}
 
 	/**
@@ -39,6 +59,22 @@ public class MultiCloudSettings {
 		return accountManager;
 	}
 
+	/**
+	 * Returns the {@link cz.zcu.kiv.multicloud.filesystem.BufferPool} used.
+	 * @return Pool of the transfer buffers.
+	 */
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Returns the {@link cz.zcu.kiv.multicloud.http.HttpClientManager} used.
+	 * @return Manager of the pooled HTTP clients.
+	 */
+	public HttpClientManager getClientManager() {
+		return clientManager;
+	}
+
 	/**
 	 * Returns the {@link cz.zcu.kiv.multicloud.utils.CloudManager} used.
 	 * @return Cloud settings manager.
@@ -55,6 +91,30 @@ public class MultiCloudSettings {
 		return credentialStore;
 	}
 
+	/**
+	 * Returns the maximum number of parallel connections to one source of a downloaded file.
+	 * @return Maximum number of connections per source.
+	 */
+	public int getDownloadConnections() {
+		return downloadConnections;
+	}
+
+	/**
+	 * Returns the {@link java.util.concurrent.Executor} used for asynchronous operations.
+	 * @return Executor of the asynchronous operations.
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Determines if the uploads of files are journaled, so that they can be resumed.
+	 * @return If the uploads of files are resumable.
+	 */
+	public boolean isResumableUploads() {
+		return resumableUploads;
+	}
+
 	/**
 	 * Sets the {@link cz.zcu.kiv.multicloud.utils.AccountManager} to be used.
 	 * @param accountManager User account manager.
@@ -63,6 +123,22 @@ public class MultiCloudSettings {
 		this.accountManager = accountManager;
 	}
 
+	/**
+	 * Sets the {@link cz.zcu.kiv.multicloud.filesystem.BufferPool} to be used. Its memory limit caps the memory taken by the transfer buffers of all the transfers together.
+	 * @param bufferPool Pool of the transfer buffers.
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Sets the {@link cz.zcu.kiv.multicloud.http.HttpClientManager} to be used.
+	 * @param clientManager Manager of the pooled HTTP clients.
+	 */
+	public void setClientManager(HttpClientManager clientManager) {
+		this.clientManager = clientManager;
+	}
+
 	/**
 	 * Sets the {@link cz.zcu.kiv.multicloud.utils.CloudManager} to be used.
 	 * @param cloudManager Cloud manager.
@@ -79,4 +155,28 @@ public class MultiCloudSettings {
 		this.credentialStore = store;
 	}
 
+	/**
+	 * Sets the maximum number of parallel connections to one source of a downloaded file.
+	 * @param downloadConnections Maximum number of connections per source.
+	 */
+	public void setDownloadConnections(int downloadConnections) {
+		this.downloadConnections = downloadConnections;
+	}
+
+	/**
+	 * Sets the {@link java.util.concurrent.Executor} to be used for asynchronous operations.
+	 * @param executor Executor of the asynchronous operations.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets if the uploads of files should be journaled next to the uploaded file, so that they can be resumed. Off by default.
+	 * @param resumableUploads If the uploads of files are resumable.
+	 */
+	public void setResumableUploads(boolean resumableUploads) {
+		this.resumableUploads = resumableUploads;
+	}
+
 }
@@ -0,0 +1,27 @@
+package cz.zcu.kiv.multicloud;
+
+/**
+ * cz.zcu.kiv.multicloud/OperationCallback.java			<br /><br />
+ *
+ * Callback for receiving the outcome of an asynchronous operation. The callback is invoked from the thread, that finished the operation.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ * @param <T> Type of the result.
+ */
+public interface OperationCallback<T> {
+
+	/**
+	 * Method called when the operation finished successfully.
+	 * @param result Result of the operation.
+	 */
+	void onCompleted(T result);
+
+	/**
+	 * Method called when the operation failed or was aborted.
+	 * @param e Cause of the failure. Aborted operations report {@link cz.zcu.kiv.multicloud.AbortedException}.
+	 */
+	void onFailed(Exception e);
+
+}
@@ -0,0 +1,89 @@
+package cz.zcu.kiv.multicloud;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * cz.zcu.kiv.multicloud/OperationFuture.java			<br /><br />
+ *
+ * Pending result of an asynchronous operation. Cancelling the future aborts the underlying operation through its {@link cz.zcu.kiv.multicloud.OperationHandle}.
+ * Optional {@link cz.zcu.kiv.multicloud.OperationCallback} is notified once the operation finishes.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ * @param <T> Type of the result.
+ */
+public class OperationFuture<T> extends FutureTask<T> {
+
+	/** Handle of the operation. */
+	private final OperationHandle handle;
+	/** Callback notified on completion. */
+	private final OperationCallback<T> callback;
+
+	/**
+	 * Ctor with the task, its handle and callback supplied.
+	 * @param task Task running the operation.
+	 * @param handle Handle of the operation.
+	 * @param callback Callback notified on completion. Can be null.
+	 */
+	public OperationFuture(Callable<T> task, OperationHandle handle, OperationCallback<T> callback) {
+		super(task);
+		this.handle = handle;
+		this.callback = callback;
+	}
+
+	/**
+	 * Aborts the operation and cancels the future.
+	 * @param mayInterruptIfRunning If the thread running the operation should be interrupted.
+	 * @return If the future was cancelled.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (isDone()) {
+			return false;
+		}
+		handle.abort();
+		return super.cancel(mayInterruptIfRunning);
+	}
+
+	/**
+	 * Notifies the callback about the outcome of the operation.
+	 */
+	@Override
+	protected void done() {
+		if (callback == null) {
+			return;
+		}
+		T result = null;
+		try {
+			result = get();
+		} catch (CancellationException e) {
+			callback.onFailed(new AbortedException("Operation aborted."));
+			return;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				callback.onFailed((Exception) e.getCause());
+			} else {
+				callback.onFailed(e);
+			}
+			return;
+		} catch (InterruptedException e) {
+			/* cannot happen, the future is already done */
+			callback.onFailed(e);
+			return;
+		}
+		callback.onCompleted(result);
+	}
+
+	/**
+	 * Returns the handle of the operation.
+	 * @return Operation handle.
+	 */
+	public OperationHandle getHandle() {
+		return handle;
+	}
+
+}
@@ -0,0 +1,186 @@
+package cz.zcu.kiv.multicloud;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cz.zcu.kiv.multicloud.filesystem.FileCloudSource;
+import cz.zcu.kiv.multicloud.filesystem.Operation;
+import cz.zcu.kiv.multicloud.filesystem.ProgressListener;
+import cz.zcu.kiv.multicloud.json.OperationError;
+
+/**
+ * cz.zcu.kiv.multicloud/OperationHandle.java			<br /><br />
+ *
+ * Handle of the operations run by the {@link cz.zcu.kiv.multicloud.MultiCloud} library on behalf of one caller.
+ * The handle can be passed to another thread to abort the running operation. It also keeps the error of the last operation, the progress listener and the sources and destinations collected for transfers from or to multiple cloud storage services.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class OperationHandle {
+
+	/** Currently running operation. */
+	private Operation<?> op;
+	/** Error of the last finished operation. */
+	private OperationError error;
+	/** Listener of the transfer progress. */
+	private ProgressListener listener;
+	/** If the abortion was requested. */
+	private boolean aborted;
+	/** List of sources for downloading a file from. */
+	private final List<FileCloudSource> downloadSources;
+	/** List of destinations for uploading a file to. */
+	private final List<FileCloudSource> uploadDestinations;
+	/** Synchronization object. */
+	private final Object lock;
+
+	/**
+	 * Empty ctor.
+	 */
+	public OperationHandle() {
+		op = null;
+		error = null;
+		listener = null;
+		aborted = false;
+		downloadSources = new ArrayList<>();
+		uploadDestinations = new ArrayList<>();
+		lock = new Object();
+	}
+
+	/**
+	 * Aborts the running operation. If no operation is running, the next operation started with this handle is aborted.
+	 */
+	public void abort() {
+		synchronized (lock) {
+			aborted = true;
+			if (op != null) {
+				op.abort();
+			}
+		}
+	}
+
+	/**
+	 * Adds a new source for download from multiple cloud storage services.
+	 * @param source Source to be added.
+	 */
+	void addDownloadSource(FileCloudSource source) {
+		synchronized (lock) {
+			downloadSources.add(source);
+		}
+	}
+
+	/**
+	 * Adds a new destination for upload to multiple cloud storage services.
+	 * @param destination Destination to be added.
+	 */
+	void addUploadDestination(FileCloudSource destination) {
+		synchronized (lock) {
+			uploadDestinations.add(destination);
+		}
+	}
+
+	/**
+	 * Marks the operation as running under this handle.
+	 * @param op Operation to be run.
+	 * @throws AbortedException If the abortion was requested before the operation started.
+	 */
+	void begin(Operation<?> op) throws AbortedException {
+		synchronized (lock) {
+			if (aborted) {
+				aborted = false;
+				throw new AbortedException("Operation aborted.");
+			}
+			this.op = op;
+			error = null;
+		}
+	}
+
+	/**
+	 * Marks the running operation as finished and remembers its error.
+	 */
+	void finish() {
+		synchronized (lock) {
+			if (op != null) {
+				error = op.getError();
+				op = null;
+			}
+			aborted = false;
+		}
+	}
+
+	/**
+	 * Returns the error of the last finished operation.
+	 * @return Error of the last operation.
+	 */
+	public OperationError getError() {
+		synchronized (lock) {
+			return error;
+		}
+	}
+
+	/**
+	 * Returns the progress listener.
+	 * @return Progress listener.
+	 */
+	public ProgressListener getListener() {
+		synchronized (lock) {
+			return listener;
+		}
+	}
+
+	/**
+	 * Determines if the abortion was requested and not yet handled.
+	 * @return If the abortion was requested.
+	 */
+	public boolean isAborted() {
+		synchronized (lock) {
+			return aborted;
+		}
+	}
+
+	/**
+	 * Determines if an operation is running under this handle.
+	 * @return If an operation is running.
+	 */
+	public boolean isRunning() {
+		synchronized (lock) {
+			return op != null;
+		}
+	}
+
+	/**
+	 * Sets the progress listener. If not set, the listener of the library is used.
+	 * @param listener Progress listener.
+	 */
+	public void setListener(ProgressListener listener) {
+		synchronized (lock) {
+			this.listener = listener;
+		}
+	}
+
+	/**
+	 * Returns and clears the collected sources for download from multiple cloud storage services.
+	 * @return Collected sources.
+	 */
+	List<FileCloudSource> takeDownloadSources() {
+		synchronized (lock) {
+			List<FileCloudSource> sources = new ArrayList<>(downloadSources);
+			downloadSources.clear();
+			return sources;
+		}
+	}
+
+	/**
+	 * Returns and clears the collected destinations for upload to multiple cloud storage services.
+	 * @return Collected destinations.
+	 */
+	List<FileCloudSource> takeUploadDestinations() {
+		synchronized (lock) {
+			List<FileCloudSource> destinations = new ArrayList<>(uploadDestinations);
+			uploadDestinations.clear();
+			return destinations;
+		}
+	}
+
+}
@@ -5,7 +5,6 @@ import java.io.IOException;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 
-import com.fasterxml.jackson.databind.JsonNode;
 
 import cz.zcu.kiv.multicloud.MultiCloudException;
 import cz.zcu.kiv.multicloud.json.AccountInfo;
@@ -79,8 +78,7 @@ public class AccountInfoOp extends Operation<AccountInfo> {
 						if (response.getStatusLine().getStatusCode() >= 400) {
 							parseOperationError(response);
 						} else {
-							JsonNode tree = parseJsonResponse(response);
-							info = json.getMapper().treeToValue(tree, AccountInfo.class);
+							info = parseJsonResponse(response, AccountInfo.class);
 						}
 					} catch (IllegalStateException | IOException e) {
 						/* return null value instead of throwing exception */
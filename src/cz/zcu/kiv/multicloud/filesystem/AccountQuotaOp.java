@@ -5,7 +5,6 @@ import java.io.IOException;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 
-import com.fasterxml.jackson.databind.JsonNode;
 
 import cz.zcu.kiv.multicloud.MultiCloudException;
 import cz.zcu.kiv.multicloud.json.AccountQuota;
@@ -79,8 +78,7 @@ public class AccountQuotaOp extends Operation<AccountQuota> {
 						if (response.getStatusLine().getStatusCode() >= 400) {
 							parseOperationError(response);
 						} else {
-							JsonNode tree = parseJsonResponse(response);
-							quota = json.getMapper().treeToValue(tree, AccountQuota.class);
+							quota = parseJsonResponse(response, AccountQuota.class);
 						}
 					} catch (IllegalStateException | IOException e) {
 						/* return null value instead of throwing exception */
@@ -0,0 +1,151 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/BufferPool.java			<br /><br />
+ *
+ * Pool of direct byte buffers shared by the transfers. Buffers are borrowed for the time of a transfer and returned afterwards, so they are reused instead of allocated for every chunk.
+ * The total capacity of the buffers created by the pool never exceeds the memory limit. When the limit is reached, borrowers wait until a buffer is returned.
+ * Idle buffers of a different size are discarded to make room, their memory is released by the garbage collector.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class BufferPool {
+
+	/** Default memory limit of the pool, set to 64 MiB. */
+	public static final long DEFAULT_MEMORY_LIMIT = 64 * 1024 * 1024;
+
+	/** Maximum total capacity of the buffers. */
+	private long memoryLimit;
+	/** Total capacity of the buffers created and not discarded. */
+	private long allocated;
+	/** Total capacity of the idle buffers. */
+	private long idleBytes;
+	/** Idle buffers by their capacity. */
+	private final Map<Integer, LinkedList<ByteBuffer>> idle;
+
+	/**
+	 * Empty ctor.
+	 */
+	public BufferPool() {
+		this(DEFAULT_MEMORY_LIMIT);
+	}
+
+	/**
+	 * Ctor with the memory limit.
+	 * @param memoryLimit Maximum total capacity of the buffers.
+	 */
+	public BufferPool(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+		this.allocated = 0;
+		this.idleBytes = 0;
+		this.idle = new HashMap<>();
+	}
+
+	/**
+	 * Borrows a buffer of the capacity. If the memory limit does not allow creating it, waits until another buffer is returned.
+	 * A buffer larger than the limit itself is created only when no other buffer exists.
+	 * @param capacity Capacity of the buffer.
+	 * @return Cleared buffer.
+	 * @throws InterruptedException If the waiting was interrupted.
+	 */
+	public synchronized ByteBuffer acquire(int capacity) throws InterruptedException {
+		while (true) {
+			LinkedList<ByteBuffer> buffers = idle.get(capacity);
+			if (buffers != null && !buffers.isEmpty()) {
+				ByteBuffer buffer = buffers.poll();
+				idleBytes -= capacity;
+				buffer.clear();
+				return buffer;
+			}
+			if (allocated + capacity > memoryLimit) {
+				discard(allocated + capacity - memoryLimit);
+			}
+			if (allocated + capacity <= memoryLimit || allocated == 0) {
+				allocated += capacity;
+				return ByteBuffer.allocateDirect(capacity);
+			}
+			wait();
+		}
+	}
+
+	/**
+	 * Discards idle buffers until enough memory is freed or no idle buffer is left.
+	 * @param needed Number of bytes to be freed.
+	 */
+	private void discard(long needed) {
+		long freed = 0;
+		Iterator<LinkedList<ByteBuffer>> it = idle.values().iterator();
+		while (freed < needed && it.hasNext()) {
+			LinkedList<ByteBuffer> buffers = it.next();
+			while (freed < needed && !buffers.isEmpty()) {
+				int capacity = buffers.poll().capacity();
+				freed += capacity;
+				allocated -= capacity;
+				idleBytes -= capacity;
+			}
+			if (buffers.isEmpty()) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Returns the total capacity of the buffers created by the pool, both borrowed and idle.
+	 * @return Memory used by the pool.
+	 */
+	public synchronized long getAllocated() {
+		return allocated;
+	}
+
+	/**
+	 * Returns the maximum total capacity of the buffers.
+	 * @return Memory limit of the pool.
+	 */
+	public synchronized long getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	/**
+	 * Returns the borrowed buffer to the pool and wakes up the waiting borrowers.
+	 * @param buffer Buffer to be returned.
+	 */
+	public synchronized void release(ByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		if (allocated > memoryLimit) {
+			/* the limit was lowered meanwhile */
+			allocated -= buffer.capacity();
+		} else {
+			LinkedList<ByteBuffer> buffers = idle.get(buffer.capacity());
+			if (buffers == null) {
+				buffers = new LinkedList<>();
+				idle.put(buffer.capacity(), buffers);
+			}
+			buffers.add(buffer);
+			idleBytes += buffer.capacity();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Sets the maximum total capacity of the buffers. Buffers already borrowed are not affected.
+	 * @param memoryLimit Memory limit of the pool.
+	 */
+	public synchronized void setMemoryLimit(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+		if (allocated > memoryLimit) {
+			discard(allocated - memoryLimit);
+		}
+		notifyAll();
+	}
+
+}
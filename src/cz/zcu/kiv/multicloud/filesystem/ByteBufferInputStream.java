@@ -0,0 +1,63 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/ByteBufferInputStream.java			<br /><br />
+ *
+ * Input stream reading the remaining content of a byte buffer. Reading moves the position of the buffer.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	/** Buffer to be read. */
+	private final ByteBuffer buffer;
+
+	/**
+	 * Ctor with the buffer.
+	 * @param buffer Buffer to be read.
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int read() {
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		return buffer.get() & 0xff;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		int read = Math.min(len, buffer.remaining());
+		buffer.get(b, off, read);
+		return read;
+	}
+
+}
@@ -0,0 +1,196 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cz.zcu.kiv.multicloud.json.DownloadJournal;
+import cz.zcu.kiv.multicloud.json.FileInfo;
+import cz.zcu.kiv.multicloud.json.Json;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/ChunkJournal.java			<br /><br />
+ *
+ * Sidecar journal of a download, stored next to the target file. It records which units of the file were already written, so that an interrupted download can be resumed by fetching only the missing parts.
+ * Data written to the target file reaches the operating system before it is recorded, so the journal survives the termination of the JVM.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class ChunkJournal {
+
+	/** Extension appended to the name of the target file. */
+	public static final String JOURNAL_EXTENSION = ".mcjournal";
+	/** Interval in milliseconds between two saves of the journal during the download. */
+	public static final long SAVE_INTERVAL = 1000;
+
+	/** Journal file. */
+	private final File file;
+	/** Target file of the download. */
+	private final File target;
+	/** Persisted state of the download. */
+	private final DownloadJournal journal;
+	/** Number of bytes written to the units not yet completed. */
+	private final Map<Long, Long> partial;
+	/** If the journal changed since last save. */
+	private boolean changed;
+
+	/**
+	 * Ctor with the target file and the source file.
+	 * @param target Target file of the download.
+	 * @param source Source file of the download.
+	 * @param unitSize Size of one unit of the bitmap.
+	 */
+	public ChunkJournal(File target, FileInfo source, long unitSize) {
+		this.file = getJournalFile(target);
+		this.target = target;
+		this.journal = new DownloadJournal();
+		journal.setId(source.getId());
+		journal.setChecksum(source.getChecksum());
+		journal.setSize(source.getSize());
+		journal.setUnitSize(unitSize);
+		journal.setBitmap(new byte[(int) ((getUnitCount() + 7) / 8)]);
+		this.partial = new HashMap<>();
+		this.changed = true;
+	}
+
+	/**
+	 * Deletes the journal file.
+	 */
+	public synchronized void delete() {
+		file.delete();
+		changed = false;
+	}
+
+	/**
+	 * Compares two possibly null strings.
+	 * @param a First string.
+	 * @param b Second string.
+	 * @return If the strings are equal.
+	 */
+	private static boolean equal(String a, String b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+
+	/**
+	 * Returns the journal file of the target file.
+	 * @param target Target file of the download.
+	 * @return Journal file.
+	 */
+	public static File getJournalFile(File target) {
+		return new File(target.getPath() + JOURNAL_EXTENSION);
+	}
+
+	/**
+	 * Returns the parts of the file not yet completed. Consecutive units are merged into one chunk.
+	 * @return List of missing chunks.
+	 */
+	public synchronized List<DataChunk> getMissing() {
+		List<DataChunk> missing = new ArrayList<>();
+		DataChunk last = null;
+		for (long unit = 0; unit < getUnitCount(); unit++) {
+			if (isCompleted(unit)) {
+				last = null;
+				continue;
+			}
+			long end = Math.min((unit + 1) * journal.getUnitSize(), journal.getSize());
+			if (last == null) {
+				last = new DataChunk(unit * journal.getUnitSize(), end);
+				missing.add(last);
+			} else {
+				last.setEndByte(end);
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * Returns the number of units of the file.
+	 * @return Number of units.
+	 */
+	private long getUnitCount() {
+		return (journal.getSize() + journal.getUnitSize() - 1) / journal.getUnitSize();
+	}
+
+	/**
+	 * Determines if the unit was completed.
+	 * @param unit Index of the unit.
+	 * @return If the unit was completed.
+	 */
+	private boolean isCompleted(long unit) {
+		return (journal.getBitmap()[(int) (unit >> 3)] & (1 << (unit & 7))) != 0;
+	}
+
+	/**
+	 * Loads the journal of previous download of the same file. The journal is used only if it describes the same source file and the target file still exists.
+	 * @return If the journal was loaded.
+	 */
+	public synchronized boolean load() {
+		if (!file.isFile() || !target.isFile() || target.length() != journal.getSize()) {
+			return false;
+		}
+		DownloadJournal saved;
+		try {
+			saved = Json.getInstance().getMapper().readValue(file, DownloadJournal.class);
+		} catch (IOException e) {
+			return false;
+		}
+		if (!equal(saved.getId(), journal.getId()) || !equal(saved.getChecksum(), journal.getChecksum()) || saved.getSize() != journal.getSize() || saved.getUnitSize() != journal.getUnitSize()) {
+			return false;
+		}
+		if (saved.getBitmap() == null || saved.getBitmap().length != journal.getBitmap().length) {
+			return false;
+		}
+		journal.setBitmap(saved.getBitmap());
+		partial.clear();
+		changed = false;
+		return true;
+	}
+
+	/**
+	 * Records the range of the file as written. Units are marked completed once all their bytes are written.
+	 * Each byte must be recorded only once.
+	 * @param begin First byte of the range.
+	 * @param end Byte after the last byte of the range.
+	 */
+	public synchronized void mark(long begin, long end) {
+		long unitSize = journal.getUnitSize();
+		long position = begin;
+		while (position < end) {
+			long unit = position / unitSize;
+			long unitEnd = Math.min((unit + 1) * unitSize, journal.getSize());
+			long written = Math.min(end, unitEnd) - position;
+			Long previous = partial.get(unit);
+			long filled = ((previous == null) ? 0 : previous) + written;
+			if (filled >= unitEnd - unit * unitSize) {
+				partial.remove(unit);
+				journal.getBitmap()[(int) (unit >> 3)] |= (1 << (unit & 7));
+				changed = true;
+			} else {
+				partial.put(unit, filled);
+			}
+			position += written;
+		}
+	}
+
+	/**
+	 * Saves the journal, if it changed since last save. The journal is written to a temporary file first, so that the previous version stays intact if the save is interrupted.
+	 * @throws IOException If the journal cannot be saved.
+	 */
+	public synchronized void save() throws IOException {
+		if (!changed) {
+			return;
+		}
+		File temp = new File(file.getPath() + ".tmp");
+		Json.getInstance().getMapper().writeValue(temp, journal);
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		changed = false;
+	}
+
+}
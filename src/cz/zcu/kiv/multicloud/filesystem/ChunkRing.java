@@ -0,0 +1,502 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/ChunkRing.java			<br /><br />
+ *
+ * Bounded ring of file chunks shared by the workers uploading the same file to different destinations. Every chunk is read from the disk once and all the workers read it from the memory.
+ * The ring holds only a window of consecutive chunks starting at the chunk of the slowest worker. Workers reaching beyond the window wait until the slowest worker moves on, so the memory used is bounded by the size of the ring.
+ * When a worker takes a chunk, the chunk following it is read ahead by a background reader, if it fits into the window. The disk is read while the current chunk is being sent, so slow disks do not hold the uploads back.
+ * The ring can also read a stream of unknown length. The chunks are then read from the stream strictly in order and the size becomes known once the last chunk is read.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class ChunkRing implements Closeable {
+
+	/** Default number of chunks held in the ring. */
+	public static final int DEFAULT_SLOTS = 4;
+
+	/**
+	 * Input stream reading the file from the ring chunk by chunk.
+	 */
+	private class RingInputStream extends InputStream {
+
+		/** Worker reading the stream. */
+		private final Object consumer;
+		/** Position in the file. */
+		private long position;
+		/** Chunk currently read. */
+		private ByteBuffer chunk;
+
+		/**
+		 * Ctor with the worker and the position to start at.
+		 * @param consumer Worker reading the stream.
+		 * @param position Position to start at.
+		 */
+		public RingInputStream(Object consumer, long position) {
+			this.consumer = consumer;
+			this.position = position;
+			this.chunk = null;
+		}
+
+		/**
+		 * Makes sure the current chunk has data left.
+		 * @return If there is data left in the file.
+		 * @throws IOException If reading the file failed.
+		 */
+		private boolean fill() throws IOException {
+			if (chunk == null || !chunk.hasRemaining()) {
+				long known = getSize();
+				if (known >= 0 && position >= known) {
+					return false;
+				}
+				chunk = acquire(consumer, position);
+				if (!chunk.hasRemaining()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read() throws IOException {
+			if (!fill()) {
+				return -1;
+			}
+			position++;
+			return chunk.get() & 0xff;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+			int read = Math.min(len, chunk.remaining());
+			chunk.get(b, off, read);
+			position += read;
+			return read;
+		}
+
+	}
+
+	/** Channel of the file. */
+	private final FileChannel channel;
+	/** Stream of unknown length. */
+	private final ReadableByteChannel stream;
+	/** Lock guarding the reading of the stream. */
+	private final Object streamLock;
+	/** Byte of the following chunk read ahead from the stream. */
+	private final ByteBuffer carry;
+	/** Size of the file. Negative until the end of the stream is reached. */
+	private long size;
+	/** Size of one chunk. */
+	private final int chunkSize;
+	/** Maximum number of chunks held. */
+	private final int slots;
+	/** Pool to borrow the chunk buffers from. */
+	private final BufferPool bufferPool;
+	/** Loaded chunks by their index. */
+	private final Map<Long, ByteBuffer> chunks;
+	/** Indexes of the chunks being loaded. */
+	private final Set<Long> loading;
+	/** Index of the chunk each worker currently reads. */
+	private final Map<Object, Long> consumers;
+	/** Indexes of the chunks to be read ahead. */
+	private final LinkedList<Long> pending;
+	/** Thread reading the chunks ahead. */
+	private Thread reader;
+	/** Index of the first chunk, that may be held. */
+	private long first;
+	/** If the ring was closed. */
+	private boolean closed;
+	/** Index of the next chunk to be read from the stream. */
+	private long streamIndex;
+	/** If the carry holds a byte of the following chunk. */
+	private boolean carried;
+
+	/**
+	 * Ctor with the file and the size of the ring.
+	 * @param file File to be read.
+	 * @param chunkSize Size of one chunk.
+	 * @param slots Maximum number of chunks held.
+	 * @param bufferPool Pool to borrow the chunk buffers from. If null, the buffers are allocated.
+	 * @throws IOException If the file cannot be opened.
+	 */
+	public ChunkRing(File file, int chunkSize, int slots, BufferPool bufferPool) throws IOException {
+		this(FileChannel.open(file.toPath(), StandardOpenOption.READ), null, chunkSize, slots, bufferPool);
+		this.size = channel.size();
+	}
+
+	/**
+	 * Ctor with the stream of unknown length and the size of the ring. The stream is not closed by the ring.
+	 * @param stream Blocking stream to be read.
+	 * @param chunkSize Size of one chunk.
+	 * @param slots Maximum number of chunks held.
+	 * @param bufferPool Pool to borrow the chunk buffers from. If null, the buffers are allocated.
+	 */
+	public ChunkRing(ReadableByteChannel stream, int chunkSize, int slots, BufferPool bufferPool) {
+		this(null, stream, chunkSize, slots, bufferPool);
+	}
+
+	/**
+	 * Ctor with either the channel of the file or the stream.
+	 * @param channel Channel of the file.
+	 * @param stream Stream of unknown length.
+	 * @param chunkSize Size of one chunk.
+	 * @param slots Maximum number of chunks held.
+	 * @param bufferPool Pool to borrow the chunk buffers from. If null, the buffers are allocated.
+	 */
+	private ChunkRing(FileChannel channel, ReadableByteChannel stream, int chunkSize, int slots, BufferPool bufferPool) {
+		this.channel = channel;
+		this.stream = stream;
+		this.streamLock = new Object();
+		this.carry = ByteBuffer.allocate(1);
+		this.size = -1;
+		this.chunkSize = chunkSize;
+		this.slots = Math.max(1, slots);
+		this.bufferPool = bufferPool;
+		this.chunks = new HashMap<>();
+		this.loading = new HashSet<>();
+		this.consumers = new HashMap<>();
+		this.pending = new LinkedList<>();
+		this.reader = null;
+		this.first = 0;
+		this.closed = false;
+		this.streamIndex = 0;
+		this.carried = false;
+	}
+
+	/**
+	 * Returns read-only view of the chunk containing the position. The view starts at the position and ends at the end of the chunk.
+	 * The chunk is loaded if not held yet. If it is beyond the window of the ring, waits until the slower workers move on.
+	 * Chunks before the position are no longer needed by the worker.
+	 * @param consumer Worker reading the chunk.
+	 * @param position Position in the file.
+	 * @return View of the chunk.
+	 * @throws IOException If reading the file failed or the waiting was interrupted.
+	 */
+	public ByteBuffer acquire(Object consumer, long position) throws IOException {
+		long index = position / chunkSize;
+		ByteBuffer chunk;
+		synchronized (this) {
+			consumers.put(consumer, index);
+			evict();
+			while (true) {
+				if (closed) {
+					throw new IOException("Chunk ring closed.");
+				}
+				chunk = chunks.get(index);
+				if (chunk != null) {
+					break;
+				}
+				if (index < first + slots && !loading.contains(index)) {
+					loading.add(index);
+					break;
+				}
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException("Waiting for the chunk was interrupted.");
+				}
+			}
+		}
+		if (chunk == null) {
+			chunk = load(index);
+		}
+		synchronized (this) {
+			readAhead(index + 1);
+		}
+		ByteBuffer view = chunk.asReadOnlyBuffer();
+		view.position((int) (position - index * chunkSize));
+		return view.slice();
+	}
+
+	/**
+	 * Closes the file and returns all the chunk buffers. The stream is left open.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (reader != null) {
+			/* the reader might be waiting for a buffer */
+			reader.interrupt();
+			reader = null;
+		}
+		for (ByteBuffer chunk: chunks.values()) {
+			if (bufferPool != null) {
+				bufferPool.release(chunk);
+			}
+		}
+		chunks.clear();
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				/* ignore closing exception */
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Moves the window to the chunk of the slowest worker and drops the chunks before it.
+	 */
+	private void evict() {
+		long slowest = Long.MAX_VALUE;
+		for (long index: consumers.values()) {
+			slowest = Math.min(slowest, index);
+		}
+		if (slowest == Long.MAX_VALUE || slowest == first) {
+			return;
+		}
+		first = slowest;
+		Iterator<Map.Entry<Long, ByteBuffer>> it = chunks.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, ByteBuffer> entry = it.next();
+			if (entry.getKey() < first) {
+				if (bufferPool != null) {
+					bufferPool.release(entry.getValue());
+				}
+				it.remove();
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Returns the channel of the file. Workers may read regions of the file straight from it, bypassing the chunks.
+	 * @return Channel of the file, or null if the ring reads a stream.
+	 */
+	public FileChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Returns the size of one chunk.
+	 * @return Size of one chunk.
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Returns the size of the file.
+	 * @return Size of the file, or negative value if the end of the stream was not reached yet.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Reads the chunk from the file or the stream and publishes it to the other workers.
+	 * @param index Index of the chunk.
+	 * @return Loaded chunk.
+	 * @throws IOException If reading the file failed or waiting for the buffer was interrupted.
+	 */
+	private ByteBuffer load(long index) throws IOException {
+		ByteBuffer chunk = null;
+		boolean loaded = false;
+		try {
+			if (bufferPool == null) {
+				chunk = ByteBuffer.allocateDirect(chunkSize);
+			} else {
+				chunk = bufferPool.acquire(chunkSize);
+			}
+			if (channel == null) {
+				readStream(index, chunk);
+			} else {
+				long begin = index * chunkSize;
+				chunk.limit((int) Math.max(0, Math.min(chunkSize, size - begin)));
+				while (chunk.hasRemaining()) {
+					if (channel.read(chunk, begin + chunk.position()) == -1) {
+						throw new IOException("File ended before the chunk.");
+					}
+				}
+				chunk.flip();
+			}
+			loaded = true;
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Waiting for a buffer was interrupted.");
+		} finally {
+			synchronized (this) {
+				loading.remove(index);
+				if (loaded && !closed) {
+					chunks.put(index, chunk);
+				} else {
+					/* the chunk failed to load or nobody needs it anymore */
+					if (chunk != null && bufferPool != null) {
+						bufferPool.release(chunk);
+					}
+					loaded = false;
+				}
+				notifyAll();
+			}
+		}
+		if (!loaded) {
+			throw new IOException("Chunk ring closed.");
+		}
+		return chunk;
+	}
+
+	/**
+	 * Opens stream reading the file from the position to its end through the ring.
+	 * @param consumer Worker reading the stream.
+	 * @param position Position to start at.
+	 * @return Stream of the file data.
+	 */
+	public InputStream openStream(Object consumer, long position) {
+		return new RingInputStream(consumer, position);
+	}
+
+	/**
+	 * Schedules the chunk to be read by the background reader, if it is in the file and fits into the window. The reader is started on first use.
+	 * @param index Index of the chunk.
+	 */
+	private void readAhead(long index) {
+		if (closed || (size >= 0 && index * chunkSize >= size) || index >= first + slots || chunks.containsKey(index) || loading.contains(index)) {
+			return;
+		}
+		loading.add(index);
+		pending.add(index);
+		notifyAll();
+		if (reader == null) {
+			reader = new Thread() {
+				/**
+				 * Reads the scheduled chunks until the ring is closed.
+				 */
+				@Override
+				public void run() {
+					while (true) {
+						long index;
+						synchronized (ChunkRing.this) {
+							while (!closed && pending.isEmpty()) {
+								try {
+									ChunkRing.this.wait();
+								} catch (InterruptedException e) {
+									/* closing the ring interrupts the reader */
+								}
+							}
+							if (closed) {
+								return;
+							}
+							index = pending.poll();
+						}
+						try {
+							load(index);
+						} catch (IOException e) {
+							/* the worker needing the chunk loads it again itself */
+						}
+					}
+				}
+			};
+			reader.setName("MultiCloud read-ahead");
+			reader.setDaemon(true);
+			reader.start();
+		}
+	}
+
+	/**
+	 * Reads the chunk from the stream. The chunks are read strictly in order, each of them only once.
+	 * One byte of the following chunk is read ahead, so the size is known as soon as the last chunk is read.
+	 * @param index Index of the chunk.
+	 * @param chunk Buffer to be filled.
+	 * @throws IOException If reading the stream failed, the chunk was already read or the waiting was interrupted.
+	 */
+	private void readStream(long index, ByteBuffer chunk) throws IOException {
+		synchronized (streamLock) {
+			while (streamIndex < index) {
+				try {
+					streamLock.wait();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException("Waiting for the stream was interrupted.");
+				}
+			}
+			if (streamIndex > index) {
+				throw new IOException("Chunk of the stream cannot be read again.");
+			}
+			try {
+				chunk.clear();
+				chunk.limit(chunkSize);
+				if (getSize() >= 0) {
+					/* the stream already ended */
+					chunk.flip();
+					return;
+				}
+				boolean end = false;
+				if (carried) {
+					carry.flip();
+					chunk.put(carry);
+					carried = false;
+				}
+				while (!end && chunk.hasRemaining()) {
+					end = (stream.read(chunk) == -1);
+				}
+				if (!end) {
+					carry.clear();
+					int read = 0;
+					while (read == 0) {
+						read = stream.read(carry);
+					}
+					end = (read == -1);
+					carried = !end;
+				}
+				chunk.flip();
+				if (end) {
+					synchronized (this) {
+						size = index * chunkSize + chunk.limit();
+					}
+				}
+			} finally {
+				/* partially read chunk cannot be read again either */
+				streamIndex++;
+				streamLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Registers the worker, so the chunks are held until it reads them. All the workers must be registered before the first chunk is read.
+	 * @param consumer Worker to be registered.
+	 */
+	public synchronized void register(Object consumer) {
+		consumers.put(consumer, first);
+	}
+
+	/**
+	 * Unregisters the worker, that will not read any more chunks. Chunks held only for it are dropped.
+	 * @param consumer Worker to be unregistered.
+	 */
+	public synchronized void unregister(Object consumer) {
+		consumers.remove(consumer);
+		evict();
+		notifyAll();
+	}
+
+}
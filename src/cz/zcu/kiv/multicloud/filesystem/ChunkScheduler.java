@@ -0,0 +1,638 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import cz.zcu.kiv.multicloud.json.TransferSettings;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/ChunkScheduler.java			<br /><br />
+ *
+ * Scheduler of the chunks of a file downloaded from multiple sources. The size of each chunk is chosen for the worker requesting it, based on the throughput and round-trip time measured on its previous chunks.
+ * Faster workers get larger chunks. Near the end of the file, each worker gets at most its share of the remaining data, so that all the workers finish at about the same time.
+ * Chunks of the workers with transfer capabilities of their source are fitted into the limits of the source instead of the default ones.
+ * If a journal is supplied, only the parts of the file it lists as missing are scheduled and every byte written is recorded in it. Written bytes are passed to the checksum verifier as well.
+ * Chunks can be limited not to reach beyond a position, that moves as the data is consumed. Workers asking for a chunk then wait until the limit moves.
+ * Workers reading the whole file in one stream, because their source does not support ranges, get a lane of the file reserved behind their chunk, sized by their share of the remaining data. The stream keeps reading the lane, while the other workers take the chunks after it.
+ * If the chunk following the stream was taken before the lane was reserved, the stream skips to the next chunk not taken. Once the stream breaks, the worker gets no more chunks while other workers can download them, since every new request would read the file from its beginning.
+ * Idle workers steal the end of a lane, if they are expected to download it sooner than the worker owning the lane reaches it.
+ * Once everything is scheduled, idle workers that are expected to finish a straggling chunk sooner than its current worker get a hedged copy of it. Whichever copy finishes first wins and the other one is cancelled.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class ChunkScheduler {
+
+	/** Time in milliseconds one chunk should take to transfer. */
+	public static final long TARGET_CHUNK_TIME = 2000;
+	/** Minimum ratio of the transfer time of a chunk to the round-trip time of the request. */
+	public static final int RTT_FACTOR = 10;
+	/** Weight of the last measurement in the estimates. */
+	public static final double SMOOTHING = 0.5;
+
+	/**
+	 * Chunk in flight and the worker downloading it.
+	 */
+	private static class Flight {
+
+		/** Worker downloading the chunk. */
+		private final FileDownloadThread worker;
+		/** Chunk being downloaded. */
+		private final DataChunk chunk;
+		/** Hedged copy of the same range downloaded by another worker. */
+		private Flight twin;
+		/** End of the range written by a failed twin, or -1 if none. */
+		private long uncovered;
+		/** End of the range already counted as progress of the hedged pair, or -1 if never hedged. */
+		private long counted;
+
+		/**
+		 * Ctor with the worker and its chunk.
+		 * @param worker Worker downloading the chunk.
+		 * @param chunk Chunk being downloaded.
+		 */
+		public Flight(FileDownloadThread worker, DataChunk chunk) {
+			this.worker = worker;
+			this.chunk = chunk;
+			this.twin = null;
+			this.uncovered = -1;
+			this.counted = -1;
+		}
+
+	}
+
+	/**
+	 * Estimated transfer characteristics of one worker.
+	 */
+	private static class Estimate {
+
+		/** Throughput in bytes per millisecond. */
+		private double throughput;
+		/** Round-trip time in milliseconds. */
+		private double rtt;
+
+		/**
+		 * Empty ctor.
+		 */
+		public Estimate() {
+			throughput = 0;
+			rtt = 0;
+		}
+
+	}
+
+	/** Size of the file. */
+	private final long size;
+	/** Minimum size of a chunk. */
+	private final long minChunkSize;
+	/** Maximum size of a chunk. */
+	private final long maxChunkSize;
+	/** First byte not yet scheduled. */
+	private long next;
+	/** Position no chunk may reach beyond. */
+	private long limit;
+	/** Chunks returned by the workers, that failed to download them. */
+	private final LinkedList<DataChunk> returned;
+	/** Number of bytes in the returned chunks. */
+	private long returnedBytes;
+	/** Estimates of the registered workers. */
+	private final Map<FileDownloadThread, Estimate> estimates;
+	/** Chunks in flight by their workers. */
+	private final Map<FileDownloadThread, Flight> flights;
+	/** Parts of the file reserved for the workers reading sequential streams, directly following their chunks. */
+	private final Map<FileDownloadThread, DataChunk> lanes;
+	/** Transfer capabilities of the sources of the workers. */
+	private final Map<FileDownloadThread, TransferSettings> transfers;
+	/** Journal of the written data. */
+	private final ChunkJournal journal;
+	/** Verifier of the checksum of the written data. */
+	private final ChunkVerifier verifier;
+
+	/**
+	 * Ctor with the file size and chunk size limits.
+	 * @param size Size of the file.
+	 * @param minChunkSize Minimum size of a chunk.
+	 * @param maxChunkSize Maximum size of a chunk.
+	 */
+	public ChunkScheduler(long size, long minChunkSize, long maxChunkSize) {
+		this(size, minChunkSize, maxChunkSize, null);
+	}
+
+	/**
+	 * Ctor with the file size, chunk size limits and journal of the written data.
+	 * @param size Size of the file.
+	 * @param minChunkSize Minimum size of a chunk.
+	 * @param maxChunkSize Maximum size of a chunk.
+	 * @param journal Journal of the written data. If null, the whole file is scheduled.
+	 */
+	public ChunkScheduler(long size, long minChunkSize, long maxChunkSize, ChunkJournal journal) {
+		this(size, minChunkSize, maxChunkSize, journal, null);
+	}
+
+	/**
+	 * Ctor with the file size, chunk size limits, journal and checksum verifier of the written data.
+	 * @param size Size of the file.
+	 * @param minChunkSize Minimum size of a chunk.
+	 * @param maxChunkSize Maximum size of a chunk.
+	 * @param journal Journal of the written data. If null, the whole file is scheduled.
+	 * @param verifier Verifier of the checksum of the written data. If null, the data is not verified.
+	 */
+	public ChunkScheduler(long size, long minChunkSize, long maxChunkSize, ChunkJournal journal, ChunkVerifier verifier) {
+		this.size = size;
+		this.minChunkSize = minChunkSize;
+		this.maxChunkSize = maxChunkSize;
+		this.next = 0;
+		this.limit = Long.MAX_VALUE;
+		this.returned = new LinkedList<>();
+		this.returnedBytes = 0;
+		this.estimates = new HashMap<>();
+		this.flights = new HashMap<>();
+		this.lanes = new HashMap<>();
+		this.transfers = new HashMap<>();
+		this.journal = journal;
+		this.verifier = verifier;
+		if (journal != null) {
+			/* missing parts are scheduled the same way as the failed ones */
+			for (DataChunk chunk: journal.getMissing()) {
+				returned.add(chunk);
+				returnedBytes += chunk.size();
+			}
+			this.next = size;
+		}
+	}
+
+	/**
+	 * Moves the beginning of the chunk after the data written by the worker.
+	 * Bytes already written by the hedged copy of the chunk are not counted again.
+	 * @param worker Worker that wrote the data.
+	 * @param chunk Chunk being downloaded.
+	 * @param written Number of bytes written.
+	 * @return Number of bytes to be counted as progress.
+	 */
+	public synchronized long advance(FileDownloadThread worker, DataChunk chunk, long written) {
+		long position = chunk.getBeginByte();
+		chunk.setBeginByte(position + written);
+		Flight flight = flights.get(worker);
+		if (flight == null || flight.chunk != chunk) {
+			/* the chunk was cancelled, everything was counted by its twin */
+			return 0;
+		}
+		long end = position + written;
+		long progress = written;
+		if (flight.counted >= 0) {
+			progress = Math.max(0, end - Math.max(position, flight.counted));
+			flight.counted = Math.max(flight.counted, end);
+			if (flight.twin != null) {
+				flight.twin.counted = flight.counted;
+			}
+		}
+		if (journal != null && progress > 0) {
+			journal.mark(end - progress, end);
+		}
+		if (verifier != null && progress > 0) {
+			verifier.mark(end - progress, end, worker.getSource());
+		}
+		return progress;
+	}
+
+	/**
+	 * Chooses the size of the next chunk for the worker.
+	 * @param worker Worker requesting the chunk.
+	 * @param remaining Number of bytes remaining.
+	 * @return Size of the chunk.
+	 */
+	private long chunkSize(FileDownloadThread worker, long remaining) {
+		Estimate estimate = estimates.get(worker);
+		TransferSettings transfer = transfers.get(worker);
+		if (estimate == null || estimate.throughput <= 0) {
+			/* probe the worker with the smallest chunk first, or with the one preferred by its source */
+			if (transfer != null) {
+				return Math.min(transfer.alignChunkSize((transfer.getChunkSize() > 0) ? transfer.getChunkSize() : minChunkSize), remaining);
+			}
+			return Math.min(minChunkSize, remaining);
+		}
+		/* large enough to keep the request overhead low */
+		double desired = estimate.throughput * Math.max(TARGET_CHUNK_TIME, estimate.rtt * RTT_FACTOR);
+		/* small enough not to be the last one to finish */
+		long chunk = (long) Math.min(desired, share(worker, remaining));
+		chunk = Math.max(minChunkSize, Math.min(maxChunkSize, chunk));
+		if (transfer != null) {
+			chunk = transfer.alignChunkSize(chunk);
+		}
+		return Math.min(chunk, remaining);
+	}
+
+	/**
+	 * Marks the chunk of the worker as finished. If a hedged copy of the chunk is still in flight, it is cancelled.
+	 * @param worker Worker that finished its chunk.
+	 */
+	public synchronized void complete(FileDownloadThread worker) {
+		Flight flight = flights.remove(worker);
+		/* workers waiting for the limit may schedule short chunks now */
+		notifyAll();
+		if (flight == null || flight.twin == null) {
+			return;
+		}
+		Flight loser = flight.twin;
+		loser.twin = null;
+		flights.remove(loser.worker);
+		/* the stream of the loser is aborted with the chunk */
+		releaseLane(loser.worker);
+		loser.worker.cancel(loser.chunk);
+	}
+
+	/**
+	 * Returns a chunk, that the worker failed to download, to be scheduled again.
+	 * If a hedged copy of the chunk is still in flight, the chunk is left to it instead.
+	 * @param worker Worker that failed to download the chunk.
+	 * @param chunk Chunk to be returned.
+	 */
+	public synchronized void giveBack(FileDownloadThread worker, DataChunk chunk) {
+		Flight flight = flights.get(worker);
+		if (flight == null || flight.chunk != chunk) {
+			/* chunk was cancelled, because its twin finished first */
+			return;
+		}
+		flights.remove(worker);
+		releaseLane(worker);
+		notifyAll();
+		/* both copies write from the beginning of the range without gaps, so only the part behind both of them is missing */
+		long begin = Math.max(chunk.getBeginByte(), flight.uncovered);
+		if (flight.twin != null) {
+			Flight twin = flight.twin;
+			twin.twin = null;
+			twin.uncovered = Math.max(twin.uncovered, begin);
+			return;
+		}
+		if (chunk.getEndByte() > begin) {
+			returned.add(new DataChunk(begin, chunk.getEndByte()));
+			returnedBytes += chunk.getEndByte() - begin;
+		}
+	}
+
+	/**
+	 * Marks the chunk of the worker as finished and returns the chunk its stream continues with. Used by workers reading a sequential stream, that cannot move to another position without reading the file from its beginning again.
+	 * The stream continues with its lane, or with the returned chunk directly following it. Otherwise it gets the next chunk not scheduled yet and the lane behind it is reserved. The data in front of that chunk must be skipped in the stream.
+	 * If the limit is reached, the worker waits until it moves.
+	 * @param worker Worker reading the stream.
+	 * @param position Current position of the stream.
+	 * @return Following chunk, or null if the stream cannot continue or the worker was interrupted.
+	 */
+	public synchronized DataChunk extend(FileDownloadThread worker, long position) {
+		complete(worker);
+		DataChunk chunk = null;
+		DataChunk lane = lanes.get(worker);
+		if (lane != null && lane.getBeginByte() == position) {
+			chunk = new DataChunk(position, position + Math.min(chunkSize(worker, lane.size()), lane.size()));
+			lane.setBeginByte(chunk.getEndByte());
+			if (lane.size() == 0) {
+				lanes.remove(worker);
+			}
+			flights.put(worker, new Flight(worker, chunk));
+			return chunk;
+		}
+		releaseLane(worker);
+		/* the missing part of a resumed download might follow */
+		Iterator<DataChunk> it = returned.iterator();
+		while (it.hasNext()) {
+			DataChunk candidate = it.next();
+			if (candidate.getBeginByte() == position) {
+				it.remove();
+				chunk = candidate;
+				break;
+			}
+		}
+		if (chunk != null) {
+			long chunkSize = chunkSize(worker, remaining());
+			if (chunk.size() > chunkSize) {
+				DataChunk rest = new DataChunk(chunk.getBeginByte() + chunkSize, chunk.getEndByte());
+				chunk.setEndByte(rest.getBeginByte());
+				returned.addFirst(rest);
+			}
+			returnedBytes -= chunk.size();
+			flights.put(worker, new Flight(worker, chunk));
+			return chunk;
+		}
+		/* keep the stream waiting instead of dropping it */
+		while (next >= position && next < size && next >= limit) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+		if (next < position || next >= size) {
+			return null;
+		}
+		long top = Math.min(size, limit);
+		long remaining = remaining();
+		chunk = new DataChunk(next, next + Math.min(chunkSize(worker, remaining), top - next));
+		next = chunk.getEndByte();
+		/* reserve the rest of the share of the worker, so that the other workers do not take the chunks the stream continues with */
+		long reserved = Math.min((long) share(worker, remaining) - chunk.size(), top - next);
+		if (reserved > 0) {
+			lanes.put(worker, new DataChunk(next, next + reserved));
+			next += reserved;
+		}
+		flights.put(worker, new Flight(worker, chunk));
+		return chunk;
+	}
+
+	/**
+	 * Determines if a worker able to download any chunk is registered.
+	 * @return If a worker without a sequential stream is registered.
+	 */
+	private boolean hasRanged() {
+		for (FileDownloadThread worker: estimates.keySet()) {
+			if (!worker.isSequential()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the chunk in flight, that the worker is expected to finish sooner than its current worker, and creates its hedged copy.
+	 * @param worker Idle worker.
+	 * @return Hedged copy of the chunk, or null if no chunk is worth hedging.
+	 */
+	private DataChunk hedge(FileDownloadThread worker) {
+		Estimate own = estimates.get(worker);
+		if (own == null || own.throughput <= 0) {
+			/* nothing is known about the speed of the worker */
+			return null;
+		}
+		if (worker.isSequential()) {
+			/* the copy would be read from the beginning of the file */
+			return null;
+		}
+		Flight straggler = null;
+		double longest = 0;
+		for (Flight flight: flights.values()) {
+			if (flight.worker == worker || flight.twin != null) {
+				continue;
+			}
+			long left = flight.chunk.size();
+			if (left <= 0) {
+				continue;
+			}
+			Estimate estimate = estimates.get(flight.worker);
+			double time = (estimate == null || estimate.throughput <= 0) ? Double.MAX_VALUE : left / estimate.throughput;
+			if (time > own.rtt + left / own.throughput && time > longest) {
+				straggler = flight;
+				longest = time;
+			}
+		}
+		if (straggler == null) {
+			return null;
+		}
+		Flight copy = new Flight(worker, new DataChunk(straggler.chunk.getBeginByte(), straggler.chunk.getEndByte()));
+		copy.twin = straggler;
+		straggler.twin = copy;
+		straggler.counted = Math.max(straggler.counted, straggler.chunk.getBeginByte());
+		copy.counted = straggler.counted;
+		flights.put(worker, copy);
+		return copy.chunk;
+	}
+
+	/**
+	 * Determines if all the chunks were scheduled and downloaded.
+	 * @return If there is nothing left to download.
+	 */
+	public synchronized boolean isDone() {
+		return remaining() == 0 && flights.isEmpty() && lanes.isEmpty();
+	}
+
+	/**
+	 * Determines if the limit prevents scheduling a new chunk. Chunks shorter than the minimum are not scheduled while other chunks are in flight and can move the limit.
+	 * @return If the limit prevents scheduling.
+	 */
+	private boolean isLimited() {
+		long available = Math.min(size, limit) - next;
+		return available <= 0 || (available < Math.min(minChunkSize, size - next) && !flights.isEmpty());
+	}
+
+	/**
+	 * Determines if a returned chunk starts at the position.
+	 * @param position Position in the file.
+	 * @return If a returned chunk starts at the position.
+	 */
+	private boolean isReturned(long position) {
+		for (DataChunk chunk: returned) {
+			if (chunk.getBeginByte() == position) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the next chunk for the worker. Returned chunks are scheduled first. When everything is scheduled, the end of a lane or a hedged copy of a straggling chunk may be returned.
+	 * If the limit is reached, the worker waits until it moves. Workers reading sequential streams wait while other workers can download the chunks.
+	 * @param worker Worker requesting the chunk.
+	 * @return Next chunk, or null if there is nothing left to schedule or the worker was interrupted.
+	 */
+	public synchronized DataChunk next(FileDownloadThread worker) {
+		if (worker.isSequential()) {
+			/* every request reads the file from its beginning, so only the beginning is worth it while the other workers can download the rest */
+			while (remaining() > 0 && hasRanged() && next > 0 && !isReturned(0)) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+			if (remaining() == 0) {
+				return null;
+			}
+			if (next == 0 || isReturned(0)) {
+				return extend(worker, 0);
+			}
+		}
+		long remaining = remaining();
+		while (remaining > 0 && returned.isEmpty() && isLimited()) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			remaining = remaining();
+		}
+		if (remaining == 0) {
+			DataChunk chunk = steal(worker);
+			return (chunk != null) ? chunk : hedge(worker);
+		}
+		long chunkSize = chunkSize(worker, remaining);
+		DataChunk chunk;
+		if (!returned.isEmpty()) {
+			chunk = returned.poll();
+			if (chunk.size() > chunkSize) {
+				DataChunk rest = new DataChunk(chunk.getBeginByte() + chunkSize, chunk.getEndByte());
+				chunk.setEndByte(rest.getBeginByte());
+				returned.addFirst(rest);
+			}
+			returnedBytes -= chunk.size();
+		} else {
+			chunk = new DataChunk(next, next + Math.min(chunkSize, Math.min(size, limit) - next));
+			next = chunk.getEndByte();
+		}
+		flights.put(worker, new Flight(worker, chunk));
+		return chunk;
+	}
+
+	/**
+	 * Registers the worker, so it is counted when splitting the remaining data.
+	 * @param worker Worker to be registered.
+	 */
+	public synchronized void register(FileDownloadThread worker) {
+		if (!estimates.containsKey(worker)) {
+			estimates.put(worker, new Estimate());
+		}
+	}
+
+	/**
+	 * Returns the lane of the worker to be scheduled to the other workers.
+	 * @param worker Worker owning the lane.
+	 */
+	private void releaseLane(FileDownloadThread worker) {
+		DataChunk lane = lanes.remove(worker);
+		if (lane != null && lane.size() > 0) {
+			returned.add(lane);
+			returnedBytes += lane.size();
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes not yet scheduled. Lanes are not counted.
+	 * @return Number of bytes remaining.
+	 */
+	private long remaining() {
+		return (size - next) + returnedBytes;
+	}
+
+	/**
+	 * Reports the measurement of a chunk downloaded by the worker.
+	 * @param worker Worker that downloaded the chunk.
+	 * @param bytes Number of bytes downloaded.
+	 * @param time Time in milliseconds spent receiving the data.
+	 * @param rtt Time in milliseconds between sending the request and receiving the response.
+	 */
+	public synchronized void report(FileDownloadThread worker, long bytes, long time, long rtt) {
+		Estimate estimate = estimates.get(worker);
+		if (estimate == null || bytes <= 0) {
+			return;
+		}
+		double throughput = (double) bytes / Math.max(time, 1);
+		if (estimate.throughput <= 0) {
+			estimate.throughput = throughput;
+			estimate.rtt = rtt;
+		} else {
+			estimate.throughput = SMOOTHING * throughput + (1 - SMOOTHING) * estimate.throughput;
+			estimate.rtt = SMOOTHING * rtt + (1 - SMOOTHING) * estimate.rtt;
+		}
+	}
+
+	/**
+	 * Sets the position no chunk may reach beyond and wakes up the workers waiting for it.
+	 * @param limit Position no chunk may reach beyond.
+	 */
+	public synchronized void setLimit(long limit) {
+		this.limit = limit;
+		notifyAll();
+	}
+
+	/**
+	 * Sets the transfer capabilities of the source of the worker. Chunks of the worker are fitted into them.
+	 * @param worker Worker downloading from the source.
+	 * @param transfer Transfer capabilities of the source.
+	 */
+	public synchronized void setTransfer(FileDownloadThread worker, TransferSettings transfer) {
+		if (transfer == null) {
+			transfers.remove(worker);
+		} else {
+			transfers.put(worker, transfer);
+		}
+	}
+
+	/**
+	 * Returns the part of the remaining data, that the worker is expected to download while the other workers download the rest.
+	 * @param worker Worker to be evaluated.
+	 * @param remaining Number of bytes remaining.
+	 * @return Share of the worker in bytes, or zero if its speed is not known.
+	 */
+	private double share(FileDownloadThread worker, long remaining) {
+		Estimate estimate = estimates.get(worker);
+		if (estimate == null || estimate.throughput <= 0) {
+			return 0;
+		}
+		double total = 0;
+		int measured = 0;
+		for (Estimate e: estimates.values()) {
+			if (e.throughput > 0) {
+				total += e.throughput;
+				measured++;
+			}
+		}
+		total += (estimates.size() - measured) * (total / measured);
+		return remaining * estimate.throughput / total;
+	}
+
+	/**
+	 * Takes the end of the lane, whose owner is expected to reach its end the latest, if the worker is expected to download it sooner.
+	 * @param worker Idle worker.
+	 * @return Stolen end of the lane, or null if no lane is worth stealing from.
+	 */
+	private DataChunk steal(FileDownloadThread worker) {
+		Estimate own = estimates.get(worker);
+		if (own == null || own.throughput <= 0 || worker.isSequential()) {
+			/* nothing is known about the speed of the worker, or it would read the file from its beginning */
+			return null;
+		}
+		FileDownloadThread victim = null;
+		double longest = 0;
+		for (Map.Entry<FileDownloadThread, DataChunk> entry: lanes.entrySet()) {
+			Flight flight = flights.get(entry.getKey());
+			long left = entry.getValue().size() + ((flight != null) ? flight.chunk.size() : 0);
+			Estimate estimate = estimates.get(entry.getKey());
+			double time = (estimate == null || estimate.throughput <= 0) ? Double.MAX_VALUE : left / estimate.throughput;
+			if (time > longest) {
+				victim = entry.getKey();
+				longest = time;
+			}
+		}
+		if (victim == null) {
+			return null;
+		}
+		DataChunk lane = lanes.get(victim);
+		long piece = Math.min(chunkSize(worker, lane.size()), lane.size());
+		if (longest <= own.rtt + piece / own.throughput) {
+			return null;
+		}
+		DataChunk chunk = new DataChunk(lane.getEndByte() - piece, lane.getEndByte());
+		lane.setEndByte(chunk.getBeginByte());
+		if (lane.size() == 0) {
+			lanes.remove(victim);
+		}
+		flights.put(worker, new Flight(worker, chunk));
+		return chunk;
+	}
+
+	/**
+	 * Unregisters the worker, that will not request any more chunks. Its lane is scheduled to the other workers.
+	 * @param worker Worker to be unregistered.
+	 */
+	public synchronized void unregister(FileDownloadThread worker) {
+		estimates.remove(worker);
+		releaseLane(worker);
+		/* workers reading sequential streams might be waiting for the others to leave */
+		notifyAll();
+	}
+
+}
@@ -0,0 +1,225 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/ChunkVerifier.java			<br /><br />
+ *
+ * Incremental verifier of the checksum of a downloaded file. Chunks complete out of order, so the verifier tracks the completed ranges and hashes the contiguous prefix of the file as it grows.
+ * The data is read back from the target file while it is still cached by the operating system, so no second pass over the file is needed after the download.
+ * The algorithm is chosen by the length of the hexadecimal checksum: MD5, SHA-1 or SHA-256.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class ChunkVerifier {
+
+	/** Size of the block of data read back from the file at once, set to 1 MiB. */
+	public static final int BLOCK_SIZE = 1024 * 1024;
+
+	/** Expected checksum of the file. */
+	private final String checksum;
+	/** Message digest, null if the checksum is not supported. */
+	private final MessageDigest digest;
+	/** Size of the file. */
+	private final long size;
+	/** End of the contiguous prefix of the file already hashed. */
+	private long hashed;
+	/** End of the contiguous prefix of the file already written. */
+	private long contiguous;
+	/** Written ranges behind the contiguous prefix, by their first byte. */
+	private final TreeMap<Long, Long> completed;
+	/** Names of the user accounts that delivered the data. */
+	private final Set<String> sources;
+	/** Checksum of the data, available after verification. */
+	private String actual;
+	/** Buffer for reading the data back from the file. */
+	private ByteBuffer buffer;
+
+	/**
+	 * Ctor with the expected checksum and the size of the file.
+	 * @param checksum Expected checksum of the file in hexadecimal form.
+	 * @param size Size of the file.
+	 */
+	public ChunkVerifier(String checksum, long size) {
+		this.checksum = checksum;
+		this.digest = createDigest(checksum);
+		this.size = size;
+		this.hashed = 0;
+		this.contiguous = 0;
+		this.completed = new TreeMap<>();
+		this.sources = new LinkedHashSet<>();
+		this.actual = null;
+		this.buffer = null;
+	}
+
+	/**
+	 * Creates the message digest matching the checksum.
+	 * @param checksum Checksum in hexadecimal form.
+	 * @return Message digest, or null if the checksum is not supported.
+	 */
+	private static MessageDigest createDigest(String checksum) {
+		if (checksum == null || !checksum.matches("[0-9a-fA-F]+")) {
+			return null;
+		}
+		String algorithm;
+		switch (checksum.length()) {
+		case 32:
+			algorithm = "MD5";
+			break;
+		case 40:
+			algorithm = "SHA-1";
+			break;
+		case 64:
+			algorithm = "SHA-256";
+			break;
+		default:
+			return null;
+		}
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the checksum of the downloaded data, if it was already verified.
+	 * @return Checksum of the data in hexadecimal form.
+	 */
+	public String getActual() {
+		return actual;
+	}
+
+	/**
+	 * Returns the expected checksum of the file.
+	 * @return Expected checksum.
+	 */
+	public String getChecksum() {
+		return checksum;
+	}
+
+	/**
+	 * Returns the names of the user accounts that delivered the data.
+	 * @return Names of the user accounts.
+	 */
+	public synchronized List<String> getSources() {
+		return new ArrayList<>(sources);
+	}
+
+	/**
+	 * Determines if the checksum of the file is supported and will be verified.
+	 * @return If the checksum is verified.
+	 */
+	public boolean isEnabled() {
+		return digest != null;
+	}
+
+	/**
+	 * Records the range of the file as written.
+	 * @param begin First byte of the range.
+	 * @param end Byte after the last byte of the range.
+	 * @param source Name of the user account that delivered the data, or null if it was written by a previous download.
+	 */
+	public synchronized void mark(long begin, long end, String source) {
+		if (end <= begin) {
+			return;
+		}
+		if (source != null) {
+			sources.add(source);
+		}
+		long first = begin;
+		long last = end;
+		/* merge with the overlapping and adjacent ranges */
+		Entry<Long, Long> before = completed.floorEntry(first);
+		if (before != null && before.getValue() >= first) {
+			first = before.getKey();
+			last = Math.max(last, before.getValue());
+			completed.remove(before.getKey());
+		}
+		Entry<Long, Long> after = completed.ceilingEntry(first);
+		while (after != null && after.getKey() <= last) {
+			last = Math.max(last, after.getValue());
+			completed.remove(after.getKey());
+			after = completed.ceilingEntry(first);
+		}
+		completed.put(first, last);
+		/* extend the contiguous prefix */
+		Entry<Long, Long> head = completed.firstEntry();
+		while (head != null && head.getKey() <= contiguous) {
+			contiguous = Math.max(contiguous, head.getValue());
+			completed.remove(head.getKey());
+			head = completed.firstEntry();
+		}
+	}
+
+	/**
+	 * Hashes the part of the contiguous prefix not yet hashed. Must not be called from multiple threads at once.
+	 * @param writer Writer of the target.
+	 * @throws IOException If the data cannot be read back.
+	 */
+	public void update(DownloadWriter writer) throws IOException {
+		if (digest == null) {
+			return;
+		}
+		long end;
+		synchronized (this) {
+			end = contiguous;
+		}
+		while (hashed < end) {
+			int length = (int) Math.min(BLOCK_SIZE, end - hashed);
+			if (writer.isMapped()) {
+				/* hash straight from the mapping */
+				ByteBuffer view = writer.map(hashed, length);
+				hashed += view.remaining();
+				digest.update(view);
+			} else {
+				if (buffer == null) {
+					buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+				}
+				buffer.clear();
+				buffer.limit(length);
+				writer.read(buffer, hashed);
+				buffer.flip();
+				if (!buffer.hasRemaining()) {
+					throw new IOException("Unexpected end of the file.");
+				}
+				hashed += buffer.remaining();
+				digest.update(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Hashes the rest of the file and compares the result with the expected checksum. All the data must be written before.
+	 * @param writer Writer of the target.
+	 * @return If the checksum matches. True if the checksum is not supported.
+	 * @throws IOException If the data cannot be read back.
+	 */
+	public boolean verify(DownloadWriter writer) throws IOException {
+		if (digest == null) {
+			return true;
+		}
+		update(writer);
+		if (hashed != size) {
+			throw new IOException("File not completely written.");
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b: digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		actual = sb.toString();
+		return actual.equalsIgnoreCase(checksum);
+	}
+
+}
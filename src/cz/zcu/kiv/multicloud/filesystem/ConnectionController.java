@@ -0,0 +1,165 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/ConnectionController.java			<br /><br />
+ *
+ * Additive-increase/multiplicative-decrease controller of the number of parallel connections to one download source.
+ * Aggregate throughput of the source is evaluated in regular intervals. While it keeps rising, one more connection is allowed. When the source rejects requests or the throughput stalls, the number of connections is halved.
+ * Sources that do not support ranges are limited to a single connection reading the file sequentially.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class ConnectionController {
+
+	/** Interval in milliseconds between two evaluations of the throughput. */
+	public static final long EVALUATION_INTERVAL = 1000;
+	/** Minimal relative gain of throughput to allow another connection. */
+	public static final double INCREASE_THRESHOLD = 0.05;
+	/** Relative drop of throughput considered a stall. */
+	public static final double STALL_THRESHOLD = 0.5;
+
+	/** Maximum number of connections. */
+	private final int maxConnections;
+	/** Number of connections currently allowed. */
+	private int limit;
+	/** Number of connections currently in use. */
+	private int active;
+	/** Bytes transferred since the beginning of the current interval. */
+	private long bytes;
+	/** Beginning of the current interval in nanoseconds. */
+	private long intervalStart;
+	/** Throughput in bytes per millisecond measured in the last interval. */
+	private double lastThroughput;
+	/** If the source ignores ranges and always sends the whole file. */
+	private boolean sequential;
+
+	/**
+	 * Ctor with the maximum number of connections.
+	 * @param maxConnections Maximum number of connections.
+	 */
+	public ConnectionController(int maxConnections) {
+		this.maxConnections = Math.max(1, maxConnections);
+		this.limit = 1;
+		this.active = 0;
+		this.bytes = 0;
+		this.intervalStart = System.nanoTime();
+		this.lastThroughput = 0;
+		this.sequential = false;
+	}
+
+	/**
+	 * Waits for a connection to be allowed and takes it.
+	 * @param timeout Maximum time to wait in milliseconds.
+	 * @return If the connection was taken.
+	 * @throws InterruptedException If the waiting was interrupted.
+	 */
+	public synchronized boolean acquire(long timeout) throws InterruptedException {
+		if (active >= limit) {
+			wait(timeout);
+		}
+		/* idle workers keep the evaluation going even if no data flows */
+		long now = System.nanoTime();
+		if (now - intervalStart >= EVALUATION_INTERVAL * 1000000) {
+			evaluate(now);
+		}
+		if (active < limit) {
+			active++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reports that the source rejected a request or the connection failed. The number of allowed connections is halved.
+	 */
+	public synchronized void congestion() {
+		decrease();
+		intervalStart = System.nanoTime();
+		bytes = 0;
+		lastThroughput = 0;
+	}
+
+	/**
+	 * Halves the number of allowed connections, keeping at least one.
+	 */
+	private void decrease() {
+		limit = Math.max(1, limit / 2);
+	}
+
+	/**
+	 * Switches the source to a single connection, because it does not support ranges. Each connection would have to read the file from the beginning.
+	 */
+	public synchronized void disableRanges() {
+		sequential = true;
+		limit = 1;
+	}
+
+	/**
+	 * Evaluates the throughput of the finished interval and adjusts the number of allowed connections.
+	 * @param now Current time in nanoseconds.
+	 */
+	private void evaluate(long now) {
+		double throughput = (double) bytes / Math.max((now - intervalStart) / 1000000, 1);
+		if (lastThroughput > 0 && throughput < lastThroughput * (1 - STALL_THRESHOLD)) {
+			decrease();
+		} else if (!sequential && active >= limit && limit < maxConnections && throughput > lastThroughput * (1 + INCREASE_THRESHOLD)) {
+			/* all the connections are busy and adding the last one helped */
+			limit++;
+			notifyAll();
+		}
+		lastThroughput = throughput;
+		intervalStart = now;
+		bytes = 0;
+	}
+
+	/**
+	 * Returns the maximum number of connections.
+	 * @return Maximum number of connections.
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Determines if the source was switched to a single sequential connection.
+	 * @return If the source does not support ranges.
+	 */
+	public synchronized boolean isSequential() {
+		return sequential;
+	}
+
+	/**
+	 * Gives the connection up if more connections are in use than allowed.
+	 * @return If the connection was given up.
+	 */
+	public synchronized boolean relinquish() {
+		if (active > limit) {
+			active--;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Gives the connection up.
+	 */
+	public synchronized void release() {
+		active--;
+		notifyAll();
+	}
+
+	/**
+	 * Adds the transferred bytes to the current interval. The throughput is evaluated when the interval ends.
+	 * @param transferred Number of bytes transferred.
+	 */
+	public synchronized void transferred(long transferred) {
+		bytes += transferred;
+		long now = System.nanoTime();
+		if (now - intervalStart >= EVALUATION_INTERVAL * 1000000) {
+			evaluate(now);
+		}
+	}
+
+}
@@ -5,7 +5,6 @@ import java.io.IOException;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 
-import com.fasterxml.jackson.databind.JsonNode;
 
 import cz.zcu.kiv.multicloud.MultiCloudException;
 import cz.zcu.kiv.multicloud.json.CloudRequest;
@@ -85,9 +84,8 @@ public class DeleteOp extends Operation<FileInfo> {
 						if (response.getStatusLine().getStatusCode() >= 400) {
 							parseOperationError(response);
 						} else {
-							JsonNode tree = parseJsonResponse(response);
-							if (tree != null) {
-								info = json.getMapper().treeToValue(tree, FileInfo.class);
+							info = parseJsonResponse(response, FileInfo.class);
+							if (info != null) {
 								info.fillMissing();
 								for (FileInfo content: info.getContent()) {
 									content.fillMissing();
@@ -0,0 +1,55 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/DownloadWriter.java			<br /><br />
+ *
+ * Interface for writing the downloaded chunks to the target. Chunks are written at their positions by multiple threads at once.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public interface DownloadWriter extends Closeable {
+
+	/**
+	 * Finishes writing and releases the target.
+	 */
+	@Override
+	void close();
+
+	/**
+	 * Determines if the target is memory-mapped, so the data can be copied straight into it.
+	 * @return If the target is memory-mapped.
+	 */
+	boolean isMapped();
+
+	/**
+	 * Returns a view of the memory-mapped target for writing data at the position. The view can be shorter than requested.
+	 * @param position Position in the target.
+	 * @param size Requested number of bytes.
+	 * @return View of the mapping with position set to the requested position and limit to its end.
+	 * @throws IOException If the target is not memory-mapped or the view cannot be created.
+	 */
+	ByteBuffer map(long position, long size) throws IOException;
+
+	/**
+	 * Reads already written data back from the target. The buffer is filled up to its limit, unless the end of the target is reached.
+	 * @param buffer Data buffer.
+	 * @param position Position in the target.
+	 * @throws IOException If the data cannot be read back.
+	 */
+	void read(ByteBuffer buffer, long position) throws IOException;
+
+	/**
+	 * Writes data to the target. All the remaining bytes of the buffer are written. Can be called from multiple threads at once.
+	 * @param buffer Data buffer.
+	 * @param position Position in the target.
+	 * @throws IOException If the data cannot be written.
+	 */
+	void write(ByteBuffer buffer, long position) throws IOException;
+
+}
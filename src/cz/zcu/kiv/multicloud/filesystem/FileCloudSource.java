@@ -1,7 +1,10 @@
 package cz.zcu.kiv.multicloud.filesystem;
 
+import org.apache.http.impl.client.CloseableHttpClient;
+
 import cz.zcu.kiv.multicloud.json.CloudRequest;
 import cz.zcu.kiv.multicloud.json.FileInfo;
+import cz.zcu.kiv.multicloud.json.TransferSettings;
 import cz.zcu.kiv.multicloud.oauth2.OAuth2Token;
 
 /**
@@ -29,8 +32,14 @@ public class FileCloudSource {
 	private CloudRequest execRequest;
 	/** Cloud finish request settings. */
 	private CloudRequest finishRequest;
+	/** Cloud request settings for querying the offset confirmed by an upload session. */
+	private CloudRequest statusRequest;
+	/** Transfer capabilities of the cloud storage service. */
+	private TransferSettings transfer;
 	/** Access token for the cloud storage service. */
 	private OAuth2Token token;
+	/** Shared HTTP client for the cloud storage service. */
+	private CloseableHttpClient client;
 
 	/**
 	 * Empty ctor.
@@ -43,7 +52,10 @@ public class FileCloudSource {
 		beginRequest = null;
 		execRequest = null;
 		finishRequest = null;
+		statusRequest = null;
+		transfer = null;
 		token = null;
+		client = null;
 	}
 
 	/**
@@ -65,7 +77,10 @@ public class FileCloudSource {
 		this.beginRequest = beginRequest;
 		this.execRequest = execRequest;
 		this.finishRequest = finishRequest;
+		this.statusRequest = null;
+		this.transfer = null;
 		this.token = token;
+		this.client = null;
 	}
 
 	/**
@@ -84,6 +99,14 @@ public class FileCloudSource {
 		return beginRequest;
 	}
 
+	/**
+	 * Returns the shared HTTP client for the cloud storage service.
+	 * @return Shared HTTP client.
+	 */
+	public CloseableHttpClient getClient() {
+		return client;
+	}
+
 	/**
 	 * Returns the cloud execute request settings.
 	 * @return Cloud execute request settings.
@@ -124,6 +147,14 @@ public class FileCloudSource {
 		return remote;
 	}
 
+	/**
+	 * Returns the cloud request settings for querying the offset confirmed by an upload session.
+	 * @return Cloud status request settings.
+	 */
+	public CloudRequest getStatusRequest() {
+		return statusRequest;
+	}
+
 	/**
 	 * Returns the access token for the storage service.
 	 * @return Access token for the storage service.
@@ -132,6 +163,14 @@ public class FileCloudSource {
 		return token;
 	}
 
+	/**
+	 * Returns the transfer capabilities of the storage service.
+	 * @return Transfer capabilities, or null if the default ones should be used.
+	 */
+	public TransferSettings getTransfer() {
+		return transfer;
+	}
+
 	/**
 	 * Sets the account name.
 	 * @param accountName Account name.
@@ -148,6 +187,14 @@ public class FileCloudSource {
 		this.beginRequest = beginRequest;
 	}
 
+	/**
+	 * Sets the shared HTTP client for the cloud storage service.
+	 * @param client Shared HTTP client.
+	 */
+	public void setClient(CloseableHttpClient client) {
+		this.client = client;
+	}
+
 	/**
 	 * Sets the cloud execute request settings.
 	 * @param execRequest Cloud execute request settings.
@@ -188,6 +235,14 @@ public class FileCloudSource {
 		this.remote = remote;
 	}
 
+	/**
+	 * Sets the cloud request settings for querying the offset confirmed by an upload session. Null if the service cannot report it.
+	 * @param statusRequest Cloud status request settings.
+	 */
+	public void setStatusRequest(CloudRequest statusRequest) {
+		this.statusRequest = statusRequest;
+	}
+
 	/**
 	 * Sets the access token for the storage service.
 	 * @param token Access token for the storage service.
@@ -196,4 +251,12 @@ public class FileCloudSource {
 		this.token = token;
 	}
 
+	/**
+	 * Sets the transfer capabilities of the storage service.
+	 * @param transfer Transfer capabilities.
+	 */
+	public void setTransfer(TransferSettings transfer) {
+		this.transfer = transfer;
+	}
+
 }
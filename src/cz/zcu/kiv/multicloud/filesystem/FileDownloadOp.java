@@ -1,19 +1,21 @@
 package cz.zcu.kiv.multicloud.filesystem;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.http.client.methods.HttpUriRequest;
 
+import cz.zcu.kiv.multicloud.ChecksumException;
 import cz.zcu.kiv.multicloud.MultiCloudException;
+import cz.zcu.kiv.multicloud.json.TransferSettings;
 
 /**
  * cz.zcu.kiv.multicloud.filesystem/FileDownloadOp.java			<br /><br />
  *
- * Operation for downloading a file.
+ * Operation for downloading a file. The file is saved to a local file, or written in order to a channel supplied by the caller.
  *
  * @author Jaromír Staněk
  * @version 1.0
@@ -21,25 +23,49 @@ import cz.zcu.kiv.multicloud.MultiCloudException;
  */
 public class FileDownloadOp extends Operation<File> {
 
-	/** Minimum size of chunk for file download, set to 256 kiB. */
+	/** Minimum size of chunk for file download from sources without own limits, set to 256 kiB. */
 	public static final long MIN_CHUNK_SIZE = 256 * 1024;
-	/** Maximum size of chunk for file download, set to 16 MiB. */
-	public static final long MAX_CHUNK_SIZE = 16 * 1024 * 1024;
-	/** Optimal number of chunks for each worker. */
-	public static final int CHUNK_NUM_PER_WORKER = 5;
+	/** Maximum size of chunk for file download from sources without own limits, set to 64 MiB. */
+	public static final long MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+	/** Default maximum size of file to be memory-mapped, set to 1 GiB. */
+	public static final long DEFAULT_MAX_MAPPED_SIZE = 1024 * 1024 * 1024;
+	/** Default maximum number of parallel connections to one source. */
+	public static final int DEFAULT_MAX_CONNECTIONS = 4;
 
 	/** List of sources used to download the file. */
 	private final List<FileCloudSource> sources;
 	/** Destination to save the file to. */
 	private final File destination;
+	/** Channel to write the file to, null if saved to the destination. */
+	private final WritableByteChannel stream;
+	/** Capacity of the reassembly buffer for writing to the channel. */
+	private long bufferSize;
 	/** Thread pool of worker threads. */
 	private final List<FileDownloadThread> pool;
-	/** Queue with chunks for the workers. */
-	private final BlockingQueue<DataChunk> queue;
-	/** File writer. */
-	private FileDownloadWriter writer;
+	/** Scheduler of the chunks for the workers. */
+	private ChunkScheduler scheduler;
+	/** Writer of the downloaded data. */
+	private DownloadWriter writer;
 	/** Progress listener. */
 	private final ProgressListener listener;
+	/** Pool of the transfer buffers of the workers. */
+	private BufferPool bufferPool;
+	/** If the data should be forced to the storage device after download. */
+	private boolean force;
+	/** If the target file should be memory-mapped. */
+	private boolean mapped;
+	/** Maximum size of file to be memory-mapped. Larger files are written through the file channel. */
+	private long maxMappedSize;
+	/** Maximum number of parallel connections to one source. */
+	private int maxConnections;
+	/** If the progress should be journaled, so that an interrupted download can be resumed. */
+	private boolean resumable;
+	/** Journal of the download progress. */
+	private ChunkJournal journal;
+	/** If the checksum of the downloaded data should be verified. */
+	private boolean verify;
+	/** Verifier of the checksum of the downloaded data. */
+	private ChunkVerifier verifier;
 	/** Lock object for concurrent method calls. */
 	private final Object lock;
 
@@ -49,6 +75,28 @@ public class FileDownloadOp extends Operation<File> {
 	 * @param destination Destination to save the file to.
 	 */
 	public FileDownloadOp(List<FileCloudSource> sources, File destination, ProgressListener listener) {
+		this(sources, destination, null, listener);
+	}
+
+	/**
+	 * Ctor with the channel to write the file to. Chunks downloaded in parallel are reordered through a bounded buffer, so the channel receives the file from its beginning to its end.
+	 * Downloads to a channel cannot be resumed and their checksum is not verified.
+	 * @param sources List of sources used to download the file.
+	 * @param stream Channel to write the file to. It is not closed after the download.
+	 * @param listener Progress listener.
+	 */
+	public FileDownloadOp(List<FileCloudSource> sources, WritableByteChannel stream, ProgressListener listener) {
+		this(sources, null, stream, listener);
+	}
+
+	/**
+	 * Ctor with either destination or channel to write the file to.
+	 * @param sources List of sources used to download the file.
+	 * @param destination Destination to save the file to.
+	 * @param stream Channel to write the file to.
+	 * @param listener Progress listener.
+	 */
+	private FileDownloadOp(List<FileCloudSource> sources, File destination, WritableByteChannel stream, ProgressListener listener) {
 		super(OperationType.FILE_DOWNLOAD, null, null);
 		this.sources = new ArrayList<>();
 		for (FileCloudSource pair: sources) {
@@ -57,9 +105,20 @@ public class FileDownloadOp extends Operation<File> {
 			}
 		}
 		this.destination = destination;
+		this.stream = stream;
+		this.bufferSize = StreamDownloadWriter.DEFAULT_CAPACITY;
 		this.pool = new ArrayList<>();
-		this.queue = new LinkedBlockingQueue<>();
+		this.scheduler = null;
 		this.listener = listener;
+		this.bufferPool = null;
+		this.force = false;
+		this.mapped = false;
+		this.maxMappedSize = DEFAULT_MAX_MAPPED_SIZE;
+		this.maxConnections = DEFAULT_MAX_CONNECTIONS;
+		this.resumable = true;
+		this.journal = null;
+		this.verify = true;
+		this.verifier = null;
 		this.lock = new Object();
 	}
 
@@ -76,6 +135,70 @@ public class FileDownloadOp extends Operation<File> {
 		}
 	}
 
+	/**
+	 * Returns the pool the workers borrow their transfer buffers from.
+	 * @return Pool of the transfer buffers.
+	 */
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Returns the capacity of the reassembly buffer used for writing to a channel.
+	 * @return Capacity of the buffer.
+	 */
+	public long getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Returns the maximum number of parallel connections to one source.
+	 * @return Maximum number of connections per source.
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Returns the maximum size of file to be memory-mapped.
+	 * @return Maximum size of memory-mapped file.
+	 */
+	public long getMaxMappedSize() {
+		return maxMappedSize;
+	}
+
+	/**
+	 * Determines if the data is forced to the storage device after download.
+	 * @return If the data is forced to the storage device.
+	 */
+	public boolean isForce() {
+		return force;
+	}
+
+	/**
+	 * Determines if the target file is memory-mapped, as long as its size does not exceed the maximum.
+	 * @return If the target file is memory-mapped.
+	 */
+	public boolean isMapped() {
+		return mapped;
+	}
+
+	/**
+	 * Determines if the progress is journaled, so that an interrupted download can be resumed.
+	 * @return If the download is resumable.
+	 */
+	public boolean isResumable() {
+		return resumable;
+	}
+
+	/**
+	 * Determines if the checksum of the downloaded data is verified.
+	 * @return If the checksum is verified.
+	 */
+	public boolean isVerify() {
+		return verify;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -101,52 +224,116 @@ public class FileDownloadOp extends Operation<File> {
 				}
 			}
 			sources.removeAll(remove);
-			/* prepare chunks */
-			long pos = 0;
+			/* continue interrupted download of the same file, if there is a journal for it */
 			long size = base.getFile().getSize();
-			long chunk = MIN_CHUNK_SIZE;
-			listener.setTotalSize(size);
-			/* dynamic chunk size */
-			while (size / chunk > sources.size() * CHUNK_NUM_PER_WORKER) {
-				chunk *= 2;
-				if (chunk >= MAX_CHUNK_SIZE) {
-					break;
+			long completed = 0;
+			if (resumable && stream == null) {
+				journal = new ChunkJournal(destination, base.getFile(), MIN_CHUNK_SIZE);
+				if (journal.load()) {
+					completed = size;
+					for (DataChunk chunk: journal.getMissing()) {
+						completed -= chunk.size();
+					}
 				}
 			}
-			while (size > chunk) {
-				queue.add(new DataChunk(pos, pos + chunk));
-				pos += chunk;
-				size -= chunk;
+			if (listener != null) {
+				listener.setTotalSize(size);
+				listener.addTransferred(completed);
+			}
+			/* the checksum is computed while downloading, the data from previous download is hashed too */
+			if (verify && stream == null) {
+				verifier = new ChunkVerifier(base.getFile().getChecksum(), size);
+				if (!verifier.isEnabled()) {
+					verifier = null;
+				} else if (completed > 0) {
+					long position = 0;
+					for (DataChunk chunk: journal.getMissing()) {
+						verifier.mark(position, chunk.getBeginByte(), null);
+						position = chunk.getEndByte();
+					}
+					verifier.mark(position, size, null);
+				}
 			}
-			queue.add(new DataChunk(pos, pos + size));
+			/* chunks are sized on the fly from the measured throughput of each source */
+			scheduler = new ChunkScheduler(size, MIN_CHUNK_SIZE, MAX_CHUNK_SIZE, journal, verifier);
 			/* open file for writing */
-			writer = new FileDownloadWriter(destination);
-			/* create threads and start them */
+			if (stream != null) {
+				writer = new StreamDownloadWriter(stream, bufferSize, scheduler);
+			} else {
+				try {
+					writer = new FileDownloadWriter(destination, size, force, mapped && size <= maxMappedSize);
+				} catch (IOException e) {
+					throw new MultiCloudException("Failed to open the target file.");
+				}
+			}
+			/* create threads and start them, the controller of each source decides how many of them transfer data */
 			for (FileCloudSource source: sources) {
 				setToken(source.getToken());
 				setRequest(source.getExecRequest());
 				addPropertyMapping("download_url", source.getFile().getDownloadUrl());
 				addPropertyMapping("id", source.getFile().getId());
 				addPropertyMapping("path", source.getFile().getPath());
-				HttpUriRequest request = prepareRequest(null);
-				pool.add(new FileDownloadThread(queue, request, writer, listener, chunk));
+				TransferSettings transfer = source.getTransfer();
+				ConnectionController controller = new ConnectionController((transfer != null) ? transfer.limitParallelParts(maxConnections) : maxConnections);
+				if (transfer != null && !transfer.isRanges()) {
+					/* no need to probe the source, that is known to send the whole file */
+					controller.disableRanges();
+				}
+				for (int i = 0; i < controller.getMaxConnections(); i++) {
+					HttpUriRequest request = prepareRequest(null);
+					FileDownloadThread thread = new FileDownloadThread(scheduler, controller, request, writer, listener, source.getClient(), source.getAccountName(), bufferPool);
+					scheduler.setTransfer(thread, transfer);
+					pool.add(thread);
+				}
 			}
 			for (FileDownloadThread thread: pool) {
 				thread.start();
 			}
 			for (FileDownloadThread thread: pool) {
 				try {
-					thread.join();
+					while (thread.isAlive()) {
+						thread.join(ChunkJournal.SAVE_INTERVAL);
+						saveJournal();
+						updateVerifier();
+					}
 				} catch (InterruptedException e) {
 					/* join interrupted */
 				}
 			}
 			/* close the file after writing all the data and set the result */
-			listener.finishTransfer();
+			if (listener != null) {
+				listener.finishTransfer();
+			}
+			boolean valid = true;
+			if (verifier != null && scheduler.isDone()) {
+				try {
+					valid = verifier.verify(writer);
+				} catch (IOException e) {
+					writer.close();
+					throw new MultiCloudException("Failed to verify the downloaded file.");
+				}
+			}
+			boolean done = scheduler.isDone();
+			if (stream != null) {
+				/* everything must get through the reassembly buffer */
+				done &= ((StreamDownloadWriter) writer).isFlushed();
+			}
 			writer.close();
-			if (queue.isEmpty()) {
+			if (done) {
+				if (journal != null) {
+					journal.delete();
+				}
+				if (!valid) {
+					List<String> names = verifier.getSources();
+					StringBuilder sb = new StringBuilder();
+					for (String name: names) {
+						sb.append((sb.length() == 0) ? "" : ", ").append(name);
+					}
+					throw new ChecksumException("Checksum mismatch of the data delivered by " + sb.toString() + ".", verifier.getChecksum(), verifier.getActual(), names);
+				}
 				setResult(destination);
 			} else {
+				saveJournal();
 				synchronized (lock) {
 					if (!isAborted) {
 						throw new MultiCloudException("Failed to download the file.");
@@ -166,4 +353,95 @@ public class FileDownloadOp extends Operation<File> {
 		/* no finalization necessary */
 	}
 
+	/**
+	 * Saves the journal of the download progress, if there is one. Failure to save the journal does not affect the download itself.
+	 */
+	private void saveJournal() {
+		if (journal != null) {
+			try {
+				journal.save();
+			} catch (IOException e) {
+				/* the download can still finish without the journal */
+			}
+		}
+	}
+
+	/**
+	 * Sets the pool the workers borrow their transfer buffers from. A worker holds its buffer only while it is allowed to transfer data.
+	 * If not set, each worker allocates its own buffer.
+	 * @param bufferPool Pool of the transfer buffers.
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Sets the capacity of the reassembly buffer used for writing to a channel. Parallel chunks never reach further ahead of the data already written.
+	 * @param bufferSize Capacity of the buffer.
+	 */
+	public void setBufferSize(long bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Sets if the data should be forced to the storage device after download.
+	 * @param force If the data should be forced to the storage device.
+	 */
+	public void setForce(boolean force) {
+		this.force = force;
+	}
+
+	/**
+	 * Sets if the target file should be memory-mapped. Files larger than the maximum size are written through the file channel regardless.
+	 * @param mapped If the target file should be memory-mapped.
+	 */
+	public void setMapped(boolean mapped) {
+		this.mapped = mapped;
+	}
+
+	/**
+	 * Sets the maximum number of parallel connections to one source. The connections are added gradually, as long as the throughput of the source keeps rising.
+	 * @param maxConnections Maximum number of connections per source.
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * Sets the maximum size of file to be memory-mapped.
+	 * @param maxMappedSize Maximum size of memory-mapped file.
+	 */
+	public void setMaxMappedSize(long maxMappedSize) {
+		this.maxMappedSize = maxMappedSize;
+	}
+
+	/**
+	 * Sets if the progress should be journaled next to the target file. An interrupted download of the same file to the same target then fetches only the missing parts.
+	 * @param resumable If the download should be resumable.
+	 */
+	public void setResumable(boolean resumable) {
+		this.resumable = resumable;
+	}
+
+	/**
+	 * Sets if the checksum of the downloaded data should be verified. Only MD5, SHA-1 and SHA-256 checksums in hexadecimal form are recognized, other files are not verified.
+	 * @param verify If the checksum should be verified.
+	 */
+	public void setVerify(boolean verify) {
+		this.verify = verify;
+	}
+
+	/**
+	 * Hashes the data downloaded so far, if the checksum is verified. Failure to read the data back is reported by the final verification.
+	 */
+	private void updateVerifier() {
+		if (verifier != null) {
+			try {
+				verifier.update(writer);
+			} catch (IOException e) {
+				/* verified again at the end */
+			}
+		}
+	}
+
 }
@@ -2,17 +2,25 @@ package cz.zcu.kiv.multicloud.filesystem;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.concurrent.BlockingQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 
 /**
  * cz.zcu.kiv.multicloud.filesystem/FileDownloadThread.java			<br /><br />
  *
  * Worker thread for downloading partial file content from the storage.
+ * If the source ignores the requested range and sends the whole file, the data before the chunk is skipped and the source is switched to a single connection, that keeps reading the following chunks from the same stream.
+ * Data between the chunks of the stream is skipped as well, so the file is never requested from its beginning again while the stream lasts.
  *
  * @author Jaromír Staněk
  * @version 1.0
@@ -22,36 +30,263 @@ public class FileDownloadThread extends Thread {
 
 	/** Threshold to stop after 5 failed requests. */
 	public static final int FAIL_THRESHOLD = 5;
+	/** Size of the block of data passed from the response to the file at once, set to 64 kiB. */
+	public static final int BLOCK_SIZE = 64 * 1024;
+	/** Time in milliseconds to wait for a connection to be allowed, before checking for remaining work again. */
+	public static final long ACQUIRE_TIMEOUT = 500;
 
-	/** Queue to get work from. */
-	private final BlockingQueue<DataChunk> queue;
+	/** Scheduler to get work from. */
+	private final ChunkScheduler scheduler;
+	/** Controller of the connections to the source. */
+	private final ConnectionController controller;
 	/** Request to get the file data from. */
 	private final HttpUriRequest request;
-	/** File writer. */
-	private final FileDownloadWriter writer;
+	/** Writer of the downloaded data. */
+	private final DownloadWriter writer;
 	/** If the thread should terminate. */
 	private boolean terminate;
 	/** Number of failed requests. */
 	private int failCount;
+	/** Chunk currently being downloaded. */
+	private DataChunk current;
+	/** Last chunk cancelled, because its hedged copy finished first. */
+	private DataChunk cancelled;
 	/** Progress listener. */
 	private final ProgressListener listener;
-	/** Size of the chunk. */
-	private final long chunkSize;
+	/** Shared HTTP client. If null, the thread creates its own. */
+	private final CloseableHttpClient sharedClient;
+	/** Name of the user account the data is downloaded from. */
+	private final String source;
+	/** Pool to borrow the transfer buffer from. If null, the thread allocates its own. */
+	private final BufferPool bufferPool;
 
 	/**
 	 * Ctor with necessary parameters.
-	 * @param queue Queue to get work from.
+	 * @param scheduler Scheduler to get work from.
+	 * @param controller Controller of the connections to the source.
 	 * @param request Request to get the file data from.
-	 * @param writer File writer.
+	 * @param writer Writer of the downloaded data.
+	 * @param listener Progress listener.
+	 * @param client Shared HTTP client.
 	 */
-	public FileDownloadThread(BlockingQueue<DataChunk> queue, HttpUriRequest request, FileDownloadWriter writer, ProgressListener listener, long chunkSize) {
-		this.queue = queue;
+	public FileDownloadThread(ChunkScheduler scheduler, ConnectionController controller, HttpUriRequest request, DownloadWriter writer, ProgressListener listener, CloseableHttpClient client) {
+		this(scheduler, controller, request, writer, listener, client, null);
+	}
+
+	/**
+	 * Ctor with necessary parameters and the name of the source.
+	 * @param scheduler Scheduler to get work from.
+	 * @param controller Controller of the connections to the source.
+	 * @param request Request to get the file data from.
+	 * @param writer Writer of the downloaded data.
+	 * @param listener Progress listener.
+	 * @param client Shared HTTP client.
+	 * @param source Name of the user account the data is downloaded from.
+	 */
+	public FileDownloadThread(ChunkScheduler scheduler, ConnectionController controller, HttpUriRequest request, DownloadWriter writer, ProgressListener listener, CloseableHttpClient client, String source) {
+		this(scheduler, controller, request, writer, listener, client, source, null);
+	}
+
+	/**
+	 * Ctor with necessary parameters, the name of the source and the pool of transfer buffers.
+	 * @param scheduler Scheduler to get work from.
+	 * @param controller Controller of the connections to the source.
+	 * @param request Request to get the file data from.
+	 * @param writer Writer of the downloaded data.
+	 * @param listener Progress listener.
+	 * @param client Shared HTTP client.
+	 * @param source Name of the user account the data is downloaded from.
+	 * @param bufferPool Pool to borrow the transfer buffer from.
+	 */
+	public FileDownloadThread(ChunkScheduler scheduler, ConnectionController controller, HttpUriRequest request, DownloadWriter writer, ProgressListener listener, CloseableHttpClient client, String source, BufferPool bufferPool) {
+		this.scheduler = scheduler;
+		this.controller = controller;
 		this.request = request;
 		this.writer = writer;
 		this.listener = listener;
-		this.chunkSize = chunkSize;
+		this.sharedClient = client;
+		this.source = source;
+		this.bufferPool = bufferPool;
 		this.terminate = false;
 		this.failCount = 0;
+		this.current = null;
+		this.cancelled = null;
+	}
+
+	/**
+	 * Cancels the download of the chunk, because another worker already finished it. If the chunk is being downloaded, the request is aborted.
+	 * @param chunk Chunk to be cancelled.
+	 */
+	public synchronized void cancel(DataChunk chunk) {
+		cancelled = chunk;
+		if (current == chunk) {
+			request.abort();
+		}
+	}
+
+	/**
+	 * Downloads the chunk. The unfinished part of the chunk is returned to the scheduler.
+	 * If the whole file is sent instead of the chunk, the following chunks are read from the same response for as long as the scheduler extends them.
+	 * @param client HTTP client to execute the request with.
+	 * @param chunk Chunk to be downloaded.
+	 * @param buffer Buffer for one block of data.
+	 */
+	private void download(CloseableHttpClient client, DataChunk chunk, ByteBuffer buffer) {
+		synchronized (this) {
+			if (cancelled == chunk) {
+				return;
+			}
+			current = chunk;
+		}
+		request.addHeader("Range", "bytes=" + chunk.getBeginByte() + "-" + (chunk.getEndByte() - 1));
+		CloseableHttpResponse response = null;
+		boolean failed = false;
+		boolean whole = false;
+		try {
+			long sent = System.nanoTime();
+			response = client.execute(request);
+			int code = response.getStatusLine().getStatusCode();
+			if (code >= 400) {
+				if (code == 429 || code >= 500) {
+					/* the source is overloaded */
+					controller.congestion();
+				}
+				failed = true;
+			} else if (code == 206 && !isRangeMatching(response, chunk.getBeginByte())) {
+				/* the source sent a different range */
+				failed = true;
+			} else {
+				long received = System.nanoTime();
+				long begin = chunk.getBeginByte();
+				InputStream content = response.getEntity().getContent();
+				if (code != 206) {
+					/* the source does not support ranges and sent the whole file */
+					whole = true;
+					controller.disableRanges();
+					skip(content, begin);
+				}
+				transfer(content, chunk, buffer);
+				scheduler.report(this, chunk.getBeginByte() - begin, (System.nanoTime() - received) / 1000000, (received - sent) / 1000000);
+				/* response might end before the end of the chunk */
+				failed = (chunk.size() > 0);
+				while (whole && !failed && !shouldTerminate()) {
+					long position = chunk.getEndByte();
+					DataChunk following = scheduler.extend(this, position);
+					if (following == null) {
+						break;
+					}
+					synchronized (this) {
+						current = following;
+					}
+					chunk = following;
+					/* the chunks in front of it were taken by other workers */
+					skip(content, chunk.getBeginByte() - position);
+					received = System.nanoTime();
+					begin = chunk.getBeginByte();
+					transfer(content, chunk, buffer);
+					scheduler.report(this, chunk.getBeginByte() - begin, (System.nanoTime() - received) / 1000000, 0);
+					failed = (chunk.size() > 0);
+				}
+			}
+			if (!whole) {
+				/* consume the rest of the response so the connection can be reused, the rest of the whole file is not worth it */
+				EntityUtils.consume(response.getEntity());
+			}
+		} catch (IOException e) {
+			/* failed to download the chunk */
+			failed = (chunk.size() > 0);
+			if (!shouldTerminate() && !isCancelled(chunk)) {
+				controller.congestion();
+			}
+		} finally {
+			request.removeHeaders("Range");
+			if (response != null) {
+				try {
+					response.close();
+				} catch (IOException e) {
+					/* ignore closing failure */
+				}
+			}
+		}
+		synchronized (this) {
+			current = null;
+			if (cancelled == chunk) {
+				/* the request was aborted and must be reset before it is executed again */
+				if (request instanceof HttpRequestBase) {
+					((HttpRequestBase) request).reset();
+				}
+				return;
+			}
+		}
+		if (failed) {
+			fail(chunk);
+		} else {
+			scheduler.complete(this);
+		}
+	}
+
+	/**
+	 * Counts the failed request and returns the unfinished part of the chunk back to the scheduler.
+	 * @param chunk Unfinished part of the chunk.
+	 */
+	private void fail(DataChunk chunk) {
+		scheduler.giveBack(this, chunk);
+		synchronized (this) {
+			failCount++;
+			if (failCount >= FAIL_THRESHOLD) {
+				terminate = true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the name of the user account the data is downloaded from.
+	 * @return Name of the user account.
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Determines if the chunk was cancelled.
+	 * @param chunk Chunk to be checked.
+	 * @return If the chunk was cancelled.
+	 */
+	private synchronized boolean isCancelled(DataChunk chunk) {
+		return cancelled == chunk;
+	}
+
+	/**
+	 * Determines if the source of the thread ignores ranges, so every request reads the file from its beginning.
+	 * @return If the source is read sequentially.
+	 */
+	public boolean isSequential() {
+		return controller.isSequential();
+	}
+
+	/**
+	 * Determines if the partial response starts at the requested position. Responses without the range specified are trusted.
+	 * @param response Partial response.
+	 * @param begin Requested first byte.
+	 * @return If the response starts at the requested position.
+	 */
+	private boolean isRangeMatching(HttpResponse response, long begin) {
+		Header header = response.getFirstHeader("Content-Range");
+		if (header == null) {
+			return true;
+		}
+		/* format: bytes first-last/size */
+		String value = header.getValue().trim();
+		int start = value.indexOf(' ');
+		int end = value.indexOf('-');
+		if (start < 0 || end < start) {
+			return false;
+		}
+		try {
+			return Long.parseLong(value.substring(start + 1, end).trim()) == begin;
+		} catch (NumberFormatException e) {
+			return false;
+		}
 	}
 
 	/**
@@ -59,51 +294,63 @@ public class FileDownloadThread extends Thread {
 	 */
 	@Override
 	public void run() {
-		byte[] buffer = new byte[(int) chunkSize];
-		CloseableHttpClient client = HttpClients.createDefault();
-		while (!shouldTerminate()) {
+		ByteBuffer buffer = null;
+		if (!writer.isMapped() && bufferPool == null) {
+			buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+		}
+		CloseableHttpClient client = sharedClient;
+		if (client == null) {
+			client = HttpClients.createDefault();
+		}
+		boolean done = false;
+		while (!done && !shouldTerminate()) {
+			/* wait for the controller to allow this connection */
 			try {
-				if (queue.isEmpty()) {
+				if (!controller.acquire(ACQUIRE_TIMEOUT)) {
+					done = scheduler.isDone();
+					continue;
+				}
+			} catch (InterruptedException e) {
+				break;
+			}
+			if (!writer.isMapped() && bufferPool != null) {
+				/* the buffer is held only together with the connection */
+				try {
+					buffer = bufferPool.acquire(BLOCK_SIZE);
+				} catch (InterruptedException e) {
+					controller.release();
 					break;
 				}
-				DataChunk chunk = queue.take();
-				if (chunk.size() != buffer.length) {
-					buffer = new byte[(int) chunk.size()];
+			}
+			scheduler.register(this);
+			boolean held = true;
+			while (!shouldTerminate()) {
+				if (controller.relinquish()) {
+					held = false;
+					break;
 				}
-				request.addHeader("Range", "bytes=" + chunk.getBeginByte() + "-" + (chunk.getEndByte() - 1));
-				CloseableHttpResponse response = client.execute(request);
-				request.removeHeaders("Range");
-				if (response.getStatusLine().getStatusCode() >= 400) {
-					queue.put(chunk);
-					failCount++;
-					if (failCount >= FAIL_THRESHOLD) {
-						terminate = true;
-					}
-				} else {
-					int read;
-					int total = 0;
-					InputStream content = response.getEntity().getContent();
-					while (true) {
-						read = content.read();
-						if (read == -1 || total >= buffer.length) {
-							break;
-						}
-						listener.addTransferred(1);
-						buffer[total++] = (byte) read;
-					}
-					writer.write(buffer, chunk.getBeginByte());
+				DataChunk chunk = scheduler.next(this);
+				if (chunk == null) {
+					done = true;
+					break;
 				}
-				response.close();
-			} catch (InterruptedException e) {
-				/* exception when the thread should finish */
-			} catch (IOException e) {
-				/* failed to download the chunk */
+				download(client, chunk, buffer);
+			}
+			scheduler.unregister(this);
+			if (bufferPool != null) {
+				bufferPool.release(buffer);
+				buffer = null;
+			}
+			if (held) {
+				controller.release();
 			}
 		}
-		try {
-			client.close();
-		} catch (IOException e) {
-			/* ignore closing failure */
+		if (sharedClient == null) {
+			try {
+				client.close();
+			} catch (IOException e) {
+				/* ignore closing failure */
+			}
 		}
 	}
 
@@ -115,6 +362,28 @@ public class FileDownloadThread extends Thread {
 		return terminate;
 	}
 
+	/**
+	 * Throws away the data in front of the chunk.
+	 * @param content Response body.
+	 * @param count Number of bytes to be thrown away.
+	 * @throws IOException If reading the response failed or it ended too early.
+	 */
+	private void skip(InputStream content, long count) throws IOException {
+		long left = count;
+		while (left > 0 && !shouldTerminate()) {
+			long skipped = content.skip(left);
+			if (skipped <= 0) {
+				/* skip does not report the end of the stream */
+				if (content.read() == -1) {
+					throw new IOException("Response ended before the chunk.");
+				}
+				skipped = 1;
+			}
+			left -= skipped;
+			controller.transferred(skipped);
+		}
+	}
+
 	/**
 	 * Synchronized method to tell the thread that it should terminate.
 	 */
@@ -124,4 +393,50 @@ public class FileDownloadThread extends Thread {
 		interrupt();
 	}
 
+	/**
+	 * Streams the response body to the file block by block. The beginning of the chunk is moved with every block written, so only the unfinished part of the chunk remains.
+	 * If the target file is memory-mapped, the data is read straight into the mapping.
+	 * @param content Response body.
+	 * @param chunk Chunk to be filled.
+	 * @param buffer Buffer for one block of data. Not used for memory-mapped files.
+	 * @throws IOException If reading the response or writing the file failed.
+	 */
+	private void transfer(InputStream content, DataChunk chunk, ByteBuffer buffer) throws IOException {
+		ReadableByteChannel channel = Channels.newChannel(content);
+		boolean end = false;
+		while (!end && chunk.size() > 0 && !shouldTerminate()) {
+			ByteBuffer block;
+			if (writer.isMapped()) {
+				block = writer.map(chunk.getBeginByte(), Math.min(chunk.size(), BLOCK_SIZE));
+			} else {
+				block = buffer;
+				block.clear();
+				if (chunk.size() < block.capacity()) {
+					block.limit((int) chunk.size());
+				}
+			}
+			/* fill the whole block to keep the number of writes low */
+			int start = block.position();
+			while (block.hasRemaining()) {
+				if (channel.read(block) == -1) {
+					end = true;
+					break;
+				}
+			}
+			int read = block.position() - start;
+			if (read == 0) {
+				continue;
+			}
+			if (!writer.isMapped()) {
+				block.flip();
+				writer.write(block, chunk.getBeginByte());
+			}
+			long progress = scheduler.advance(this, chunk, read);
+			controller.transferred(read);
+			if (listener != null && progress > 0) {
+				listener.addTransferred(progress);
+			}
+		}
+	}
+
 }
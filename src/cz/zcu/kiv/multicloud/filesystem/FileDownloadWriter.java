@@ -1,45 +1,114 @@
 package cz.zcu.kiv.multicloud.filesystem;
 
-import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * cz.zcu.kiv.multicloud.filesystem/FileDownloadWriter.java			<br /><br />
  *
- * Random access file writer.
+ * Random access file writer. Writes are positional, so multiple threads can write their chunks at the same time without locking.
+ * The file can also be memory-mapped in windows, so the data is copied straight into the mapping instead of being written by the channel.
  *
  * @author Jaromír Staněk
  * @version 1.0
  *
  */
-public class FileDownloadWriter implements Closeable {
+public class FileDownloadWriter implements DownloadWriter {
 
-	/** Random access file. */
-	private RandomAccessFile raf;
+	/** Size of one window of a memory-mapped file, set to 64 MiB. */
+	public static final long MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	/** Channel of the target file. */
+	private final FileChannel channel;
+	/** If the data should be forced to the storage device on close. */
+	private final boolean force;
+	/** Length of the file. */
+	private final long length;
+	/** Windows of the memory-mapped file, null if the file is not mapped. */
+	private final AtomicReferenceArray<MappedByteBuffer> windows;
 
 	/**
 	 * Ctor with target file.
 	 * @param file Target file.
+	 * @throws IOException If the file cannot be opened.
 	 */
-	public FileDownloadWriter(File file) {
-		try {
-			raf = new RandomAccessFile(file, "rw");
-		} catch (FileNotFoundException e) {
-			raf = null;
+	public FileDownloadWriter(File file) throws IOException {
+		this(file, -1, false, false);
+	}
+
+	/**
+	 * Ctor with target file, its length and the synchronization option.
+	 * @param file Target file.
+	 * @param length Length of the file to be preallocated. Negative value leaves the file length as is.
+	 * @param force If the data should be forced to the storage device on close.
+	 * @throws IOException If the file cannot be opened or preallocated.
+	 */
+	public FileDownloadWriter(File file, long length, boolean force) throws IOException {
+		this(file, length, force, false);
+	}
+
+	/**
+	 * Ctor with target file, its length, the synchronization option and the memory-mapping option.
+	 * @param file Target file.
+	 * @param length Length of the file to be preallocated. Negative value leaves the file length as is.
+	 * @param force If the data should be forced to the storage device on close.
+	 * @param mapped If the file should be memory-mapped. Applies only to non-empty files of known length.
+	 * @throws IOException If the file cannot be opened or preallocated.
+	 */
+	public FileDownloadWriter(File file, long length, boolean force, boolean mapped) throws IOException {
+		/* opened for reading too, so the written data can be verified and the file can be mapped */
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (mapped && length > 0) {
+			this.windows = new AtomicReferenceArray<>((int) ((length + MAP_WINDOW_SIZE - 1) / MAP_WINDOW_SIZE));
+		} else {
+			this.windows = null;
+		}
+		this.force = force;
+		this.length = length;
+		if (length >= 0) {
+			try {
+				preallocate(length);
+			} catch (IOException e) {
+				channel.close();
+				throw e;
+			}
 		}
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Forces the data to the storage device, if requested, and closes the file.
+	 * Memory-mapped windows are released once they are garbage collected.
 	 */
 	@Override
 	public void close() {
-		if (raf != null) {
+		try {
+			if (force && channel.isOpen()) {
+				if (windows != null) {
+					for (int i = 0; i < windows.length(); i++) {
+						MappedByteBuffer window = windows.get(i);
+						if (window != null) {
+							window.force();
+						}
+					}
+				}
+				channel.force(true);
+			}
+		} catch (IOException e) {
+			/* ignore synchronization failure */
+		} finally {
+			if (windows != null) {
+				for (int i = 0; i < windows.length(); i++) {
+					windows.set(i, null);
+				}
+			}
 			try {
-				raf.close();
+				channel.close();
 			} catch (IOException e) {
 				/* ignore closing exception */
 			}
@@ -47,17 +116,111 @@ public class FileDownloadWriter implements Closeable {
 	}
 
 	/**
-	 * Synchronized method for writing data to the file.
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isMapped() {
+		return windows != null;
+	}
+
+	/**
+	 * Returns a view of the memory-mapped file for writing data at the position. The view never crosses the border of a window, so it can be shorter than requested.
+	 * @param position Position in the file.
+	 * @param size Requested number of bytes.
+	 * @return View of the mapping with position set to the requested position and limit to its end.
+	 * @throws IOException If the file is not memory-mapped, the position is out of the file or the window cannot be mapped.
+	 */
+	@Override
+	public ByteBuffer map(long position, long size) throws IOException {
+		if (windows == null) {
+			throw new IOException("File not memory-mapped.");
+		}
+		if (position < 0 || position >= length) {
+			throw new IOException("Position out of the file.");
+		}
+		int index = (int) (position / MAP_WINDOW_SIZE);
+		int offset = (int) (position % MAP_WINDOW_SIZE);
+		MappedByteBuffer window = windows.get(index);
+		if (window == null) {
+			synchronized (windows) {
+				window = windows.get(index);
+				if (window == null) {
+					long begin = index * MAP_WINDOW_SIZE;
+					window = channel.map(MapMode.READ_WRITE, begin, Math.min(MAP_WINDOW_SIZE, length - begin));
+					windows.set(index, window);
+				}
+			}
+		}
+		ByteBuffer view = window.duplicate();
+		view.position(offset);
+		view.limit((int) Math.min(window.capacity(), offset + size));
+		return view;
+	}
+
+	/**
+	 * Sets the length of the file. Longer files are truncated, shorter files are extended by writing the last byte.
+	 * @param length Length of the file.
+	 * @throws IOException If the length cannot be set.
+	 */
+	private void preallocate(long length) throws IOException {
+		if (channel.size() > length) {
+			channel.truncate(length);
+		} else if (channel.size() < length) {
+			ByteBuffer last = ByteBuffer.allocate(1);
+			while (last.hasRemaining()) {
+				channel.write(last, length - 1);
+			}
+		}
+	}
+
+	/**
+	 * Reads already written data back from the file. The buffer is filled up to its limit, unless the end of the file is reached.
 	 * @param buffer Data buffer.
 	 * @param position Position in the file.
+	 * @throws IOException If the data cannot be read.
 	 */
-	public synchronized void write(byte[] buffer, long position) {
-		if (raf != null) {
-			try {
-				raf.seek(position);
-				raf.write(buffer);
-			} catch (IOException e) {
-				/* ignore write failure */
+	@Override
+	public void read(ByteBuffer buffer, long position) throws IOException {
+		long pos = position;
+		if (windows != null) {
+			while (buffer.hasRemaining() && pos < length) {
+				ByteBuffer view = map(pos, buffer.remaining());
+				pos += view.remaining();
+				buffer.put(view);
+			}
+		} else {
+			while (buffer.hasRemaining()) {
+				int read = channel.read(buffer, pos);
+				if (read == -1) {
+					break;
+				}
+				pos += read;
+			}
+		}
+	}
+
+	/**
+	 * Writes data to the file. All the remaining bytes of the buffer are written. Can be called from multiple threads at once.
+	 * @param buffer Data buffer.
+	 * @param position Position in the file.
+	 * @throws IOException If the data cannot be written.
+	 */
+	@Override
+	public void write(ByteBuffer buffer, long position) throws IOException {
+		long pos = position;
+		if (windows != null) {
+			while (buffer.hasRemaining()) {
+				ByteBuffer view = map(pos, buffer.remaining());
+				int size = view.remaining();
+				ByteBuffer part = buffer.duplicate();
+				part.limit(part.position() + size);
+				view.put(part);
+				buffer.position(buffer.position() + size);
+				pos += size;
+			}
+		} else {
+			while (buffer.hasRemaining()) {
+				pos += channel.write(buffer, pos);
 			}
 		}
 	}
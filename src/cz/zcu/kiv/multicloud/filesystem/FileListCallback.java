@@ -0,0 +1,25 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.util.List;
+
+import cz.zcu.kiv.multicloud.json.FileInfo;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/FileListCallback.java			<br /><br />
+ *
+ * Interface for receiving the results of folder listing and search page by page, as soon as each page is fetched from the cloud storage.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public interface FileListCallback {
+
+	/**
+	 * Handling of one page of the results.
+	 * @param page Files and folders on the page.
+	 * @return If the next page should be fetched.
+	 */
+	boolean onPage(List<FileInfo> page);
+
+}
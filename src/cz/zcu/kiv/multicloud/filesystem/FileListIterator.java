@@ -0,0 +1,188 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import cz.zcu.kiv.multicloud.json.FileInfo;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/FileListIterator.java			<br /><br />
+ *
+ * Iterator over the results of folder listing and search, that are fetched page by page in the background.
+ * Pages are fetched ahead while the caller works on the previous ones, up to the prefetch limit.
+ * Any failure of the background operation is thrown from {@link #hasNext()} wrapped in {@link java.lang.IllegalStateException}.
+ * Iterators not iterated to the end should be closed. The background operation waits for an iterator, that is neither read nor closed, for at most {@link #ABANDON_TIMEOUT} and then it stops fetching the pages.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class FileListIterator implements Iterator<FileInfo>, FileListCallback, Closeable {
+
+	/** Default number of pages fetched ahead. */
+	public static final int DEFAULT_PREFETCH = 2;
+	/** Interval in milliseconds between checks if the iterator was closed. */
+	public static final long CLOSE_CHECK_INTERVAL = 100;
+	/** Time in milliseconds after which an iterator, that is not read, is considered abandoned. Default value is set to 5 minutes. */
+	public static final long ABANDON_TIMEOUT = 5 * 60 * 1000;
+
+	/** Marker of the last page. */
+	private static final List<FileInfo> END = new ArrayList<>();
+
+	/** Pages fetched, but not yet iterated. */
+	private final BlockingQueue<List<FileInfo>> pages;
+	/** Iterator over the current page. */
+	private Iterator<FileInfo> current;
+	/** Exception the background operation failed with. */
+	private volatile Exception exception;
+	/** If the last page was reached. */
+	private boolean finished;
+	/** If the iterator was closed. */
+	private volatile boolean closed;
+	/** If the iterator was closed, because it was not read for too long. */
+	private volatile boolean abandoned;
+
+	/**
+	 * Empty ctor.
+	 */
+	public FileListIterator() {
+		this(DEFAULT_PREFETCH);
+	}
+
+	/**
+	 * Ctor with number of pages fetched ahead supplied.
+	 * @param prefetch Number of pages fetched ahead.
+	 */
+	public FileListIterator(int prefetch) {
+		this.pages = new ArrayBlockingQueue<>(prefetch + 1);
+		this.current = null;
+		this.exception = null;
+		this.finished = false;
+		this.closed = false;
+		this.abandoned = false;
+	}
+
+	/**
+	 * Closes the iterator. No more pages are fetched and the iteration ends.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		pages.clear();
+	}
+
+	/**
+	 * Marks the end of the results. Called when the background operation ends.
+	 * @param exception Exception the operation failed with. Null if it succeeded.
+	 */
+	public void finish(Exception exception) {
+		this.exception = exception;
+		put(END);
+	}
+
+	/**
+	 * Returns the exception the background operation failed with.
+	 * @return Exception thrown.
+	 */
+	public Exception getException() {
+		return exception;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean hasNext() {
+		if (closed) {
+			/* rest of the current page is dropped as well */
+			current = null;
+		}
+		while (!finished && (current == null || !current.hasNext())) {
+			if (closed) {
+				/* the marker of the last page might have been dropped */
+				finished = true;
+				if (abandoned) {
+					throw new IllegalStateException("Iterator was not read for too long.");
+				}
+				break;
+			}
+			List<FileInfo> page;
+			try {
+				page = pages.poll(CLOSE_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Iteration interrupted.", e);
+			}
+			if (page == null) {
+				continue;
+			}
+			if (page == END) {
+				finished = true;
+				if (exception != null) {
+					throw new IllegalStateException("Failed to fetch the results.", exception);
+				}
+			} else {
+				current = page.iterator();
+			}
+		}
+		return (current != null && current.hasNext());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public FileInfo next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return current.next();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean onPage(List<FileInfo> page) {
+		return put(page);
+	}
+
+	/**
+	 * Puts the page in the queue. Waits for free space, while the iterator is not closed. If there is no free space for too long, the iterator is closed as abandoned.
+	 * @param page Page to be put.
+	 * @return If the page was put in the queue.
+	 */
+	private boolean put(List<FileInfo> page) {
+		try {
+			long waiting = 0;
+			while (!closed) {
+				if (pages.offer(page, CLOSE_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+				waiting += CLOSE_CHECK_INTERVAL;
+				if (waiting >= ABANDON_TIMEOUT) {
+					abandoned = true;
+					close();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/**
+	 * Removal is not supported.
+	 */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Removal not supported.");
+	}
+
+}
@@ -0,0 +1,234 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/FileRegionEntity.java			<br /><br />
+ *
+ * Entity streaming a region of a file straight from its channel. If the output exposes a channel, the region is moved by {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)} without passing through the Java heap.
+ * Otherwise it is written block by block through a single buffer, which is borrowed from the buffer pool, if there is one. Progress is reported to the listener after each block.
+ * The region is read with positional reads, so multiple entities can share the same channel and the entity can be written repeatedly.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class FileRegionEntity extends AbstractHttpEntity {
+
+	/** Size of one block written at once, set to 64 kiB. */
+	public static final int BLOCK_SIZE = 64 * 1024;
+
+	/**
+	 * Input stream reading the region of the file.
+	 */
+	private class RegionInputStream extends InputStream {
+
+		/** Position in the file. */
+		private long current;
+
+		/**
+		 * Empty ctor.
+		 */
+		public RegionInputStream() {
+			current = position;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, position + length - current);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			if (read(b, 0, 1) == -1) {
+				return -1;
+			}
+			return b[0] & 0xff;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			int available = available();
+			if (available == 0) {
+				return -1;
+			}
+			int read = channel.read(ByteBuffer.wrap(b, off, Math.min(len, available)), current);
+			if (read == -1) {
+				throw new IOException("File ended before the region.");
+			}
+			current += read;
+			return read;
+		}
+
+	}
+
+	/** Channel of the file. */
+	private final FileChannel channel;
+	/** First byte of the region. */
+	private final long position;
+	/** Length of the region. */
+	private final long length;
+	/** Progress listener. */
+	private final ProgressListener listener;
+	/** Pool of the buffers. */
+	private final BufferPool bufferPool;
+
+	/**
+	 * Ctor with the region of the file and the listener.
+	 * @param channel Channel of the file. It is not closed by the entity.
+	 * @param position First byte of the region.
+	 * @param length Length of the region.
+	 * @param listener Progress listener.
+	 */
+	public FileRegionEntity(FileChannel channel, long position, long length, ProgressListener listener) {
+		this(channel, position, length, listener, null);
+	}
+
+	/**
+	 * Ctor with the region of the file, the listener and the pool of the buffers.
+	 * @param channel Channel of the file. It is not closed by the entity.
+	 * @param position First byte of the region.
+	 * @param length Length of the region.
+	 * @param listener Progress listener.
+	 * @param bufferPool Pool of the buffers. If null, the buffer is allocated for each write.
+	 */
+	public FileRegionEntity(FileChannel channel, long position, long length, ProgressListener listener, BufferPool bufferPool) {
+		this.channel = channel;
+		this.position = position;
+		this.length = length;
+		this.listener = listener;
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public InputStream getContent() {
+		return new RegionInputStream();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getContentLength() {
+		return length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * Reports the progress to the listener, if there is one.
+	 * @param transferred Number of bytes written.
+	 */
+	private void report(long transferred) {
+		if (listener != null) {
+			listener.addTransferred(transferred);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		WritableByteChannel target = null;
+		if (out instanceof WritableByteChannel) {
+			target = (WritableByteChannel) out;
+		} else if (out instanceof FileOutputStream) {
+			target = ((FileOutputStream) out).getChannel();
+		}
+		long current = position;
+		long end = position + length;
+		if (target != null) {
+			while (current < end) {
+				long written = channel.transferTo(current, Math.min(BLOCK_SIZE, end - current), target);
+				if (written <= 0) {
+					/* the file is shorter than expected, the rest is written through the buffer to fail properly */
+					break;
+				}
+				current += written;
+				report(written);
+			}
+		}
+		if (current < end) {
+			ByteBuffer buffer = null;
+			try {
+				int capacity = (int) Math.min(BLOCK_SIZE, end - current);
+				if (bufferPool == null) {
+					buffer = ByteBuffer.allocate(capacity);
+				} else {
+					buffer = bufferPool.acquire(capacity);
+				}
+				/* pooled buffers are direct, so they are written through a channel over the stream */
+				WritableByteChannel output = buffer.hasArray() ? null : Channels.newChannel(out);
+				while (current < end) {
+					buffer.clear();
+					buffer.limit((int) Math.min(capacity, end - current));
+					int read = channel.read(buffer, current);
+					if (read == -1) {
+						throw new IOException("File ended before the region.");
+					}
+					buffer.flip();
+					if (output == null) {
+						out.write(buffer.array(), buffer.arrayOffset(), read);
+					} else {
+						while (buffer.hasRemaining()) {
+							output.write(buffer);
+						}
+					}
+					current += read;
+					report(read);
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Waiting for a buffer was interrupted.");
+			} finally {
+				if (buffer != null && bufferPool != null) {
+					bufferPool.release(buffer);
+				}
+			}
+		}
+		if (listener != null) {
+			listener.finishTransfer();
+		}
+	}
+
+}
@@ -2,33 +2,22 @@ package cz.zcu.kiv.multicloud.filesystem;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-
-import org.apache.http.Header;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.entity.InputStreamEntity;
-import org.apache.http.entity.StringEntity;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import cz.zcu.kiv.multicloud.MultiCloudException;
-import cz.zcu.kiv.multicloud.json.CloudRequest;
 import cz.zcu.kiv.multicloud.json.FileInfo;
-import cz.zcu.kiv.multicloud.json.UploadSession;
-import cz.zcu.kiv.multicloud.utils.Utils;
+import cz.zcu.kiv.multicloud.json.TransferSettings;
 
 /**
  * cz.zcu.kiv.multicloud.filesystem/FileUploadOp.java			<br /><br />
  *
- * Operation for uploading a file.
+ * Operation for uploading a file. The file can be uploaded to multiple destinations at once, while it is read from the disk only once.
+ * Chunks sent to each destination are sized by its transfer capabilities. Uploads to a single destination can stream the chunks straight from the file channel instead. This is off by default, as the blocking HTTP client writes through a stream, so the transfer does not avoid the copy and loses the read-ahead of the ring.
+ * If the upload is resumable, its sessions are journaled next to the file as the file name with {@link SessionJournal#JOURNAL_EXTENSION} appended, so that an interrupted upload continues in the same sessions from the offsets confirmed by the servers. Journaling is off by default.
+ * Streams of unknown length are uploaded chunk by chunk in the upload sessions and their size is sent once the end of the stream is reached. Such uploads cannot be resumed.
  *
  * @author Jaromír Staněk
  * @version 1.0
@@ -36,10 +25,12 @@ import cz.zcu.kiv.multicloud.utils.Utils;
  */
 public class FileUploadOp extends Operation<FileInfo> {
 
-	/** Size of a chunk for file download. Default value is set to 4 MiB. */
+	/** Size of a chunk for file upload to destinations without preferred size. Default value is set to 4 MiB. */
 	public static final long CHUNK_SIZE = 4 * 1024 * 1024;
 	/** String to indicate that the body of the request should contain upload data. */
 	public static final String DATA_MAPPING = "<data>";
+	/** Default number of parts sent in parallel to destinations accepting them. */
+	public static final int DEFAULT_PARALLEL_PARTS = 4;
 
 	/** List of destinations to upload the file to. */
 	private final List<FileCloudSource> destinations;
@@ -47,8 +38,26 @@ public class FileUploadOp extends Operation<FileInfo> {
 	private final List<FileUploadThread> pool;
 	/** File to be uploaded. */
 	private final File data;
+	/** Stream to be uploaded, if no file is. */
+	private final ReadableByteChannel stream;
+	/** If the destination file should be overwritten. */
+	private final boolean overwrite;
 	/** Progress listener. */
 	private final ProgressListener listener;
+	/** Pool of the buffers for the chunks. */
+	private BufferPool bufferPool;
+	/** Number of chunks read ahead for the destinations. */
+	private int ringSize;
+	/** Number of parts sent in parallel to one destination. */
+	private int parallelParts;
+	/** If the upload sessions should be journaled, so that an interrupted upload can be resumed. Off by default. */
+	private boolean resumable;
+	/** Journal of the upload sessions. */
+	private SessionJournal journal;
+	/** If saving the journal failed. */
+	private boolean journalFailed;
+	/** If the chunks of uploads to a single destination should be streamed straight from the file. Off by default. */
+	private boolean zeroCopy;
 	/** Lock object for concurrent method calls. */
 	private final Object lock;
 	/** If all the uploads are done. */
@@ -62,17 +71,47 @@ public class FileUploadOp extends Operation<FileInfo> {
 	 * @param listener Progress listener.
 	 */
 	public FileUploadOp(List<FileCloudSource> destinations, boolean overwrite, File data, ProgressListener listener) {
+		this(destinations, overwrite, data, null, listener);
+	}
+
+	/**
+	 * Ctor with the stream of unknown length. The stream is not closed by the operation.
+	 * @param destinations List of destinations to upload the stream to.
+	 * @param overwrite If the destination file should be overwritten.
+	 * @param stream The uploaded stream.
+	 * @param listener Progress listener.
+	 */
+	public FileUploadOp(List<FileCloudSource> destinations, boolean overwrite, ReadableByteChannel stream, ProgressListener listener) {
+		this(destinations, overwrite, null, stream, listener);
+	}
+
+	/**
+	 * Ctor with either the file or the stream.
+	 * @param destinations List of destinations to upload the data to.
+	 * @param overwrite If the destination file should be overwritten.
+	 * @param data The uploaded file.
+	 * @param stream The uploaded stream.
+	 * @param listener Progress listener.
+	 */
+	private FileUploadOp(List<FileCloudSource> destinations, boolean overwrite, File data, ReadableByteChannel stream, ProgressListener listener) {
 		super(OperationType.FILE_UPLOAD, null, null);
 		this.destinations = destinations;
 		this.data = data;
+		this.stream = stream;
+		this.overwrite = overwrite;
 		this.listener = listener;
 		this.pool = new ArrayList<>();
+		this.bufferPool = null;
+		this.ringSize = ChunkRing.DEFAULT_SLOTS;
+		this.parallelParts = DEFAULT_PARALLEL_PARTS;
+		this.resumable = false;
+		this.journal = null;
+		this.journalFailed = false;
+		this.zeroCopy = false;
 
-		if (this.listener != null) {
+		if (this.listener != null && data != null) {
 			this.listener.setTotalSize(data.length());
 		}
-		addPropertyMapping("overwrite", overwrite ? "true" : "false");
-		addPropertyMapping("size", String.valueOf(data.length()));
 		lock = new Object();
 	}
 
@@ -90,109 +129,93 @@ public class FileUploadOp extends Operation<FileInfo> {
 	}
 
 	/**
-	 * Method for parsing upload session information out of a response.
-	 * @param request Request to which the response belongs to.
-	 * @param response Response to be parsed.
-	 * @return Upload session.
+	 * Returns the pool the buffers for the chunks are borrowed from.
+	 * @return Pool of the buffers.
 	 */
-	protected synchronized UploadSession getParsedSessionResponse(CloudRequest request, HttpResponse response) {
-		setRequest(request);
-		for (Header header: response.getAllHeaders()) {
-			responseHeaders.put(header.getName(), header.getValue());
-		}
-		UploadSession session = null;
-		try {
-			if (response.getStatusLine().getStatusCode() < 400) {
-				JsonNode tree = parseJsonResponse(response);
-				if (tree != null) {
-					session = json.getMapper().treeToValue(tree, UploadSession.class);
-				} else {
-					for (Entry<String, String> header: responseHeaders.entrySet()) {
-						if (header.getKey().equals("Location")) {
-							responseParams.putAll(Utils.extractParams(header.getValue()));
-							doResponseParamsMapping();
-							session = new UploadSession();
-							session.setSession(responseParams.get("session"));
-							try {
-								long offset = Long.parseLong(responseParams.get("offset"));
-								session.setOffset(offset);
-							} catch (NumberFormatException e) {
-								session.setOffset(0);
-							}
-						}
-					}
-				}
-			}
-		} catch (IllegalStateException | IOException e) {
-			/* return null value instead of throwing exception */
-		}
-		return session;
+	public BufferPool getBufferPool() {
+		return bufferPool;
 	}
 
 	/**
-	 * Method for preparing a request for the worker thread.
+	 * Returns the size of the chunks sent to the destination. The preferred size of the destination is fitted into its limits and alignment.
 	 * @param dst Information about the destination.
-	 * @param request Request to be prepared.
-	 * @param session Upload session information.
-	 * @param data Data to be transferred.
-	 * @param transferred Amount of data already transferred.
-	 * @param buffer Size of the data to be transferred.
-	 * @return Request for the worker.
-	 * @throws MultiCloudException If preparation of the request failed.
+	 * @return Size of the chunks.
 	 */
-	protected synchronized HttpUriRequest getPreparedRequest(FileCloudSource dst, CloudRequest request, UploadSession session, InputStream data, long transferred, long buffer) throws MultiCloudException {
-		HttpUriRequest preparedRequest = null;
-		setToken(dst.getToken());
-		setRequest(request);
-		Map<String, Object> jsonBody = request.getJsonBody();
-		String body = request.getBody();
-		addPropertyMapping("id", dst.getFile().getId());
-		addPropertyMapping("destination_id", dst.getFile().getId());
-		if (dst.getRemote() != null) {
-			addPropertyMapping("file_id", dst.getRemote().getId());
-		}
-		String path = dst.getFile().getPath();
-		if (path != null) {
-			if (path.endsWith(FileInfo.PATH_SEPARATOR)) {
-				if (dst.getFileName() != null) {
-					path += dst.getFileName();
-				}
-			} else {
-				if (dst.getFileName() != null) {
-					path += FileInfo.PATH_SEPARATOR + dst.getFileName();
-				}
-			}
+	protected long getChunkSize(FileCloudSource dst) {
+		TransferSettings transfer = dst.getTransfer();
+		if (transfer == null) {
+			return CHUNK_SIZE;
 		}
-		addPropertyMapping("path", path);
-		addPropertyMapping("destination_path", path);
-		if (dst.getFileName() != null) {
-			addPropertyMapping("name", dst.getFileName());
-		}
-		addPropertyMapping("offset", String.valueOf(transferred));
-		if (session != null) {
-			addPropertyMapping("session", session.getSession());
+		return transfer.alignChunkSize((transfer.getChunkSize() > 0) ? transfer.getChunkSize() : CHUNK_SIZE);
+	}
+
+	/**
+	 * Returns the number of parts sent in parallel to one destination, if its upload request accepts them.
+	 * @return Number of parts in flight.
+	 */
+	public int getParallelParts() {
+		return parallelParts;
+	}
+
+	/**
+	 * Returns the number of parts sent in parallel to the destination, limited by its transfer capabilities.
+	 * @param dst Information about the destination.
+	 * @return Number of parts in flight.
+	 */
+	protected int getParallelParts(FileCloudSource dst) {
+		if (dst.getTransfer() == null) {
+			return parallelParts;
 		}
-		try {
-			if (jsonBody != null) {
-				ObjectMapper mapper = json.getMapper();
-				body = mapper.writeValueAsString(jsonBody);
-				preparedRequest = prepareRequest(new StringEntity(doPropertyMapping(body, false)));
-			} else {
-				if (body != null) {
-					if (body.equals(DATA_MAPPING)) {
-						addPropertyMapping("offsetbuffer", String.valueOf(transferred + buffer - 1));
-						preparedRequest = prepareRequest(new InputStreamEntity(new CountingInputStream(data, listener), buffer));
-					} else {
-						preparedRequest = prepareRequest(new StringEntity(doPropertyMapping(body, false)));
-					}
-				} else {
-					preparedRequest = prepareRequest(null);
+		return dst.getTransfer().limitParallelParts(parallelParts);
+	}
+
+	/**
+	 * Returns the size of the chunks of the ring. It is large enough for the chunks of all the destinations and a multiple of all their alignments, so that the parts of each destination never cross the boundary of a chunk unaligned.
+	 * @return Size of the chunks of the ring.
+	 */
+	private int getRingChunkSize() {
+		long chunkSize = 0;
+		long alignment = 1;
+		for (FileCloudSource dst: destinations) {
+			chunkSize = Math.max(chunkSize, getChunkSize(dst));
+			if (dst.getTransfer() != null && dst.getTransfer().getChunkAlignment() > 1) {
+				/* least common multiple of the alignments */
+				long a = alignment;
+				long b = dst.getTransfer().getChunkAlignment();
+				while (b != 0) {
+					long r = a % b;
+					a = b;
+					b = r;
 				}
+				alignment = alignment / a * dst.getTransfer().getChunkAlignment();
 			}
-		} catch (UnsupportedEncodingException | JsonProcessingException e1) {
-			throw new MultiCloudException("Failed to prepare request.");
 		}
-		return preparedRequest;
+		chunkSize = (chunkSize + alignment - 1) / alignment * alignment;
+		return (int) Math.min(chunkSize, Integer.MAX_VALUE - Integer.MAX_VALUE % alignment);
+	}
+
+	/**
+	 * Returns the number of chunks read ahead for the destinations.
+	 * @return Number of chunks held in memory.
+	 */
+	public int getRingSize() {
+		return ringSize;
+	}
+
+	/**
+	 * Returns the journal of the upload sessions.
+	 * @return Journal of the upload sessions, or null if the upload is not resumable.
+	 */
+	protected SessionJournal getSessionJournal() {
+		return journal;
+	}
+
+	/**
+	 * Determines if the workers stream the data straight from the file instead of the ring. This is the case of zero-copy uploads of a file to a single destination, where no chunk is shared.
+	 * @return If the data is streamed straight from the file.
+	 */
+	protected boolean isDirect() {
+		return zeroCopy && data != null && destinations.size() == 1;
 	}
 
 	/**
@@ -203,6 +226,30 @@ public class FileUploadOp extends Operation<FileInfo> {
 		return done;
 	}
 
+	/**
+	 * Determines if saving the journal of the upload sessions failed, for example because the folder of the file is not writable. Such upload cannot be resumed.
+	 * @return If saving the journal failed.
+	 */
+	public boolean isJournalFailed() {
+		return journalFailed;
+	}
+
+	/**
+	 * Determines if the upload sessions are journaled, so that an interrupted upload can be resumed.
+	 * @return If the upload is resumable.
+	 */
+	public boolean isResumable() {
+		return resumable;
+	}
+
+	/**
+	 * Determines if the chunks of uploads to a single destination are streamed straight from the file.
+	 * @return If the uploads to a single destination are zero-copy.
+	 */
+	public boolean isZeroCopy() {
+		return zeroCopy;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -217,25 +264,58 @@ public class FileUploadOp extends Operation<FileInfo> {
 	@Override
 	protected void operationExecute() throws MultiCloudException {
 		if (!destinations.isEmpty()) {
-			/* create threads and start them */
+			/* each chunk is read once and shared by all the destinations, the slowest one holds the others back */
+			ChunkRing ring;
+			try {
+				if (data != null) {
+					ring = new ChunkRing(data, getRingChunkSize(), Math.max(ringSize, 1), bufferPool);
+				} else {
+					ring = new ChunkRing(stream, getRingChunkSize(), Math.max(ringSize, 1), bufferPool);
+				}
+			} catch (NoSuchFileException e) {
+				throw new MultiCloudException("File not found.");
+			} catch (IOException e) {
+				throw new MultiCloudException("Failed to open the file.");
+			}
+			/* sessions of the previous upload of the same file are continued, streams cannot be read again */
+			if (resumable && data != null) {
+				journal = new SessionJournal(data);
+				journal.load();
+			}
+			/* create threads and start them, each destination builds its requests in its own context */
 			listener.setDivisor(destinations.size());
-			for (FileCloudSource dst: destinations) {
-				pool.add(new FileUploadThread(this, dst, data));
+			synchronized (lock) {
+				for (FileCloudSource dst: destinations) {
+					FileUploadThread thread = new FileUploadThread(this, dst, ring, new UploadContext(dst, overwrite, (data != null) ? data.length() : -1, listener));
+					ring.register(thread);
+					pool.add(thread);
+				}
 			}
 			for (FileUploadThread thread: pool) {
 				thread.start();
 			}
 			for (FileUploadThread thread: pool) {
 				try {
-					thread.join();
+					while (thread.isAlive()) {
+						thread.join(SessionJournal.SAVE_INTERVAL);
+						saveJournal();
+					}
 				} catch (InterruptedException e) {
 					/* join interrupted */
 				}
 			}
+			ring.close();
+			if (journal != null) {
+				if (journal.isEmpty()) {
+					journal.delete();
+				} else {
+					saveJournal();
+				}
+			}
 			listener.finishTransfer();
 			if (getError() == null && getResult() == null) {
 				FileInfo info = new FileInfo();
-				info.setName(data.getName());
+				info.setName((data != null) ? data.getName() : destinations.get(0).getFileName());
 				info.setFileType(FileType.FILE);
 				setResult(info);
 			}
@@ -259,4 +339,60 @@ public class FileUploadOp extends Operation<FileInfo> {
 		/* no finalization necessary */
 	}
 
+	/**
+	 * Saves the journal of the upload sessions, if there is one. Failure to save the journal does not affect the upload itself, it is only recorded and the journal is not saved again.
+	 */
+	private void saveJournal() {
+		if (journal != null && !journalFailed) {
+			try {
+				journal.save();
+			} catch (IOException e) {
+				/* the upload can still finish without the journal */
+				journalFailed = true;
+			}
+		}
+	}
+
+	/**
+	 * Sets the pool the buffers for the chunks are borrowed from. If not set, the buffers are allocated.
+	 * @param bufferPool Pool of the buffers.
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Sets the number of parts sent in parallel to one destination, if its upload request accepts them. The parts are also limited by the number of chunks read ahead.
+	 * @param parallelParts Number of parts in flight.
+	 */
+	public void setParallelParts(int parallelParts) {
+		this.parallelParts = parallelParts;
+	}
+
+	/**
+	 * Sets if the upload sessions should be journaled, so that an interrupted upload can be resumed. Off by default.
+	 * The journal is written next to the uploaded file, so the folder of the file must be writable. Uploads of streams are never journaled.
+	 * @param resumable If the upload is resumable.
+	 */
+	public void setResumable(boolean resumable) {
+		this.resumable = resumable;
+	}
+
+	/**
+	 * Sets the number of chunks read ahead for the destinations. Faster destinations never get further ahead of the slowest one.
+	 * @param ringSize Number of chunks held in memory.
+	 */
+	public void setRingSize(int ringSize) {
+		this.ringSize = ringSize;
+	}
+
+	/**
+	 * Sets if the chunks of uploads to a single destination should be streamed straight from the file. Otherwise they are read ahead through the ring, which is the default.
+	 * Streaming straight from the file skips the read-ahead and saves the copy only if the connection exposes a channel, which the blocking HTTP client does not.
+	 * @param zeroCopy If the uploads to a single destination are zero-copy.
+	 */
+	public void setZeroCopy(boolean zeroCopy) {
+		this.zeroCopy = zeroCopy;
+	}
+
 }
@@ -1,24 +1,33 @@
 package cz.zcu.kiv.multicloud.filesystem;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 
 import cz.zcu.kiv.multicloud.MultiCloudException;
+import cz.zcu.kiv.multicloud.json.FileInfo;
 import cz.zcu.kiv.multicloud.json.UploadSession;
 
 /**
  * cz.zcu.kiv.multicloud.filesystem/FileUploadThread.java			<br /><br />
  *
- * Worker thread for uploading file to the storage.
+ * Worker thread for uploading file to the storage. The file data is read from the ring of chunks shared with the workers uploading the same file to other destinations.
+ * If the upload request of the destination accepts parts in parallel, multiple chunks are sent to the upload session at once. Each failed part is retried on its own.
+ * Upload session journaled by previous upload of the same file is continued from the offset confirmed by the server, instead of starting a new one.
+ * Streams of unknown length are sent chunk by chunk and their size is passed to the requests once the end of the stream is reached.
  *
  * @author Jaromír Staněk
  * @version 1.0
@@ -26,10 +35,82 @@ import cz.zcu.kiv.multicloud.json.UploadSession;
  */
 public class FileUploadThread extends Thread {
 
+	/** Number of attempts to upload one part in parallel. */
+	public static final int PART_ATTEMPTS = 3;
+
+	/**
+	 * Thread uploading parts of the file to the upload session in parallel with the others.
+	 */
+	private class PartThread extends Thread {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+			try {
+				while (!shouldTerminate()) {
+					long begin;
+					long end;
+					synchronized (lock) {
+						if (partFailed || nextPart >= size) {
+							break;
+						}
+						begin = nextPart;
+						end = getChunkEnd(begin);
+						nextPart = end;
+					}
+					if (!send(begin, end)) {
+						synchronized (lock) {
+							partFailed = true;
+						}
+						break;
+					}
+				}
+			} finally {
+				ring.unregister(this);
+			}
+		}
+
+		/**
+		 * Uploads the part starting at the position. The part is retried, if it fails.
+		 * @param begin First byte of the part.
+		 * @param end Byte after the last byte of the part.
+		 * @return If the part was uploaded.
+		 */
+		private boolean send(long begin, long end) {
+			for (int attempt = 0; attempt < PART_ATTEMPTS && !shouldTerminate(); attempt++) {
+				HttpUriRequest partRequest = null;
+				try {
+					HttpEntity part = readData(this, begin, end);
+					synchronized (lock) {
+						partRequest = context.getPreparedRequest(destination.getExecRequest(), session, part, begin);
+						inFlight.add(partRequest);
+					}
+					exec(partRequest);
+					acknowledge(begin, end);
+					return true;
+				} catch (MultiCloudException | IOException e) {
+					/* try the part again */
+				} finally {
+					if (partRequest != null) {
+						synchronized (lock) {
+							inFlight.remove(partRequest);
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+	}
+
 	/** Parent operation. */
 	private final FileUploadOp operation;
 	/** Destination information for the upload. */
 	private final FileCloudSource destination;
+	/** Context for building the requests of the destination. */
+	private final UploadContext context;
 	/** Current request. */
 	private HttpUriRequest request;
 	/** HTTP client of the upload thread. */
@@ -39,38 +120,71 @@ public class FileUploadThread extends Thread {
 	/** Lock object for concurrent method calls. */
 	private final Object lock;
 
-	/** Size of the data uploaded. */
-	private final long size;
-	/** File data to be uploaded. */
-	private final InputStream data;
+	/** Size of the data uploaded. Negative until the end of the stream is reached. */
+	private long size;
+	/** Size of the chunks sent to the destination. */
+	private final long chunkSize;
+	/** If the data is streamed straight from the file instead of the ring. */
+	private final boolean direct;
+	/** Shared chunks of the file to be uploaded. */
+	private final ChunkRing ring;
 	/** Number of bytes already sent to the server. */
 	private long transferred;
 	/** Identifier of the chunked upload session. */
 	private UploadSession session;
-	/** Byte buffer of the last chunk. */
-	private byte[] buffer;
 	/** If the upload failed. */
 	private boolean failed;
 
+	/** Threads uploading the parts in parallel. */
+	private final List<PartThread> parts;
+	/** Requests of the parts in flight. */
+	private final Set<HttpUriRequest> inFlight;
+	/** First byte of the next part to be uploaded. */
+	private long nextPart;
+	/** Parts acknowledged by the server beyond the transferred data, by their first byte. */
+	private final Map<Long, Long> acknowledged;
+	/** If a part failed to upload repeatedly. */
+	private boolean partFailed;
+
 	/**
 	 * Ctor with necessary parameters.
 	 * @param operation Parent operation.
 	 * @param destination Information about the destination.
-	 * @param file File to be uploaded.
-	 * @throws MultiCloudException Exception if there is a problem with the file.
+	 * @param ring Shared chunks of the file to be uploaded.
+	 * @param context Context for building the requests of the destination.
 	 */
-	public FileUploadThread(FileUploadOp operation, FileCloudSource destination, File file) throws MultiCloudException {
+	public FileUploadThread(FileUploadOp operation, FileCloudSource destination, ChunkRing ring, UploadContext context) {
 		this.operation = operation;
 		this.destination = destination;
+		this.context = context;
+		this.ring = ring;
+		this.size = ring.getSize();
+		this.chunkSize = operation.getChunkSize(destination);
+		this.direct = operation.isDirect();
 		this.lock = new Object();
 		transferred = 0;
 		failed = false;
+		parts = new ArrayList<>();
+		inFlight = new HashSet<>();
+		nextPart = 0;
+		acknowledged = new TreeMap<>();
+		partFailed = false;
+	}
 
-		try {
-			data = new FileInputStream(file);
-			size = file.length();
-		} catch (FileNotFoundException e) {
-			throw new MultiCloudException("File not found.");
+	/**
+	 * Records the part acknowledged by the server. The transferred data is extended over all the acknowledged parts following it.
+	 * @param begin First byte of the part.
+	 * @param end Byte after the last byte of the part.
+	 */
+	private void acknowledge(long begin, long end) {
+		synchronized (lock) {
+			acknowledged.put(begin, end);
+			Long following = acknowledged.remove(transferred);
+			while (following != null) {
+				transferred = following;
+				following = acknowledged.remove(transferred);
+			}
+			journal(transferred);
 		}
 	}
 
@@ -83,21 +197,26 @@ public class FileUploadThread extends Thread {
 	private void begin() throws IOException {
 		CloseableHttpResponse response = client.execute(request);
 		if (response.getStatusLine().getStatusCode() >= 400) {
+			response.close();
 			throw new IOException("Failed to upload the file.");
 		}
-		session = operation.getParsedSessionResponse(destination.getBeginRequest(), response);
+		session = context.getParsedSessionResponse(destination.getBeginRequest(), response);
+		EntityUtils.consume(response.getEntity());
 		response.close();
 	}
 
 	/**
-	 * Chunked upload progress. Uploads all the remaining data chunks.
+	 * Chunked upload progress. Uploads one data chunk.
+	 * @param request Request carrying the chunk.
 	 * @throws IOException If something fails.
 	 */
-	private void exec() throws IOException {
+	private void exec(HttpUriRequest request) throws IOException {
 		CloseableHttpResponse response = client.execute(request);
 		if (response.getStatusLine().getStatusCode() >= 400) {
+			response.close();
 			throw new IOException("Failed to upload the file.");
 		}
+		EntityUtils.consume(response.getEntity());
 		response.close();
 	}
 
@@ -108,11 +227,45 @@ public class FileUploadThread extends Thread {
 	private void finish() throws IOException {
 		CloseableHttpResponse response = client.execute(request);
 		if (response.getStatusLine().getStatusCode() >= 400) {
+			response.close();
 			throw new IOException("Failed to upload the file.");
 		}
+		EntityUtils.consume(response.getEntity());
 		response.close();
 	}
 
+	/**
+	 * Returns the end of the chunk starting at the position. The chunk is never longer than the chunk size of the destination and does not cross the chunk boundary of the ring.
+	 * It might be shorter, if the server continues from an offset not aligned to the chunks.
+	 * @param begin First byte of the chunk.
+	 * @return Byte after the last byte of the chunk.
+	 */
+	private long getChunkEnd(long begin) {
+		long end = (begin / ring.getChunkSize() + 1) * ring.getChunkSize();
+		if (size >= 0) {
+			end = Math.min(size, end);
+		}
+		return Math.min(end, begin + chunkSize);
+	}
+
+	/**
+	 * Returns the key of the destination in the journal of the upload sessions.
+	 * @return Key of the destination.
+	 */
+	private String getJournalKey() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(destination.getAccountName()).append(':');
+		if (destination.getRemote() != null) {
+			sb.append(destination.getRemote().getId());
+		} else {
+			if (destination.getFile() != null) {
+				sb.append((destination.getFile().getId() != null) ? destination.getFile().getId() : destination.getFile().getPath());
+			}
+			sb.append(FileInfo.PATH_SEPARATOR).append(destination.getFileName());
+		}
+		return sb.toString();
+	}
+
 	/**
 	 * Returns if the upload failed.
 	 * @return If the upload failed.
@@ -122,21 +275,78 @@ public class FileUploadThread extends Thread {
 	}
 
 	/**
-	 * Read chunk from the input stream, save it to a buffer and return input stream made off that buffer.
-	 * @return Chunk data stream.
+	 * Records the upload session and the offset confirmed by the server to the journal of the operation, if there is one.
+	 * @param offset Offset confirmed by the server.
 	 */
-	private ByteArrayInputStream readData() {
-		long size = FileUploadOp.CHUNK_SIZE;
-		if (this.size - transferred < size) {
-			size = this.size - transferred;
+	private void journal(long offset) {
+		SessionJournal journal = operation.getSessionJournal();
+		if (journal != null && session != null && session.getSession() != null) {
+			journal.putSession(getJournalKey(), session.getSession(), offset);
 		}
-		buffer = new byte[(int) size];
-		try {
-			data.read(buffer, 0, (int) size);
-		} catch (IOException e) {
-			/* returns empty buffer */
+	}
+
+	/**
+	 * Returns entity carrying the data of the file between the positions. The data is streamed straight from the file, if the upload is direct. Otherwise it is taken from the chunk of the ring.
+	 * @param consumer Worker reading the data.
+	 * @param begin First byte of the data.
+	 * @param end Byte after the last byte of the data. It must not cross the chunk boundary of the ring. The data is shorter, if the stream ends before it.
+	 * @return Entity carrying the data.
+	 * @throws IOException If reading the file failed or waiting for the chunk was interrupted.
+	 */
+	private HttpEntity readData(Object consumer, long begin, long end) throws IOException {
+		if (direct) {
+			return context.getEntity(ring.getChannel(), begin, end - begin, operation.getBufferPool());
+		}
+		ByteBuffer chunk = ring.acquire(consumer, begin);
+		updateSize();
+		int length = (int) Math.min(end - begin, chunk.remaining());
+		chunk.limit(length);
+		return context.getEntity(new ByteBufferInputStream(chunk), length);
+	}
+
+	/**
+	 * Drops the upload session and the progress made in it, so that the upload can start over.
+	 */
+	private void reset() {
+		synchronized (lock) {
+			session = null;
+			transferred = 0;
+			nextPart = 0;
+			acknowledged.clear();
+			partFailed = false;
+			parts.clear();
 		}
-		return new ByteArrayInputStream(buffer);
+	}
+
+	/**
+	 * Continues the upload session journaled by previous upload of the same file.
+	 * If the destination supports querying the status of the session, the offset is taken from the server. Expired session is dropped from the journal.
+	 * Otherwise the session is checked only by continuing the upload, which starts over in a new session, if the journaled one fails.
+	 * @return If the upload session was continued.
+	 */
+	private boolean resumeSession() {
+		SessionJournal journal = operation.getSessionJournal();
+		if (journal == null) {
+			return false;
+		}
+		UploadSession saved = journal.getSession(getJournalKey());
+		if (saved == null) {
+			return false;
+		}
+		if (destination.getStatusRequest() != null) {
+			try {
+				synchronized (lock) {
+					request = context.getPreparedRequest(destination.getStatusRequest(), saved, null, saved.getOffset());
+				}
+				status(saved);
+			} catch (MultiCloudException | IOException e) {
+				/* the session expired, start a new one */
+				journal.removeSession(getJournalKey());
+				return false;
+			}
+		}
+		session = saved;
+		return true;
 	}
 
 	/**
@@ -144,55 +354,43 @@ public class FileUploadThread extends Thread {
 	 */
 	@Override
 	public void run() {
-		client = HttpClients.createDefault();
+		client = destination.getClient();
+		if (client == null) {
+			client = HttpClients.createDefault();
+		}
 
 		try {
-			ByteArrayInputStream chunk = null;
-			/* begin the upload */
-			if (destination.getBeginRequest() != null) {
-				chunk = readData();
-				synchronized (lock) {
-					request = operation.getPreparedRequest(destination, destination.getBeginRequest(), null, chunk, transferred, buffer.length);
+			boolean resumed = resumeSession();
+			try {
+				upload(resumed);
+			} catch (MultiCloudException | IOException e) {
+				if (!resumed || shouldTerminate()) {
+					throw e;
 				}
-				begin();
+				/* the journaled session expired or does not match the server, so it is dropped and the upload starts over once */
+				operation.getSessionJournal().removeSession(getJournalKey());
+				reset();
+				upload(false);
 			}
-			if (session != null) {
-				transferred = session.getOffset();
-			}
-			/* upload the data */
-			if (destination.getExecRequest() != null) {
-				while (transferred < size && !shouldTerminate()) {
-					if (transferred > 0) {
-						chunk = readData();
-					}
-					synchronized (lock) {
-						request = operation.getPreparedRequest(destination, destination.getExecRequest(), session, chunk, transferred, buffer.length);
-					}
-					exec();
-					transferred += buffer.length;
-				}
-			}
-			/* finish the upload */
-			if (destination.getFinishRequest() != null) {
-				if (!shouldTerminate()) {
-					synchronized (lock) {
-						request = operation.getPreparedRequest(destination, destination.getFinishRequest(), session, data, transferred, size);
-					}
-					finish();
-				}
+			/* finished session cannot be continued */
+			if (!shouldTerminate() && operation.getSessionJournal() != null) {
+				operation.getSessionJournal().removeSession(getJournalKey());
 			}
 		} catch (MultiCloudException | IOException e) {
 			failed = true;
-		}
-
-		/* close the streams when the operation finishes */
-		try {
-			if (data != null) {
-				data.close();
+		} catch (RuntimeException e) {
+			failed = true;
+			throw e;
+		} finally {
+			/* release the chunks and close the client even if the thread breaks, so that the other destinations are not held back */
+			ring.unregister(this);
+			try {
+				if (destination.getClient() == null) {
+					client.close();
+				}
+			} catch (IOException e) {
+				/* ignore closing exception */
 			}
-			client.close();
-		} catch (IOException e) {
-			/* ignore closing exception */
 		}
 	}
 
@@ -205,12 +403,154 @@ public class FileUploadThread extends Thread {
 	}
 
 	/**
-	 * Synchronized method to tell the thread that it should terminate.
+	 * Queries the status of the upload session. The offset of the session is updated to the data received by the server.
+	 * @param saved Upload session.
+	 * @throws IOException If the session is not valid anymore.
 	 */
-	public synchronized void terminate() {
-		terminate = true;
-		request.abort();
+	private void status(UploadSession saved) throws IOException {
+		CloseableHttpResponse response = client.execute(request);
+		if (response.getStatusLine().getStatusCode() >= 400) {
+			response.close();
+			throw new IOException("Upload session expired.");
+		}
+		Header range = response.getFirstHeader("Range");
+		if (range != null) {
+			/* the range of received data is reported as bytes=0-last */
+			int dash = range.getValue().lastIndexOf('-');
+			try {
+				saved.setOffset(Long.parseLong(range.getValue().substring(dash + 1).trim()) + 1);
+			} catch (NumberFormatException e) {
+				/* keep the offset from the journal */
+			}
+		} else {
+			UploadSession reported = context.getParsedSessionResponse(destination.getStatusRequest(), response);
+			if (reported != null && reported.getSession() != null) {
+				saved.setOffset(reported.getOffset());
+			}
+		}
+		EntityUtils.consume(response.getEntity());
+		response.close();
+	}
+
+	/**
+	 * Synchronized method to tell the thread that it should terminate. All the requests in flight are aborted.
+	 */
+	public void terminate() {
+		synchronized (this) {
+			terminate = true;
+		}
+		synchronized (lock) {
+			if (request != null) {
+				request.abort();
+			}
+			for (HttpUriRequest partRequest: inFlight) {
+				partRequest.abort();
+			}
+			for (PartThread part: parts) {
+				part.interrupt();
+			}
+		}
 		interrupt();
 	}
 
+	/**
+	 * Uploads the data to the destination, either continuing the upload session from the journal or in a new one.
+	 * @param resumed If the upload session from the journal is continued.
+	 * @throws MultiCloudException If the requests could not be prepared.
+	 * @throws IOException If the upload failed.
+	 */
+	private void upload(boolean resumed) throws MultiCloudException, IOException {
+		HttpEntity chunk = null;
+		/* begin the upload, unless continuing previous one */
+		if (!resumed && destination.getBeginRequest() != null) {
+			chunk = readData(this, transferred, getChunkEnd(transferred));
+			synchronized (lock) {
+				request = context.getPreparedRequest(destination.getBeginRequest(), null, chunk, transferred);
+			}
+			begin();
+		}
+		if (session != null) {
+			transferred = session.getOffset();
+			journal(transferred);
+		}
+		/* upload the data */
+		if (destination.getExecRequest() != null && destination.getExecRequest().isParallel() && session != null && size >= 0 && operation.getParallelParts(destination) > 1) {
+			uploadParts();
+		} else if (destination.getExecRequest() != null) {
+			while ((size < 0 || transferred < size) && !shouldTerminate()) {
+				/* the chunk is taken from the ring again, even if the server did not accept the one sent with the beginning */
+				chunk = readData(this, transferred, getChunkEnd(transferred));
+				if (chunk.getContentLength() == 0) {
+					/* the stream is empty */
+					break;
+				}
+				synchronized (lock) {
+					request = context.getPreparedRequest(destination.getExecRequest(), session, chunk, transferred);
+				}
+				exec(request);
+				transferred += chunk.getContentLength();
+				journal(transferred);
+			}
+		}
+		/* finish the upload */
+		if (destination.getFinishRequest() != null) {
+			if (!shouldTerminate()) {
+				if (direct) {
+					chunk = context.getEntity(ring.getChannel(), transferred, size - transferred, operation.getBufferPool());
+				} else {
+					/* stream of unknown length is sent in chunked encoding */
+					chunk = context.getEntity(ring.openStream(this, transferred), (size >= 0) ? size - transferred : -1);
+				}
+				synchronized (lock) {
+					request = context.getPreparedRequest(destination.getFinishRequest(), session, chunk, transferred);
+				}
+				finish();
+			}
+		}
+	}
+
+	/**
+	 * Updates the size of the uploaded stream, once its end is reached. The requests of the destination are built with the size from then on.
+	 */
+	private void updateSize() {
+		if (size < 0) {
+			size = ring.getSize();
+			if (size >= 0) {
+				context.setSize(size);
+			}
+		}
+	}
+
+	/**
+	 * Uploads the remaining data in parts sent in parallel to the upload session.
+	 * @throws IOException If a part failed repeatedly or the upload was terminated.
+	 */
+	private void uploadParts() throws IOException {
+		synchronized (lock) {
+			nextPart = transferred;
+			for (int i = 0; i < operation.getParallelParts(destination); i++) {
+				PartThread part = new PartThread();
+				ring.register(part);
+				parts.add(part);
+			}
+		}
+		/* the parts hold the chunks of the ring instead of this thread */
+		ring.unregister(this);
+		for (PartThread part: parts) {
+			part.start();
+		}
+		for (PartThread part: parts) {
+			try {
+				part.join();
+			} catch (InterruptedException e) {
+				/* the parts are interrupted as well */
+			}
+		}
+		synchronized (lock) {
+			if (partFailed || transferred < size) {
+				throw new IOException("Failed to upload the file.");
+			}
+		}
+	}
+
 }
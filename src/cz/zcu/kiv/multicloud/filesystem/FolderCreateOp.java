@@ -10,7 +10,6 @@ import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.StringEntity;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import cz.zcu.kiv.multicloud.MultiCloudException;
@@ -138,9 +137,8 @@ public class FolderCreateOp extends Operation<FileInfo> {
 						if (response.getStatusLine().getStatusCode() >= 400) {
 							parseOperationError(response);
 						} else {
-							JsonNode tree = parseJsonResponse(response);
-							if (tree != null) {
-								info = json.getMapper().treeToValue(tree, FileInfo.class);
+							info = parseJsonResponse(response, FileInfo.class);
+							if (info != null) {
 								info.fillMissing();
 								for (FileInfo content: info.getContent()) {
 									content.fillMissing();
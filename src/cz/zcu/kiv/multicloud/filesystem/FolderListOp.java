@@ -1,11 +1,12 @@
 package cz.zcu.kiv.multicloud.filesystem;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 
-import com.fasterxml.jackson.databind.JsonNode;
 
 import cz.zcu.kiv.multicloud.MultiCloudException;
 import cz.zcu.kiv.multicloud.json.CloudRequest;
@@ -32,6 +33,8 @@ public class FolderListOp extends Operation<FileInfo> {
 	private final FileInfo original;
 	/** Actual contents of the folder. */
 	private FileInfo contents;
+	/** Callback for receiving the contents page by page. If set, the contents are not kept in the result. */
+	private FileListCallback callback;
 	/** The request of the operation. */
 	private HttpUriRequest request;
 	/** Lock object for concurrent method calls. */
@@ -52,6 +55,7 @@ public class FolderListOp extends Operation<FileInfo> {
 		this.beginRequest = beginRequest;
 		this.execRequest = execRequest;
 		original = folder;
+		callback = null;
 		lock = new Object();
 	}
 
@@ -61,71 +65,107 @@ public class FolderListOp extends Operation<FileInfo> {
 	@Override
 	public void abort() {
 		synchronized (lock) {
+			/* the abort must be noticed also between the pages */
+			isAborted = true;
 			if (request != null) {
 				request.abort();
-				isAborted = true;
 			}
 		}
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Executes the prepared request and returns one page of the folder contents.
+	 * @param visible Files visible in the folder. Null if all the files are visible.
+	 * @return Page of the folder contents. Null if the request failed or was aborted.
+	 * @throws MultiCloudException If the request failed.
 	 */
-	@Override
-	protected void operationBegin() throws MultiCloudException {
-		if (beginRequest != null) {
-			setRequest(beginRequest);
-			synchronized (lock) {
-				request = prepareRequest(null);
+	private FileInfo fetchPage(final FileInfo visible) throws MultiCloudException {
+		synchronized (lock) {
+			if (isAborted) {
+				return null;
 			}
-			try {
-				contents = executeRequest(request, new ResponseProcessor<FileInfo>() {
-					/**
-					 * {@inheritDoc}
-					 */
-					@Override
-					public FileInfo processResponse(HttpResponse response) {
-						FileInfo info = null;
-						try {
-							if (response.getStatusLine().getStatusCode() >= 400) {
-								parseOperationError(response);
-							} else {
-								JsonNode tree = parseJsonResponse(response);
-								if (tree != null) {
-									info = json.getMapper().treeToValue(tree, FileInfo.class);
-									if (info.getId() == null) {
-										info.setId(original.getId());
-									}
-									if (info.getName() == null) {
-										info.setName(original.getName());
-									}
-									if (info.getPath() == null) {
-										info.setPath(original.getPath());
-									}
-									info.setIsRoot(original.isRoot());
-									info.fillMissing();
-									for (FileInfo content: info.getContent()) {
-										content.fillMissing();
-									}
+			request = prepareRequest(null);
+		}
+		FileInfo page = null;
+		try {
+			page = executeRequest(request, new ResponseProcessor<FileInfo>() {
+				/**
+				 * {@inheritDoc}
+				 */
+				@Override
+				public FileInfo processResponse(HttpResponse response) {
+					FileInfo info = null;
+					try {
+						if (response.getStatusLine().getStatusCode() >= 400) {
+							parseOperationError(response);
+						} else {
+							info = parseJsonResponse(response, FileInfo.class);
+							if (info != null) {
+								if (info.getId() == null) {
+									info.setId(original.getId());
+								}
+								if (info.getName() == null) {
+									info.setName(original.getName());
+								}
+								if (info.getPath() == null) {
+									info.setPath(original.getPath());
+								}
+								info.setIsRoot(original.isRoot());
+								info.fillMissing();
+								for (FileInfo content: info.getContent()) {
+									content.fillMissing();
+								}
+								if (visible != null) {
+									info = Utils.formVisibilityTree(info, visible);
 								}
 							}
-						} catch (IllegalStateException | IOException e) {
-							/* return null value instead of throwing exception */
 						}
-						return info;
-					}
-				});
-			} catch (IOException e) {
-				synchronized (lock) {
-					if (!isAborted) {
-						throw new MultiCloudException("Failed to list the selected folder.");
+					} catch (IllegalStateException | IOException e) {
+						/* return null value instead of throwing exception */
 					}
+					return info;
 				}
-			}
+			});
+		} catch (IOException e) {
 			synchronized (lock) {
-				request = null;
+				if (!isAborted) {
+					throw new MultiCloudException("Failed to list the selected folder.");
+				}
 			}
 		}
+		synchronized (lock) {
+			request = null;
+		}
+		return page;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void operationBegin() throws MultiCloudException {
+		if (beginRequest != null) {
+			setRequest(beginRequest);
+			/* all the pages are needed for determining the visible files */
+			do {
+				FileInfo page = fetchPage(null);
+				if (page == null) {
+					synchronized (lock) {
+						if (contents != null && !isAborted) {
+							/* visibility cannot be determined from a part of the pages */
+							throw new MultiCloudException("Failed to list the rest of the folder.");
+						}
+					}
+					contents = null;
+					break;
+				}
+				if (contents == null) {
+					contents = page;
+				} else {
+					contents.getContent().addAll(page.getContent());
+				}
+			} while (nextPage());
+		}
 	}
 
 	/**
@@ -140,59 +180,34 @@ public class FolderListOp extends Operation<FileInfo> {
 		}
 		if (execRequest != null) {
 			setRequest(execRequest);
-			synchronized (lock) {
-				request = prepareRequest(null);
-			}
-			try {
-				setResult(executeRequest(request, new ResponseProcessor<FileInfo>() {
-					/**
-					 * {@inheritDoc}
-					 */
-					@Override
-					public FileInfo processResponse(HttpResponse response) {
-						FileInfo info = null;
-						try {
-							if (response.getStatusLine().getStatusCode() >= 400) {
-								parseOperationError(response);
-							} else {
-								JsonNode tree = parseJsonResponse(response);
-								if (tree != null) {
-									info = json.getMapper().treeToValue(tree, FileInfo.class);
-									if (info.getId() == null) {
-										info.setId(original.getId());
-									}
-									if (info.getName() == null) {
-										info.setName(original.getName());
-									}
-									if (info.getPath() == null) {
-										info.setPath(original.getPath());
-									}
-									info.setIsRoot(original.isRoot());
-									info.fillMissing();
-									for (FileInfo content: info.getContent()) {
-										content.fillMissing();
-									}
-									if (contents != null) {
-										info = Utils.formVisibilityTree(info, contents);
-									}
-								}
-							}
-						} catch (IllegalStateException | IOException e) {
-							/* return null value instead of throwing exception */
+			FileInfo info = null;
+			do {
+				FileInfo page = fetchPage(contents);
+				if (page == null) {
+					synchronized (lock) {
+						if (info != null && !isAborted) {
+							/* truncated contents must not look complete */
+							throw new MultiCloudException("Failed to list the rest of the folder.");
 						}
-						return info;
 					}
-				}));
-			} catch (IOException e) {
-				synchronized (lock) {
-					if (!isAborted) {
-						throw new MultiCloudException("Failed to list the selected folder.");
+					info = null;
+					break;
+				}
+				if (info == null) {
+					info = page;
+				} else if (callback == null) {
+					info.getContent().addAll(page.getContent());
+				}
+				if (callback != null) {
+					/* pages passed to the callback are not kept */
+					List<FileInfo> content = page.getContent();
+					info.setContent(new ArrayList<FileInfo>());
+					if (!callback.onPage(content)) {
+						break;
 					}
 				}
-			}
-			synchronized (lock) {
-				request = null;
-			}
+			} while (nextPage());
+			setResult(info);
 		}
 	}
 
@@ -204,4 +219,12 @@ public class FolderListOp extends Operation<FileInfo> {
 		/* no finalization necessary */
 	}
 
+	/**
+	 * Sets the callback for receiving the contents page by page. If set, the contents are not kept in the result.
+	 * @param callback Callback for the contents.
+	 */
+	public void setCallback(FileListCallback callback) {
+		this.callback = callback;
+	}
+
 }
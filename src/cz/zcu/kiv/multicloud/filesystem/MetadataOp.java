@@ -5,7 +5,6 @@ import java.io.IOException;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 
-import com.fasterxml.jackson.databind.JsonNode;
 
 import cz.zcu.kiv.multicloud.MultiCloudException;
 import cz.zcu.kiv.multicloud.json.CloudRequest;
@@ -82,9 +81,10 @@ public class MetadataOp extends Operation<FileInfo> {
 						if (response.getStatusLine().getStatusCode() >= 400) {
 							parseOperationError(response);
 						} else {
-							JsonNode tree = parseJsonResponse(response);
-							info = json.getMapper().treeToValue(tree, FileInfo.class);
-							info.fillMissing();
+							info = parseJsonResponse(response, FileInfo.class);
+							if (info != null) {
+								info.fillMissing();
+							}
 						}
 					} catch (IllegalStateException | IOException e) {
 						/* return null value instead of throwing exception */
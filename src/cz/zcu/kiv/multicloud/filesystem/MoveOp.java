@@ -2,15 +2,11 @@ package cz.zcu.kiv.multicloud.filesystem;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.util.Map;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.StringEntity;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import cz.zcu.kiv.multicloud.MultiCloudException;
 import cz.zcu.kiv.multicloud.json.CloudRequest;
@@ -32,10 +28,6 @@ public class MoveOp extends Operation<FileInfo> {
 	private final String name;
 	/** File type of the original file or folder. */
 	private final FileType type;
-	/** JSON body represented as a map. */
-	private final Map<String, Object> jsonBody;
-	/** Body of the request. */
-	private String body;
 	/** The request of the operation. */
 	private HttpUriRequest request;
 	/** Lock object for concurrent method calls. */
@@ -81,8 +73,6 @@ public class MoveOp extends Operation<FileInfo> {
 			name = source.getName();
 		}
 		type = source.getFileType();
-		jsonBody = request.getJsonBody();
-		body = request.getBody();
 		lock = new Object();
 	}
 
@@ -113,20 +103,17 @@ public class MoveOp extends Operation<FileInfo> {
 	@Override
 	protected void operationExecute() throws MultiCloudException {
 		try {
-			if (jsonBody != null) {
-				ObjectMapper mapper = json.getMapper();
-				body = mapper.writeValueAsString(jsonBody);
-			}
+			String body = doBodyMapping();
 			if (body != null) {
 				synchronized (lock) {
-					request = prepareRequest(new StringEntity(doPropertyMapping(body, false)));
+					request = prepareRequest(new StringEntity(body));
 				}
 			} else {
 				synchronized (lock) {
 					request = prepareRequest(null);
 				}
 			}
-		} catch (UnsupportedEncodingException | JsonProcessingException e1) {
+		} catch (UnsupportedEncodingException e1) {
 			throw new MultiCloudException("Failed to prepare request.");
 		}
 		try {
@@ -141,9 +128,8 @@ public class MoveOp extends Operation<FileInfo> {
 						if (response.getStatusLine().getStatusCode() >= 400) {
 							parseOperationError(response);
 						} else {
-							JsonNode tree = parseJsonResponse(response);
-							if (tree != null) {
-								info = json.getMapper().treeToValue(tree, FileInfo.class);
+							info = parseJsonResponse(response, FileInfo.class);
+							if (info != null) {
 								info.fillMissing();
 								for (FileInfo content: info.getContent()) {
 									content.fillMissing();
@@ -1,55 +1,31 @@
 package cz.zcu.kiv.multicloud.filesystem;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpDelete;
-import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpHead;
-import org.apache.http.client.methods.HttpOptions;
-import org.apache.http.client.methods.HttpPatch;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpPut;
-import org.apache.http.client.methods.HttpTrace;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.JsonNodeType;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import cz.zcu.kiv.multicloud.MultiCloudException;
-import cz.zcu.kiv.multicloud.http.HttpCopy;
-import cz.zcu.kiv.multicloud.http.HttpMethod;
-import cz.zcu.kiv.multicloud.http.HttpMove;
 import cz.zcu.kiv.multicloud.json.CloudRequest;
 import cz.zcu.kiv.multicloud.json.Json;
+import cz.zcu.kiv.multicloud.json.JsonMapping;
 import cz.zcu.kiv.multicloud.json.OperationError;
 import cz.zcu.kiv.multicloud.oauth2.OAuth2Token;
-import cz.zcu.kiv.multicloud.utils.Utils;
 
 /**
  * cz.zcu.kiv.multicloud.filesystem/Operation.java			<br /><br />
  *
- * Generic template for implementing any operation with the user account storage.
+ * Generic template for implementing any operation with the user account storage. The requests of the operation are built by its {@link RequestBuilder}.
  *
  * @author Jaromír Staněk
  * @version 1.0
@@ -59,40 +35,23 @@ import cz.zcu.kiv.multicloud.utils.Utils;
 public abstract class Operation<T> {
 
 	/** Separator for multiple JSON value mapped into one. */
-	public static final String JSON_MAPPING_SEPARATOR = ";";
+	public static final String JSON_MAPPING_SEPARATOR = JsonMapping.MAPPING_SEPARATOR;
 	/** Separator for selecting path in the JSON response. */
-	public static final String JSON_PATH_SEPARATOR = "/";
+	public static final String JSON_PATH_SEPARATOR = JsonMapping.PATH_SEPARATOR;
 
 	/** Type of operation. */
 	private final OperationType type;
-	/** Access token for the user account storage service. */
-	private OAuth2Token token;
-	/** Mapping of non-generic string values. */
-	private final Map<String, String> propertyMapping;
-	/** Name of the URI parameter containing access token. */
-	private String authorizationParam;
+	/** Builder of the requests of the operation. */
+	private final RequestBuilder builder;
 	/** Result of the operation. */
 	private T result;
 	/** Error that occurred during the operation. */
 	private OperationError error;
+	/** Shared HTTP client. If null, a new client is created for each request. */
+	private CloseableHttpClient client;
 
 	/** JSON factory and Object mapper. */
 	protected final Json json;
-
-	/** HTTP method used by the request. */
-	protected HttpMethod method;
-	/** URI template of the request. */
-	protected String uriTemplate;
-	/** Headers of the request. */
-	protected Map<String, String> requestHeaders;
-	/** Parameters of the request. */
-	protected Map<String, String> requestParams;
-	/** Headers of the response. */
-	protected Map<String, String> responseHeaders;
-	/** Parameters of the response. */
-	protected Map<String, String> responseParams;
-	/** Mapping of the values in the response. */
-	protected Map<String, String> responseMapping;
 	/** If the operation was aborted. */
 	protected boolean isAborted;
 
@@ -104,17 +63,12 @@ public abstract class Operation<T> {
 	 */
 	public Operation(OperationType type, OAuth2Token token, CloudRequest request) {
 		this.type = type;
-		this.token = token;
-		this.propertyMapping = new HashMap<>();
-		this.authorizationParam = null;
+		this.builder = new RequestBuilder(token, request);
 		this.result = null;
 		this.error = null;
+		this.client = null;
 
 		json = Json.getInstance();
-
-		setRequest(request);
-		responseHeaders = new HashMap<>();
-		responseParams = new HashMap<>();
 	}
 
 	/**
@@ -128,133 +82,30 @@ public abstract class Operation<T> {
 	 * @param data Data to replace it with.
 	 */
 	protected void addPropertyMapping(String property, String data) {
-		propertyMapping.put(property, data);
+		builder.addPropertyMapping(property, data);
 	}
 
 	/**
 	 * Removes the header for holding access token from the request.
 	 */
 	protected void disableAuthorizationHeader() {
-		requestHeaders.remove("Authorization");
+		builder.disableAuthorizationHeader();
 	}
 
 	/**
 	 * Removes the parameter for holding access token from the request.
 	 */
 	protected void disableAuthorizationParam() {
-		requestParams.remove(authorizationParam);
-		authorizationParam = null;
+		builder.disableAuthorizationParam();
 	}
 
 	/**
-	 * Recursive JSON value mapping.
-	 * @param root Relative root of the tree.
-	 * @return Tree with mapped values.
+	 * Fills the body template of the request with corresponding values.
+	 * @return Body of the request. Null if the request has no body.
+	 * @throws MultiCloudException If property replacement is missing.
 	 */
-	private JsonNode doJsonMapping(JsonNode root) {
-		if (responseMapping.isEmpty()) {
-			return root;
-		}
-		JsonNode obj = null;
-		switch (root.getNodeType()) {
-		case OBJECT:
-			/* create new empty object */
-			obj = new ObjectNode(json.getMapper().getNodeFactory());
-			/* fill object with mapped properties */
-			Iterator<String> keys = root.fieldNames();
-			while (keys.hasNext()) {
-				String key = keys.next();
-				((ObjectNode) obj).put(key, doJsonMapping(root.get(key)));
-			}
-			/* do the mapping */
-			for (Entry<String, String> mapping: responseMapping.entrySet()) {
-				for (String submapping: mapping.getValue().split(JSON_MAPPING_SEPARATOR)) {
-					JsonNode node = root;
-					for (String subpath: submapping.split(JSON_PATH_SEPARATOR)) {
-						node = node.path(subpath);
-					}
-					JsonNode existing = obj.path(mapping.getKey());
-					if (!node.isMissingNode()) {
-						switch (node.getNodeType()) {
-						case STRING:
-							String text = "";
-							if (!existing.isMissingNode() && existing.isTextual()) {
-								text += existing.textValue(); // prepend existing string
-							}
-							text += node.textValue();
-							((ObjectNode) obj).put(mapping.getKey(), text);
-							break;
-						case NUMBER:
-							switch (node.numberType()) {
-							case INT:
-							case LONG:
-							case BIG_INTEGER:
-								long numLng = node.longValue();
-								if (!existing.isMissingNode() && existing.isNumber()) {
-									switch (existing.numberType()) {
-									case INT:
-									case LONG:
-									case BIG_INTEGER:
-										numLng += existing.longValue(); // add numbers
-										((ObjectNode) obj).put(mapping.getKey(), numLng);
-										break;
-									case FLOAT:
-									case DOUBLE:
-									case BIG_DECIMAL:
-										double exDbl = existing.doubleValue() + numLng; // add numbers
-										((ObjectNode) obj).put(mapping.getKey(), exDbl);
-										break;
-									}
-								} else {
-									((ObjectNode) obj).put(mapping.getKey(), numLng);
-								}
-								break;
-							case FLOAT:
-							case DOUBLE:
-							case BIG_DECIMAL:
-								double numDbl = node.doubleValue();
-								if (!existing.isMissingNode() && existing.isNumber()) {
-									numDbl += existing.doubleValue(); // add numbers
-									((ObjectNode) obj).put(mapping.getKey(), numDbl);
-								}
-								break;
-							}
-							break;
-						case OBJECT:
-							JsonNode mappedObjectNode = doJsonMapping(node); // map JSON values inside object
-							((ObjectNode) obj).put(mapping.getKey(), mappedObjectNode);
-							break;
-						case ARRAY:
-							JsonNode mappedArrayNode = doJsonMapping(node); // map JSON values inside array
-							((ObjectNode) obj).put(mapping.getKey(), mappedArrayNode);
-							break;
-						case BOOLEAN:
-							((ObjectNode) obj).put(mapping.getKey(), node.booleanValue());
-							break;
-						case NULL:
-						default:
-							break;
-						}
-					}
-				}
-			}
-			break;
-		case ARRAY:
-			obj = new ArrayNode(json.getMapper().getNodeFactory());
-			Iterator<JsonNode> it = root.iterator();
-			while (it.hasNext()) {
-				((ArrayNode) obj).add(doJsonMapping(it.next()));
-			}
-			break;
-		case STRING:
-		case NUMBER:
-		case BOOLEAN:
-		case NULL:
-		default:
-			obj = root;
-			break;
-		}
-		return obj;
+	protected String doBodyMapping() throws MultiCloudException {
+		return builder.doBodyMapping();
 	}
 
 	/**
@@ -265,77 +116,21 @@ public abstract class Operation<T> {
 	 * @throws MultiCloudException If property replacement is missing.
 	 */
 	protected String doPropertyMapping(String source, boolean encode) throws MultiCloudException {
-		String result = source;
-		Pattern pattern = Pattern.compile("(<.*?>)");
-		Matcher matcher = null;
-		for (Entry<String, String> mapping: propertyMapping.entrySet()) {
-			String find = mapping.getKey();
-			if (!find.startsWith("<")) {
-				find = "<" + find;
-			}
-			if (!find.endsWith(">")) {
-				find += ">";
-			}
-			matcher = pattern.matcher(result);
-			if (matcher.find()) {
-				String value = mapping.getValue();
-				if (value != null) {
-					if (encode) {
-						if (find.equals("<path>") || find.equals("<source_path>") || find.equals("<destination_path>")) {
-							try {
-								value = URLEncoder.encode(value, "utf-8");
-								value = value.replace("%2F", "/").replace("+", "%20").replace("*", "%2A");
-							} catch (UnsupportedEncodingException e) {
-								/* in this case, continue with what we've got */
-							}
-						}
-					} else {
-						if (find.equals("<query>")) {
-							if (result.contains("'")) {
-								value = value.replace("'", "\\\\'");
-							}
-						}
-					}
-					result = result.replaceAll(find, value);
-				}
-			}
-		}
-		/* test if all was replaced */
-		matcher = pattern.matcher(result);
-		if (matcher.find()) {
-			throw new MultiCloudException("Missing parameter.");
-		}
-		return result;
+		return builder.doPropertyMapping(source, encode);
 	}
 
 	/**
 	 * Mapping of the response parameters.
 	 */
 	protected void doResponseParamsMapping() {
-		Map<String, String> add = new HashMap<>();
-		List<String> remove = new ArrayList<>();
-		for (Entry<String, String> param: responseParams.entrySet()) {
-			for (Entry<String, String> mapping: responseMapping.entrySet()) {
-				if (param.getKey().equals(mapping.getValue())) {
-					add.put(mapping.getKey(), param.getValue());
-					if (!param.getKey().equals(mapping.getKey())) {
-						remove.add(param.getKey());
-					}
-					break;
-				}
-			}
-		}
-		responseParams.putAll(add);
-		for (String key: remove) {
-			responseParams.remove(key);
-		}
+		builder.doResponseParamsMapping();
 	}
 
 	/**
 	 * Adds the header for holding access token in the request.
 	 */
 	protected void enableAuthorizationHeader() {
-		requestHeaders.put("Authorization", token.toHeaderString());
+		builder.enableAuthorizationHeader();
 	}
 
 	/**
@@ -343,8 +138,7 @@ public abstract class Operation<T> {
 	 * @param param Parameter name.
 	 */
 	protected void enableAuthorizationParam(String param) {
-		authorizationParam = param;
-		requestParams.put(param, token.getAccessToken());
+		builder.enableAuthorizationParam(param);
 	}
 
 	/**
@@ -365,20 +159,43 @@ public abstract class Operation<T> {
 	 */
 	protected T executeRequest(HttpUriRequest request, ResponseProcessor<T> processor) throws IOException {
 		/* clear the response parameters */
+		Map<String, String> responseHeaders = builder.getResponseHeaders();
 		responseHeaders.clear();
-		responseParams.clear();
+		builder.getResponseParams().clear();
 		/* send the request and process the response */
-		CloseableHttpClient client = HttpClients.createDefault();
-		CloseableHttpResponse response = client.execute(request);
-		for (Header header: response.getAllHeaders()) {
-			responseHeaders.put(header.getName(), header.getValue());
+		CloseableHttpClient client = this.client;
+		if (client == null) {
+			client = HttpClients.createDefault();
+		}
+		T result = null;
+		try {
+			CloseableHttpResponse response = client.execute(request);
+			try {
+				for (Header header: response.getAllHeaders()) {
+					responseHeaders.put(header.getName(), header.getValue());
+				}
+				result = processor.processResponse(response);
+				/* consume the rest of the response so the connection can be reused */
+				EntityUtils.consume(response.getEntity());
+			} finally {
+				response.close();
+			}
+		} finally {
+			if (this.client == null) {
+				client.close();
+			}
 		}
-		T result = processor.processResponse(response);
-		response.close();
-		client.close();
 		return result;
 	}
 
+	/**
+	 * Returns the shared HTTP client used by the operation.
+	 * @return Shared HTTP client.
+	 */
+	public CloseableHttpClient getClient() {
+		return client;
+	}
+
 	/**
 	 * Returns the error that occurred during the operation.
 	 * @return Error occurred.
@@ -416,7 +233,7 @@ public abstract class Operation<T> {
 	 * @return If the header is enabled.
 	 */
 	protected boolean isAuthorizationHeaderEnabled() {
-		return (requestHeaders.containsKey("Authorization"));
+		return builder.isAuthorizationHeaderEnabled();
 	}
 
 	/**
@@ -424,7 +241,16 @@ public abstract class Operation<T> {
 	 * @return If the parameter is enabled.
 	 */
 	protected boolean isAuthorizationParamEnabled() {
-		return (authorizationParam != null);
+		return builder.isAuthorizationParamEnabled();
+	}
+
+	/**
+	 * Prepares the request for fetching the next page of the results, if the last response contained any.
+	 * @return If there is next page to be fetched.
+	 * @throws MultiCloudException If property replacement is missing.
+	 */
+	protected boolean nextPage() throws MultiCloudException {
+		return builder.nextPage();
 	}
 
 	/**
@@ -446,29 +272,15 @@ public abstract class Operation<T> {
 	protected abstract void operationFinish() throws MultiCloudException;
 
 	/**
-	 * Parses the {@link org.apache.http.HttpResponse} as a JSON string and returns the root of the tree. Also performs the response JSON values mapping.
+	 * Parses the {@link org.apache.http.HttpResponse} as a JSON string, performs the response JSON values mapping and binds the result to the supplied type.
+	 * Also saves the continuation token or link to the next page of the results, if the request is paginated.
 	 * @param response Response to be parsed.
-	 * @return Root of the parsed tree. Null on failed parsing.
+	 * @param type Type of the result.
+	 * @return Parsed result. Null on failed parsing.
+	 * @throws IOException If the parsed response cannot be bound to the type.
 	 */
-	protected JsonNode parseJsonResponse(HttpResponse response) {
-		if (response.getEntity() != null) {
-			ObjectMapper mapper = json.getMapper();
-			try {
-				JsonNode root = mapper.readTree(response.getEntity().getContent());
-				if (root.getNodeType() != JsonNodeType.OBJECT) {
-					ObjectNode obj = new ObjectNode(mapper.getNodeFactory());
-					obj.put("content", root);
-					root = obj;
-				}
-				/* mapping JSON values to different field names */
-				root = doJsonMapping(root);
-				return root;
-			} catch (IOException e) {
-				return null;
-			}
-		} else {
-			return null;
-		}
+	protected <E> E parseJsonResponse(HttpResponse response, Class<E> type) throws IOException {
+		return builder.parseJsonResponse(response, type);
 	}
 
 	/**
@@ -499,54 +311,15 @@ public abstract class Operation<T> {
 	 * @throws MultiCloudException If property replacement is missing.
 	 */
 	protected HttpUriRequest prepareRequest(HttpEntity requestData) throws MultiCloudException {
-		HttpUriRequest request = null;
-		String uri = doPropertyMapping(uriTemplate, true);
-		if (!requestParams.isEmpty()) {
-			for (Entry<String, String> param: requestParams.entrySet()) {
-				String update = doPropertyMapping(param.getValue(), false);
-				requestParams.put(param.getKey(), update);
-			}
-			uri += "?" + URLEncodedUtils.format(Utils.mapToList(requestParams), "UTF-8");
-		}
-		switch (method) {
-		case GET:
-			request = new HttpGet(uri);
-			break;
-		case POST:
-			request = new HttpPost(uri);
-			break;
-		case PUT:
-			request = new HttpPut(uri);
-			break;
-		case DELETE:
-			request = new HttpDelete(uri);
-			break;
-		case COPY:
-			request = new HttpCopy(uri);
-			break;
-		case MOVE:
-			request = new HttpMove(uri);
-			break;
-		case HEAD:
-			request = new HttpHead(uri);
-			break;
-		case OPTIONS:
-			request = new HttpOptions(uri);
-			break;
-		case PATCH:
-			request = new HttpPatch(uri);
-			break;
-		case TRACE:
-			request = new HttpTrace(uri);
-			break;
-		}
-		for (Entry<String, String> header: requestHeaders.entrySet()) {
-			request.addHeader(header.getKey(), doPropertyMapping(header.getValue(), false));
-		}
-		if (request instanceof HttpEntityEnclosingRequestBase) {
-			((HttpEntityEnclosingRequestBase) request).setEntity(requestData);
-		}
-		return request;
+		return builder.prepareRequest(requestData);
+	}
+
+	/**
+	 * Sets the shared HTTP client to be used by the operation. The client is not closed by the operation.
+	 * @param client Shared HTTP client.
+	 */
+	public void setClient(CloseableHttpClient client) {
+		this.client = client;
 	}
 
 	/**
@@ -554,33 +327,7 @@ public abstract class Operation<T> {
 	 * @param request Parameters of the request.
 	 */
 	protected void setRequest(CloudRequest request) {
-		if (request != null) {
-			method = request.getMethod();
-			uriTemplate = request.getUri();
-			requestHeaders = new HashMap<>();
-			if (request.getHeaders() != null) {
-				requestHeaders.putAll(request.getHeaders());
-			}
-			requestParams = new HashMap<>();
-			if (request.getParams() != null) {
-				requestParams.putAll(request.getParams());
-			}
-			responseMapping = new HashMap<>();
-			if (request.getMapping() != null) {
-				responseMapping.putAll(request.getMapping());
-			}
-			if (!Utils.isNullOrEmpty(request.getAuthorizationParam())) {
-				enableAuthorizationParam(request.getAuthorizationParam());
-			} else {
-				enableAuthorizationHeader();
-			}
-		} else {
-			method = HttpMethod.GET;
-			uriTemplate = null;
-			responseMapping = new HashMap<>();
-			requestHeaders = new HashMap<>();
-			requestParams = new HashMap<>();
-		}
+		builder.setRequest(request);
 	}
 
 	/**
@@ -596,7 +343,7 @@ public abstract class Operation<T> {
 	 * @param token Access token for the storage service.
 	 */
 	protected void setToken(OAuth2Token token) {
-		this.token = token;
+		builder.setToken(token);
 	}
 
 }
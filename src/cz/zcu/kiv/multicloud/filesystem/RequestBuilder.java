@@ -0,0 +1,399 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpOptions;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpTrace;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.message.BasicNameValuePair;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import cz.zcu.kiv.multicloud.MultiCloudException;
+import cz.zcu.kiv.multicloud.http.HttpCopy;
+import cz.zcu.kiv.multicloud.http.HttpMethod;
+import cz.zcu.kiv.multicloud.http.HttpMove;
+import cz.zcu.kiv.multicloud.json.CloudRequest;
+import cz.zcu.kiv.multicloud.json.Json;
+import cz.zcu.kiv.multicloud.json.JsonMapping;
+import cz.zcu.kiv.multicloud.json.Pagination;
+import cz.zcu.kiv.multicloud.oauth2.OAuth2Token;
+import cz.zcu.kiv.multicloud.utils.StringTemplate;
+import cz.zcu.kiv.multicloud.utils.Utils;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/RequestBuilder.java			<br /><br />
+ *
+ * Builder of the requests to the storage service from the request templates. It fills the templates with the mapped properties and the access token and parses the responses with the mapping of the request.
+ * It is used by the operations and by anything else sending the requests of the storage service, such as the workers uploading to one destination.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class RequestBuilder {
+
+	/** Access token for the user account storage service. */
+	private OAuth2Token token;
+	/** Mapping of non-generic string values. */
+	private final Map<String, String> propertyMapping;
+	/** Name of the URI parameter containing access token. */
+	private String authorizationParam;
+	/** JSON factory and Object mapper. */
+	private final Json json;
+
+	/** HTTP method used by the request. */
+	private HttpMethod method;
+	/** URI template of the request. */
+	private StringTemplate uriTemplate;
+	/** Headers of the request. */
+	private Map<String, StringTemplate> requestHeaders;
+	/** Parameters of the request. */
+	private Map<String, StringTemplate> requestParams;
+	/** Body template of the request. */
+	private StringTemplate bodyTemplate;
+	/** Headers of the response. */
+	private final Map<String, String> responseHeaders;
+	/** Parameters of the response. */
+	private final Map<String, String> responseParams;
+	/** Mapping of the values in the response. */
+	private Map<String, String> responseMapping;
+	/** Compiled mapping of the values in the JSON response. */
+	private JsonMapping jsonMapping;
+	/** Pagination of the results. */
+	private Pagination pagination;
+	/** Continuation token or link to the next page of the results. */
+	private String nextPageToken;
+
+	/**
+	 * Ctor with necessary parameters.
+	 * @param token Access token for the storage service.
+	 * @param request Parameters of the request.
+	 */
+	public RequestBuilder(OAuth2Token token, CloudRequest request) {
+		this.token = token;
+		this.propertyMapping = new HashMap<>();
+		this.authorizationParam = null;
+		this.json = Json.getInstance();
+		this.responseHeaders = new HashMap<>();
+		this.responseParams = new HashMap<>();
+		setRequest(request);
+	}
+
+	/**
+	 * Adds new mapping of non-generic string values.
+	 * @param property Property to be replaced.
+	 * @param data Data to replace it with.
+	 */
+	public void addPropertyMapping(String property, String data) {
+		propertyMapping.put(property, data);
+	}
+
+	/**
+	 * Removes the header for holding access token from the request.
+	 */
+	public void disableAuthorizationHeader() {
+		requestHeaders.remove("Authorization");
+	}
+
+	/**
+	 * Removes the parameter for holding access token from the request.
+	 */
+	public void disableAuthorizationParam() {
+		requestParams.remove(authorizationParam);
+		authorizationParam = null;
+	}
+
+	/**
+	 * Fills the body template of the request with corresponding values.
+	 * @return Body of the request. Null if the request has no body.
+	 * @throws MultiCloudException If property replacement is missing.
+	 */
+	public String doBodyMapping() throws MultiCloudException {
+		if (bodyTemplate == null) {
+			return null;
+		}
+		return bodyTemplate.render(propertyMapping, false);
+	}
+
+	/**
+	 * Finds all non-generic strings and replaces them with corresponding values.
+	 * @param source The string to replace these properties in.
+	 * @param encode If the replaced string should be URL encoded.
+	 * @return String with replaces values.
+	 * @throws MultiCloudException If property replacement is missing.
+	 */
+	public String doPropertyMapping(String source, boolean encode) throws MultiCloudException {
+		return StringTemplate.compile(source).render(propertyMapping, encode);
+	}
+
+	/**
+	 * Mapping of the response parameters.
+	 */
+	public void doResponseParamsMapping() {
+		Map<String, String> add = new HashMap<>();
+		List<String> remove = new ArrayList<>();
+		for (Entry<String, String> param: responseParams.entrySet()) {
+			for (Entry<String, String> mapping: responseMapping.entrySet()) {
+				if (param.getKey().equals(mapping.getValue())) {
+					add.put(mapping.getKey(), param.getValue());
+					if (!param.getKey().equals(mapping.getKey())) {
+						remove.add(param.getKey());
+					}
+					break;
+				}
+			}
+		}
+		responseParams.putAll(add);
+		for (String key: remove) {
+			responseParams.remove(key);
+		}
+	}
+
+	/**
+	 * Adds the header for holding access token in the request.
+	 */
+	public void enableAuthorizationHeader() {
+		requestHeaders.put("Authorization", StringTemplate.literal(token.toHeaderString()));
+	}
+
+	/**
+	 * Adds the parameter for holding access token in the requst.
+	 * @param param Parameter name.
+	 */
+	public void enableAuthorizationParam(String param) {
+		authorizationParam = param;
+		requestParams.put(param, StringTemplate.literal(token.getAccessToken()));
+	}
+
+	/**
+	 * Returns the headers of the last response.
+	 * @return Headers of the response.
+	 */
+	public Map<String, String> getResponseHeaders() {
+		return responseHeaders;
+	}
+
+	/**
+	 * Returns the parameters of the last response.
+	 * @return Parameters of the response.
+	 */
+	public Map<String, String> getResponseParams() {
+		return responseParams;
+	}
+
+	/**
+	 * Determines if the header for holding access token is enabled.
+	 * @return If the header is enabled.
+	 */
+	public boolean isAuthorizationHeaderEnabled() {
+		return (requestHeaders.containsKey("Authorization"));
+	}
+
+	/**
+	 * Determines if the parameter for holding access token is enabled.
+	 * @return If the parameter is enabled.
+	 */
+	public boolean isAuthorizationParamEnabled() {
+		return (authorizationParam != null);
+	}
+
+	/**
+	 * Prepares the request for fetching the next page of the results, if the last response contained any.
+	 * @return If there is next page to be fetched.
+	 * @throws MultiCloudException If property replacement is missing.
+	 */
+	public boolean nextPage() throws MultiCloudException {
+		if (pagination == null || Utils.isNullOrEmpty(nextPageToken)) {
+			return false;
+		}
+		if (pagination.isLink()) {
+			/* the link might be relative to the previous request */
+			String previous = uriTemplate.render(propertyMapping, true);
+			String link = null;
+			try {
+				link = URI.create(previous).resolve(nextPageToken).toString();
+			} catch (IllegalArgumentException e) {
+				throw new MultiCloudException("Invalid link to the next page.");
+			}
+			if (link.equals(previous)) {
+				return false;
+			}
+			uriTemplate = StringTemplate.literal(link);
+			/* the link already contains all the parameters except the access token */
+			StringTemplate auth = (authorizationParam == null) ? null : requestParams.get(authorizationParam);
+			requestParams.clear();
+			if (auth != null) {
+				requestParams.put(authorizationParam, auth);
+			}
+		} else {
+			StringTemplate previous = requestParams.get(pagination.getParam());
+			if (previous != null && nextPageToken.equals(previous.getSource())) {
+				return false;
+			}
+			requestParams.put(pagination.getParam(), StringTemplate.literal(nextPageToken));
+		}
+		nextPageToken = null;
+		return true;
+	}
+
+	/**
+	 * Parses the {@link org.apache.http.HttpResponse} as a JSON string, performs the response JSON values mapping and binds the result to the supplied type.
+	 * Also saves the continuation token or link to the next page of the results, if the request is paginated.
+	 * @param response Response to be parsed.
+	 * @param type Type of the result.
+	 * @return Parsed result. Null on failed parsing.
+	 * @throws IOException If the parsed response cannot be bound to the type.
+	 */
+	public <E> E parseJsonResponse(HttpResponse response, Class<E> type) throws IOException {
+		nextPageToken = null;
+		if (response.getEntity() != null) {
+			ObjectMapper mapper = json.getMapper();
+			TokenBuffer buffer = null;
+			Map<String, String> extracted = null;
+			if (pagination != null && !Utils.isNullOrEmpty(pagination.getNext())) {
+				extracted = new HashMap<>();
+				extracted.put(pagination.getNext(), null);
+			}
+			try {
+				JsonParser parser = mapper.getFactory().createParser(response.getEntity().getContent());
+				try {
+					/* mapping JSON values to different field names */
+					buffer = jsonMapping.map(parser, extracted);
+				} finally {
+					parser.close();
+				}
+			} catch (IOException e) {
+				return null;
+			}
+			if (extracted != null) {
+				nextPageToken = extracted.get(pagination.getNext());
+			}
+			if (buffer == null) {
+				return null;
+			}
+			return mapper.readValue(buffer.asParser(mapper), type);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Prepares {@link org.apache.http.client.methods.HttpUriRequest} and fills it with data provided.
+	 * @param requestData Data for filling the body of the request.
+	 * @return Prepared request.
+	 * @throws MultiCloudException If property replacement is missing.
+	 */
+	public HttpUriRequest prepareRequest(HttpEntity requestData) throws MultiCloudException {
+		HttpUriRequest request = null;
+		String uri = uriTemplate.render(propertyMapping, true);
+		if (!requestParams.isEmpty()) {
+			List<NameValuePair> params = new ArrayList<>(requestParams.size());
+			for (Entry<String, StringTemplate> param: requestParams.entrySet()) {
+				params.add(new BasicNameValuePair(param.getKey(), param.getValue().render(propertyMapping, false)));
+			}
+			uri += (uri.contains("?") ? "&" : "?") + URLEncodedUtils.format(params, "UTF-8");
+		}
+		switch (method) {
+		case GET:
+			request = new HttpGet(uri);
+			break;
+		case POST:
+			request = new HttpPost(uri);
+			break;
+		case PUT:
+			request = new HttpPut(uri);
+			break;
+		case DELETE:
+			request = new HttpDelete(uri);
+			break;
+		case COPY:
+			request = new HttpCopy(uri);
+			break;
+		case MOVE:
+			request = new HttpMove(uri);
+			break;
+		case HEAD:
+			request = new HttpHead(uri);
+			break;
+		case OPTIONS:
+			request = new HttpOptions(uri);
+			break;
+		case PATCH:
+			request = new HttpPatch(uri);
+			break;
+		case TRACE:
+			request = new HttpTrace(uri);
+			break;
+		}
+		for (Entry<String, StringTemplate> header: requestHeaders.entrySet()) {
+			request.addHeader(header.getKey(), header.getValue().render(propertyMapping, false));
+		}
+		if (request instanceof HttpEntityEnclosingRequestBase) {
+			((HttpEntityEnclosingRequestBase) request).setEntity(requestData);
+		}
+		return request;
+	}
+
+	/**
+	 * Sets the parameters of the request.
+	 * @param request Parameters of the request.
+	 */
+	public void setRequest(CloudRequest request) {
+		if (request != null) {
+			method = request.getMethod();
+			uriTemplate = request.getUriTemplate();
+			requestHeaders = new HashMap<>(request.getHeadersTemplate());
+			requestParams = new HashMap<>(request.getParamsTemplate());
+			bodyTemplate = request.getBodyTemplate();
+			responseMapping = new HashMap<>();
+			if (request.getMapping() != null) {
+				responseMapping.putAll(request.getMapping());
+			}
+			jsonMapping = request.getJsonMapping();
+			pagination = request.getPagination();
+			if (!Utils.isNullOrEmpty(request.getAuthorizationParam())) {
+				enableAuthorizationParam(request.getAuthorizationParam());
+			} else {
+				enableAuthorizationHeader();
+			}
+		} else {
+			method = HttpMethod.GET;
+			uriTemplate = null;
+			bodyTemplate = null;
+			responseMapping = new HashMap<>();
+			jsonMapping = JsonMapping.compile(null);
+			pagination = null;
+			requestHeaders = new HashMap<>();
+			requestParams = new HashMap<>();
+		}
+	}
+
+	/**
+	 * Sets the access token for the storage service.
+	 * @param token Access token for the storage service.
+	 */
+	public void setToken(OAuth2Token token) {
+		this.token = token;
+	}
+
+}
@@ -1,15 +1,12 @@
 package cz.zcu.kiv.multicloud.filesystem;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.JsonNodeType;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
 import cz.zcu.kiv.multicloud.MultiCloudException;
 import cz.zcu.kiv.multicloud.json.CloudRequest;
 import cz.zcu.kiv.multicloud.json.FileInfo;
@@ -26,6 +23,8 @@ import cz.zcu.kiv.multicloud.oauth2.OAuth2Token;
  */
 public class SearchOp extends Operation<List<FileInfo>> {
 
+	/** Callback for receiving the results page by page. If set, the results are not kept in the result of the operation. */
+	private FileListCallback callback;
 	/** The request of the operation. */
 	private HttpUriRequest request;
 	/** Lock object for concurrent method calls. */
@@ -42,6 +41,7 @@ public class SearchOp extends Operation<List<FileInfo>> {
 		super(OperationType.SEARCH, token, request);
 		addPropertyMapping("deleted", showDeleted ? "true" : "false");
 		addPropertyMapping("query", search);
+		callback = null;
 		lock = new Object();
 	}
 
@@ -51,31 +51,29 @@ public class SearchOp extends Operation<List<FileInfo>> {
 	@Override
 	public void abort() {
 		synchronized (lock) {
+			/* the abort must be noticed also between the pages */
+			isAborted = true;
 			if (request != null) {
 				request.abort();
-				isAborted = true;
 			}
 		}
 	}
 
 	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	protected void operationBegin() throws MultiCloudException {
-		/* no preparation necessary */
-	}
-
-	/**
-	 * {@inheritDoc}
+	 * Executes the prepared request and returns one page of the search results.
+	 * @return Page of the search results. Null if the request failed or was aborted.
+	 * @throws MultiCloudException If the request failed.
 	 */
-	@Override
-	protected void operationExecute() throws MultiCloudException {
+	private List<FileInfo> fetchPage() throws MultiCloudException {
 		synchronized (lock) {
+			if (isAborted) {
+				return null;
+			}
 			request = prepareRequest(null);
 		}
+		List<FileInfo> page = null;
 		try {
-			setResult(executeRequest(request, new ResponseProcessor<List<FileInfo>>() {
+			page = executeRequest(request, new ResponseProcessor<List<FileInfo>>() {
 				/**
 				 * {@inheritDoc}
 				 */
@@ -86,16 +84,16 @@ public class SearchOp extends Operation<List<FileInfo>> {
 						if (response.getStatusLine().getStatusCode() >= 400) {
 							parseOperationError(response);
 						} else {
-							JsonNode tree = parseJsonResponse(response);
-							if (tree.getNodeType() == JsonNodeType.ARRAY) {
-								ObjectNode root = new ObjectNode(json.getMapper().getNodeFactory());
-								root.put("content", tree);
-								tree = root;
-							}
-							FileInfo data = json.getMapper().treeToValue(tree, FileInfo.class);
-							list = data.getContent();
-							for (FileInfo item: list) {
-								item.fillMissing();
+							/* response not being an object is mapped to the content of the result */
+							FileInfo data = parseJsonResponse(response, FileInfo.class);
+							if (data != null) {
+								list = data.getContent();
+								if (list == null) {
+									list = new ArrayList<>();
+								}
+								for (FileInfo item: list) {
+									item.fillMissing();
+								}
 							}
 						}
 					} catch (IllegalStateException | IOException e) {
@@ -103,7 +101,7 @@ public class SearchOp extends Operation<List<FileInfo>> {
 					}
 					return list;
 				}
-			}));
+			});
 		} catch (IOException e) {
 			synchronized (lock) {
 				if (!isAborted) {
@@ -114,6 +112,48 @@ public class SearchOp extends Operation<List<FileInfo>> {
 		synchronized (lock) {
 			request = null;
 		}
+		return page;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void operationBegin() throws MultiCloudException {
+		/* no preparation necessary */
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void operationExecute() throws MultiCloudException {
+		List<FileInfo> result = null;
+		do {
+			List<FileInfo> page = fetchPage();
+			if (page == null) {
+				synchronized (lock) {
+					if (result != null && !isAborted) {
+						/* truncated results must not look complete */
+						throw new MultiCloudException("Failed to obtain the rest of the search results.");
+					}
+				}
+				result = null;
+				break;
+			}
+			if (result == null) {
+				result = new ArrayList<>();
+			}
+			if (callback != null) {
+				/* pages passed to the callback are not kept */
+				if (!callback.onPage(page)) {
+					break;
+				}
+			} else {
+				result.addAll(page);
+			}
+		} while (nextPage());
+		setResult(result);
 	}
 
 	/**
@@ -124,4 +164,12 @@ public class SearchOp extends Operation<List<FileInfo>> {
 		/* no finalization necessary */
 	}
 
+	/**
+	 * Sets the callback for receiving the results page by page. If set, the results are not kept in the result of the operation.
+	 * @param callback Callback for the results.
+	 */
+	public void setCallback(FileListCallback callback) {
+		this.callback = callback;
+	}
+
 }
@@ -0,0 +1,154 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+
+import cz.zcu.kiv.multicloud.json.Json;
+import cz.zcu.kiv.multicloud.json.UploadJournal;
+import cz.zcu.kiv.multicloud.json.UploadSession;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/SessionJournal.java			<br /><br />
+ *
+ * Sidecar journal of an upload, stored next to the uploaded file. For each destination it keeps the identifier of the upload session and the offset confirmed by the server, so that an interrupted upload continues in the same session.
+ * Sessions are dropped once the upload to their destination finishes. The journal is discarded, if the file changed since it was saved.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class SessionJournal {
+
+	/** Extension appended to the name of the uploaded file. */
+	public static final String JOURNAL_EXTENSION = ".mcupload";
+	/** Interval in milliseconds between two saves of the journal during the upload. */
+	public static final long SAVE_INTERVAL = 1000;
+
+	/** Journal file. */
+	private final File file;
+	/** Uploaded file. */
+	private final File data;
+	/** Persisted sessions of the upload. */
+	private final UploadJournal journal;
+	/** If the journal changed since last save. */
+	private boolean changed;
+
+	/**
+	 * Ctor with the uploaded file.
+	 * @param data Uploaded file.
+	 */
+	public SessionJournal(File data) {
+		this.file = getJournalFile(data);
+		this.data = data;
+		this.journal = new UploadJournal();
+		journal.setSize(data.length());
+		journal.setModified(data.lastModified());
+		journal.setSessions(new HashMap<String, UploadSession>());
+		this.changed = false;
+	}
+
+	/**
+	 * Deletes the journal file.
+	 */
+	public synchronized void delete() {
+		file.delete();
+		changed = false;
+	}
+
+	/**
+	 * Returns the journal file of the uploaded file.
+	 * @param data Uploaded file.
+	 * @return Journal file.
+	 */
+	public static File getJournalFile(File data) {
+		return new File(data.getPath() + JOURNAL_EXTENSION);
+	}
+
+	/**
+	 * Returns copy of the session of the destination.
+	 * @param destination Key of the destination.
+	 * @return Upload session, or null if none was recorded.
+	 */
+	public synchronized UploadSession getSession(String destination) {
+		UploadSession saved = journal.getSessions().get(destination);
+		if (saved == null) {
+			return null;
+		}
+		UploadSession session = new UploadSession();
+		session.setSession(saved.getSession());
+		session.setOffset(saved.getOffset());
+		return session;
+	}
+
+	/**
+	 * Determines if no session is recorded.
+	 * @return If the journal is empty.
+	 */
+	public synchronized boolean isEmpty() {
+		return journal.getSessions().isEmpty();
+	}
+
+	/**
+	 * Loads the journal of previous upload of the same file. The journal is used only if the file did not change since.
+	 * @return If the journal was loaded.
+	 */
+	public synchronized boolean load() {
+		if (!file.isFile()) {
+			return false;
+		}
+		UploadJournal saved;
+		try {
+			saved = Json.getInstance().getMapper().readValue(file, UploadJournal.class);
+		} catch (IOException e) {
+			return false;
+		}
+		if (saved.getSize() != data.length() || saved.getModified() != data.lastModified() || saved.getSessions() == null) {
+			return false;
+		}
+		journal.setSessions(saved.getSessions());
+		changed = false;
+		return true;
+	}
+
+	/**
+	 * Records the session of the destination and the offset confirmed by the server.
+	 * @param destination Key of the destination.
+	 * @param session Identifier of the session.
+	 * @param offset Confirmed offset.
+	 */
+	public synchronized void putSession(String destination, String session, long offset) {
+		UploadSession entry = new UploadSession();
+		entry.setSession(session);
+		entry.setOffset(offset);
+		journal.getSessions().put(destination, entry);
+		changed = true;
+	}
+
+	/**
+	 * Drops the session of the destination.
+	 * @param destination Key of the destination.
+	 */
+	public synchronized void removeSession(String destination) {
+		if (journal.getSessions().remove(destination) != null) {
+			changed = true;
+		}
+	}
+
+	/**
+	 * Saves the journal, if it changed since last save. The journal is written to a temporary file first and moved over the previous version.
+	 * @throws IOException If the journal cannot be saved.
+	 */
+	public synchronized void save() throws IOException {
+		if (!changed) {
+			return;
+		}
+		File temp = new File(file.getPath() + ".tmp");
+		Json.getInstance().getMapper().writeValue(temp, journal);
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		changed = false;
+	}
+
+}
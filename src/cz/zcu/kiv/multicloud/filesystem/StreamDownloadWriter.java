@@ -0,0 +1,186 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/StreamDownloadWriter.java			<br /><br />
+ *
+ * Writer of the downloaded chunks to a sequential channel. Chunks arriving out of order are held in a reassembly buffer until all the data before them is written.
+ * The buffer is bounded by limiting the scheduler of the chunks to the window behind the data already written, so the workers slow down together with the consumer of the channel.
+ * Only one thread writes to the channel at a time, the data at the beginning of the window is written directly without buffering.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class StreamDownloadWriter implements DownloadWriter {
+
+	/** Default capacity of the reassembly buffer, set to 16 MiB. */
+	public static final long DEFAULT_CAPACITY = 16 * 1024 * 1024;
+
+	/** Target channel. */
+	private final WritableByteChannel channel;
+	/** Capacity of the reassembly buffer. */
+	private final long capacity;
+	/** Scheduler of the chunks, limited to the window of the buffer. */
+	private final ChunkScheduler scheduler;
+	/** Data waiting for the data before it to be written, by its position. */
+	private final TreeMap<Long, ByteBuffer> pending;
+	/** Number of bytes written to the channel. */
+	private long written;
+	/** If a thread is writing to the channel. */
+	private boolean writing;
+	/** Failure of the channel, if any. */
+	private IOException error;
+
+	/**
+	 * Ctor with the target channel, capacity of the reassembly buffer and the scheduler of the chunks.
+	 * @param channel Target channel.
+	 * @param capacity Capacity of the reassembly buffer.
+	 * @param scheduler Scheduler of the chunks.
+	 */
+	public StreamDownloadWriter(WritableByteChannel channel, long capacity, ChunkScheduler scheduler) {
+		this.channel = channel;
+		this.capacity = capacity;
+		this.scheduler = scheduler;
+		this.pending = new TreeMap<>();
+		this.written = 0;
+		this.writing = false;
+		this.error = null;
+		scheduler.setLimit(capacity);
+	}
+
+	/**
+	 * Finishes writing and drops the data left in the buffer. The channel is left open, it belongs to the caller.
+	 */
+	@Override
+	public synchronized void close() {
+		pending.clear();
+	}
+
+	/**
+	 * Returns the number of bytes written to the channel.
+	 * @return Number of bytes written.
+	 */
+	public synchronized long getWritten() {
+		return written;
+	}
+
+	/**
+	 * Determines if all the data received was written to the channel.
+	 * @return If there is no data left in the buffer.
+	 */
+	public synchronized boolean isFlushed() {
+		return pending.isEmpty() && !writing && error == null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isMapped() {
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ByteBuffer map(long position, long size) throws IOException {
+		throw new IOException("Stream cannot be memory-mapped.");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void read(ByteBuffer buffer, long position) throws IOException {
+		throw new IOException("Stream cannot be read back.");
+	}
+
+	/**
+	 * Writes the buffer to the channel completely.
+	 * @param buffer Data buffer.
+	 * @throws IOException If the data cannot be written.
+	 */
+	private void transfer(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (Thread.interrupted()) {
+				throw new InterruptedIOException("Writing interrupted.");
+			}
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(ByteBuffer buffer, long position) throws IOException {
+		ByteBuffer data = buffer;
+		long begin = position;
+		synchronized (this) {
+			if (error != null) {
+				throw error;
+			}
+			long end = begin + data.remaining();
+			if (end <= written) {
+				/* already written, a hedged copy of the data */
+				data.position(data.limit());
+				return;
+			}
+			if (begin > written || writing) {
+				/* keep a copy until the data before it is written */
+				ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+				copy.put(data);
+				copy.flip();
+				pending.put(begin, copy);
+				return;
+			}
+			/* skip the part already written */
+			data.position(data.position() + (int) (written - begin));
+			begin = written;
+			writing = true;
+		}
+		try {
+			while (data != null) {
+				long end = begin + data.remaining();
+				transfer(data);
+				synchronized (this) {
+					written = end;
+					data = null;
+					/* continue with the buffered data that became contiguous */
+					Entry<Long, ByteBuffer> head = pending.firstEntry();
+					while (head != null && head.getKey() <= written) {
+						pending.remove(head.getKey());
+						ByteBuffer next = head.getValue();
+						long nextEnd = head.getKey() + next.remaining();
+						if (nextEnd > written) {
+							next.position(next.position() + (int) (written - head.getKey()));
+							begin = written;
+							data = next;
+							break;
+						}
+						head = pending.firstEntry();
+					}
+					if (data == null) {
+						writing = false;
+					}
+					scheduler.setLimit(written + capacity);
+				}
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				error = e;
+				writing = false;
+			}
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,186 @@
+package cz.zcu.kiv.multicloud.filesystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+
+import cz.zcu.kiv.multicloud.MultiCloudException;
+import cz.zcu.kiv.multicloud.json.CloudRequest;
+import cz.zcu.kiv.multicloud.json.FileInfo;
+import cz.zcu.kiv.multicloud.json.UploadSession;
+import cz.zcu.kiv.multicloud.utils.Utils;
+
+/**
+ * cz.zcu.kiv.multicloud.filesystem/UploadContext.java			<br /><br />
+ *
+ * Context for building the requests of one destination of an upload and parsing its responses. It holds the request templates, property mapping and response maps of the destination.
+ * Each destination has its own context, so the workers uploading to different destinations never wait for each other.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class UploadContext {
+
+	/** Builder of the requests of the destination. */
+	private final RequestBuilder builder;
+	/** Progress listener. */
+	private final ProgressListener listener;
+
+	/**
+	 * Ctor with necessary parameters.
+	 * @param dst Information about the destination.
+	 * @param overwrite If the destination file should be overwritten.
+	 * @param size Size of the uploaded file. Negative, if the size is not known yet.
+	 * @param listener Progress listener.
+	 */
+	public UploadContext(FileCloudSource dst, boolean overwrite, long size, ProgressListener listener) {
+		this.builder = new RequestBuilder(dst.getToken(), null);
+		this.listener = listener;
+
+		builder.addPropertyMapping("overwrite", overwrite ? "true" : "false");
+		if (size >= 0) {
+			builder.addPropertyMapping("size", String.valueOf(size));
+		} else if (dst.getTransfer() != null && dst.getTransfer().getUnknownSize() != null) {
+			/* requests needing the size fail, unless the provider accepts a placeholder */
+			builder.addPropertyMapping("size", dst.getTransfer().getUnknownSize());
+		}
+		builder.addPropertyMapping("id", dst.getFile().getId());
+		builder.addPropertyMapping("destination_id", dst.getFile().getId());
+		if (dst.getRemote() != null) {
+			builder.addPropertyMapping("file_id", dst.getRemote().getId());
+		}
+		String path = dst.getFile().getPath();
+		if (path != null) {
+			if (path.endsWith(FileInfo.PATH_SEPARATOR)) {
+				if (dst.getFileName() != null) {
+					path += dst.getFileName();
+				}
+			} else {
+				if (dst.getFileName() != null) {
+					path += FileInfo.PATH_SEPARATOR + dst.getFileName();
+				}
+			}
+		}
+		builder.addPropertyMapping("path", path);
+		builder.addPropertyMapping("destination_path", path);
+		if (dst.getFileName() != null) {
+			builder.addPropertyMapping("name", dst.getFileName());
+		}
+	}
+
+	/**
+	 * Creates entity streaming the region of the file straight from its channel. Progress of the transfer is reported to the listener.
+	 * @param channel Channel of the file.
+	 * @param position First byte of the region.
+	 * @param length Length of the region.
+	 * @param bufferPool Pool of the buffers used, if the region cannot be transferred straight to the connection.
+	 * @return Entity carrying the data.
+	 */
+	public HttpEntity getEntity(FileChannel channel, long position, long length, BufferPool bufferPool) {
+		return new FileRegionEntity(channel, position, length, listener, bufferPool);
+	}
+
+	/**
+	 * Creates entity reading the data from the stream. Progress of the transfer is reported to the listener.
+	 * @param data Data to be transferred.
+	 * @param length Length of the data.
+	 * @return Entity carrying the data.
+	 */
+	public HttpEntity getEntity(InputStream data, long length) {
+		return new InputStreamEntity(new CountingInputStream(data, listener), length);
+	}
+
+	/**
+	 * Method for parsing upload session information out of a response.
+	 * @param request Request to which the response belongs to.
+	 * @param response Response to be parsed.
+	 * @return Upload session.
+	 */
+	public synchronized UploadSession getParsedSessionResponse(CloudRequest request, HttpResponse response) {
+		builder.setRequest(request);
+		Map<String, String> responseHeaders = builder.getResponseHeaders();
+		Map<String, String> responseParams = builder.getResponseParams();
+		for (Header header: response.getAllHeaders()) {
+			responseHeaders.put(header.getName(), header.getValue());
+		}
+		UploadSession session = null;
+		try {
+			if (response.getStatusLine().getStatusCode() < 400) {
+				session = builder.parseJsonResponse(response, UploadSession.class);
+				if (session == null) {
+					for (Entry<String, String> header: responseHeaders.entrySet()) {
+						if (header.getKey().equals("Location")) {
+							responseParams.putAll(Utils.extractParams(header.getValue()));
+							builder.doResponseParamsMapping();
+							session = new UploadSession();
+							session.setSession(responseParams.get("session"));
+							try {
+								long offset = Long.parseLong(responseParams.get("offset"));
+								session.setOffset(offset);
+							} catch (NumberFormatException e) {
+								session.setOffset(0);
+							}
+						}
+					}
+				}
+			}
+		} catch (IllegalStateException | IOException e) {
+			/* return null value instead of throwing exception */
+		}
+		return session;
+	}
+
+	/**
+	 * Method for preparing a request for the worker thread.
+	 * @param request Request to be prepared.
+	 * @param session Upload session information.
+	 * @param data Entity carrying the data to be transferred, null if there is none.
+	 * @param transferred Amount of data already transferred.
+	 * @return Request for the worker.
+	 * @throws MultiCloudException If preparation of the request failed.
+	 */
+	public synchronized HttpUriRequest getPreparedRequest(CloudRequest request, UploadSession session, HttpEntity data, long transferred) throws MultiCloudException {
+		HttpUriRequest preparedRequest = null;
+		builder.setRequest(request);
+		builder.addPropertyMapping("offset", String.valueOf(transferred));
+		if (session != null) {
+			builder.addPropertyMapping("session", session.getSession());
+		}
+		try {
+			if (request.getJsonBody() == null && FileUploadOp.DATA_MAPPING.equals(request.getBody())) {
+				builder.addPropertyMapping("offsetbuffer", String.valueOf(transferred + data.getContentLength() - 1));
+				preparedRequest = builder.prepareRequest(data);
+			} else {
+				String body = builder.doBodyMapping();
+				if (body != null) {
+					preparedRequest = builder.prepareRequest(new StringEntity(body));
+				} else {
+					preparedRequest = builder.prepareRequest(null);
+				}
+			}
+		} catch (UnsupportedEncodingException e1) {
+			throw new MultiCloudException("Failed to prepare request.");
+		}
+		return preparedRequest;
+	}
+
+	/**
+	 * Sets the size of the uploaded file, once the end of the stream is reached.
+	 * @param size Size of the uploaded file.
+	 */
+	public synchronized void setSize(long size) {
+		builder.addPropertyMapping("size", String.valueOf(size));
+	}
+
+}
@@ -0,0 +1,236 @@
+package cz.zcu.kiv.multicloud.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * cz.zcu.kiv.multicloud.http/HttpClientManager.java			<br /><br />
+ *
+ * Manager of long-lived HTTP clients. Each cloud storage service provider gets its own client backed by a pool of persistent connections.
+ * Clients obtained from this manager are shared and must not be closed by the caller.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class HttpClientManager implements Closeable {
+
+	/** Identifier of the client used when no provider is specified. */
+	public static final String DEFAULT_PROVIDER = "default";
+	/** Default maximum number of connections in one pool. */
+	public static final int DEFAULT_MAX_TOTAL = 64;
+	/** Default maximum number of connections to a single host. */
+	public static final int DEFAULT_MAX_PER_ROUTE = 16;
+	/** Default time in milliseconds to keep the connection alive, if not specified by the server. */
+	public static final long DEFAULT_KEEP_ALIVE = 30000;
+	/** Default time in milliseconds after which an idle connection is closed. */
+	public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+	/** Interval in milliseconds between two checks for idle connections. */
+	public static final long EVICTION_INTERVAL = 5000;
+
+	/** Connection pools of the providers. */
+	private final Map<String, PoolingHttpClientConnectionManager> pools;
+	/** HTTP clients of the providers. */
+	private final Map<String, CloseableHttpClient> clients;
+	/** Maximum number of connections in one pool. */
+	private int maxTotal;
+	/** Maximum number of connections to a single host. */
+	private int maxPerRoute;
+	/** Time in milliseconds after which an idle connection is closed. */
+	private long idleTimeout;
+	/** Thread for closing expired and idle connections. */
+	private Thread monitor;
+
+	/**
+	 * Empty ctor.
+	 */
+	public HttpClientManager() {
+		this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE);
+	}
+
+	/**
+	 * Ctor with connection limits supplied.
+	 * @param maxTotal Maximum number of connections in one pool.
+	 * @param maxPerRoute Maximum number of connections to a single host.
+	 */
+	public HttpClientManager(int maxTotal, int maxPerRoute) {
+		this.pools = new HashMap<>();
+		this.clients = new HashMap<>();
+		this.maxTotal = maxTotal;
+		this.maxPerRoute = maxPerRoute;
+		this.idleTimeout = DEFAULT_IDLE_TIMEOUT;
+		this.monitor = null;
+	}
+
+	/**
+	 * Closes all the clients and their connections. Clients requested afterwards are created anew.
+	 */
+	@Override
+	public synchronized void close() {
+		if (monitor != null) {
+			monitor.interrupt();
+			monitor = null;
+		}
+		for (CloseableHttpClient client: clients.values()) {
+			try {
+				client.close();
+			} catch (IOException e) {
+				/* ignore closing exception */
+			}
+		}
+		for (PoolingHttpClientConnectionManager pool: pools.values()) {
+			pool.shutdown();
+		}
+		clients.clear();
+		pools.clear();
+	}
+
+	/**
+	 * Closes expired and idle connections in all the pools.
+	 */
+	private synchronized void evictConnections() {
+		for (PoolingHttpClientConnectionManager pool: pools.values()) {
+			pool.closeExpiredConnections();
+			pool.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Returns the shared HTTP client of the cloud storage service provider. The client is created on first use.
+	 * @param provider Identifier of the cloud storage service provider.
+	 * @return Shared HTTP client.
+	 */
+	public synchronized CloseableHttpClient getClient(String provider) {
+		String key = (provider == null) ? DEFAULT_PROVIDER : provider;
+		CloseableHttpClient client = clients.get(key);
+		if (client == null) {
+			PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+			pool.setMaxTotal(maxTotal);
+			pool.setDefaultMaxPerRoute(maxPerRoute);
+			client = HttpClients.custom()
+					.setConnectionManager(pool)
+					.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+						/**
+						 * {@inheritDoc}
+						 */
+						@Override
+						public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+							HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+							while (it.hasNext()) {
+								HeaderElement he = it.nextElement();
+								if (he.getValue() != null && he.getName().equalsIgnoreCase("timeout")) {
+									try {
+										return Long.parseLong(he.getValue()) * 1000;
+									} catch (NumberFormatException e) {
+										/* use the default value */
+									}
+								}
+							}
+							return DEFAULT_KEEP_ALIVE;
+						}
+					})
+					.build();
+			pools.put(key, pool);
+			clients.put(key, client);
+			startMonitor();
+		}
+		return client;
+	}
+
+	/**
+	 * Returns the time after which an idle connection is closed.
+	 * @return Idle connection timeout in milliseconds.
+	 */
+	public synchronized long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Returns the maximum number of connections to a single host.
+	 * @return Maximum number of connections per host.
+	 */
+	public synchronized int getMaxPerRoute() {
+		return maxPerRoute;
+	}
+
+	/**
+	 * Returns the maximum number of connections in one pool.
+	 * @return Maximum number of connections.
+	 */
+	public synchronized int getMaxTotal() {
+		return maxTotal;
+	}
+
+	/**
+	 * Sets the time after which an idle connection is closed.
+	 * @param idleTimeout Idle connection timeout in milliseconds.
+	 */
+	public synchronized void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Sets the maximum number of connections to a single host. Applies to all the pools.
+	 * @param maxPerRoute Maximum number of connections per host.
+	 */
+	public synchronized void setMaxPerRoute(int maxPerRoute) {
+		this.maxPerRoute = maxPerRoute;
+		for (PoolingHttpClientConnectionManager pool: pools.values()) {
+			pool.setDefaultMaxPerRoute(maxPerRoute);
+		}
+	}
+
+	/**
+	 * Sets the maximum number of connections in one pool. Applies to all the pools.
+	 * @param maxTotal Maximum number of connections.
+	 */
+	public synchronized void setMaxTotal(int maxTotal) {
+		this.maxTotal = maxTotal;
+		for (PoolingHttpClientConnectionManager pool: pools.values()) {
+			pool.setMaxTotal(maxTotal);
+		}
+	}
+
+	/**
+	 * Starts the thread for closing expired and idle connections, if not already running.
+	 */
+	private void startMonitor() {
+		if (monitor != null) {
+			return;
+		}
+		monitor = new Thread() {
+			/**
+			 * Periodically closes expired and idle connections.
+			 */
+			@Override
+			public void run() {
+				while (!isInterrupted()) {
+					try {
+						Thread.sleep(EVICTION_INTERVAL);
+					} catch (InterruptedException e) {
+						break;
+					}
+					evictConnections();
+				}
+			}
+		};
+		monitor.setName("MultiCloud connection monitor");
+		monitor.setDaemon(true);
+		monitor.start();
+	}
+
+}
@@ -1,10 +1,16 @@
 package cz.zcu.kiv.multicloud.json;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 import cz.zcu.kiv.multicloud.http.HttpMethod;
+import cz.zcu.kiv.multicloud.utils.StringTemplate;
 
 /**
  * cz.zcu.kiv.multicloud.json/CloudRequest.java			<br /><br />
@@ -27,6 +33,8 @@ public class CloudRequest {
 	private Map<String, String> headers;
 	/** Mapping of the returned JSON parameters to object properties. */
 	private Map<String, String> mapping;
+	/** Pagination of the results. Null if the results are returned at once. */
+	private Pagination pagination;
 	/** Body of the request. */
 	private String body;
 	/** JSON body of the request. Empty parameters are omitted in the final request. */
@@ -35,6 +43,68 @@ public class CloudRequest {
 	/** Authorization parameter for accessing protected resources. Null or empty to disable. */
 	@JsonProperty("auth_param")
 	private String authorizationParam;
+	/** If the request can carry parts of an upload in parallel and in any order. */
+	private boolean parallel;
+
+	/** If the templates of the request are compiled and up to date. */
+	private boolean compiled;
+	/** Compiled URI of the request. */
+	private StringTemplate uriTemplate;
+	/** Compiled parameters of the request. */
+	private Map<String, StringTemplate> paramsTemplate;
+	/** Compiled headers of the request. */
+	private Map<String, StringTemplate> headersTemplate;
+	/** Compiled body of the request. JSON body takes precedence over the plain body. */
+	private StringTemplate bodyTemplate;
+	/** Compiled mapping of the returned JSON parameters. */
+	private JsonMapping jsonMapping;
+
+	/**
+	 * Compiles the URI, parameters, headers and body of the request into templates. Also compiles the mapping of the returned JSON parameters.
+	 * Should be called once after the request is loaded. Changing any part of the request invalidates the templates.
+	 * @throws JsonProcessingException If the JSON body cannot be serialized.
+	 */
+	public synchronized void compile() throws JsonProcessingException {
+		uriTemplate = StringTemplate.compile(uri);
+		paramsTemplate = compileMap(params);
+		headersTemplate = compileMap(headers);
+		if (jsonBody != null) {
+			bodyTemplate = StringTemplate.compile(Json.getInstance().getMapper().writeValueAsString(jsonBody));
+		} else {
+			bodyTemplate = StringTemplate.compile(body);
+		}
+		jsonMapping = JsonMapping.compile(mapping);
+		compiled = true;
+	}
+
+	/**
+	 * Compiles all the values of the map into templates.
+	 * @param map Map to be compiled.
+	 * @return Unmodifiable map of templates.
+	 */
+	private Map<String, StringTemplate> compileMap(Map<String, String> map) {
+		if (map == null || map.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<String, StringTemplate> templates = new HashMap<>();
+		for (Entry<String, String> entry: map.entrySet()) {
+			templates.put(entry.getKey(), StringTemplate.compile(entry.getValue()));
+		}
+		return Collections.unmodifiableMap(templates);
+	}
+
+	/**
+	 * Compiles the request, if it was not compiled yet or has changed since.
+	 */
+	private void ensureCompiled() {
+		if (!compiled) {
+			try {
+				compile();
+			} catch (JsonProcessingException e) {
+				throw new IllegalStateException("Failed to compile JSON body of the request.", e);
+			}
+		}
+	}
 
 	/**
 	 * Returns the authorization parameter.
@@ -52,6 +122,16 @@ public class CloudRequest {
 		return body;
 	}
 
+	/**
+	 * Returns the compiled body of the request. JSON body takes precedence over the plain body.
+	 * @return Compiled body, or null if the request has no body.
+	 */
+	@JsonIgnore
+	public synchronized StringTemplate getBodyTemplate() {
+		ensureCompiled();
+		return bodyTemplate;
+	}
+
 	/**
 	 * Returns the headers for the request.
 	 * @return Headers.
@@ -60,6 +140,16 @@ public class CloudRequest {
 		return headers;
 	}
 
+	/**
+	 * Returns the compiled headers of the request.
+	 * @return Compiled headers.
+	 */
+	@JsonIgnore
+	public synchronized Map<String, StringTemplate> getHeadersTemplate() {
+		ensureCompiled();
+		return headersTemplate;
+	}
+
 	/**
 	 * Returns the JSON body of the request.
 	 * @return JSON body of the request.
@@ -68,6 +158,16 @@ public class CloudRequest {
 		return jsonBody;
 	}
 
+	/**
+	 * Returns the compiled mapping of the returned JSON parameters.
+	 * @return Compiled JSON parameters mapping.
+	 */
+	@JsonIgnore
+	public synchronized JsonMapping getJsonMapping() {
+		ensureCompiled();
+		return jsonMapping;
+	}
+
 	/**
 	 * Returns the JSON parameters mapping.
 	 * @return JSON parameters mapping.
@@ -84,6 +184,14 @@ public class CloudRequest {
 		return method;
 	}
 
+	/**
+	 * Returns the pagination of the results.
+	 * @return Pagination of the results.
+	 */
+	public Pagination getPagination() {
+		return pagination;
+	}
+
 	/**
 	 * Return the list of all parameters of the request.
 	 * @return List of parameters.
@@ -92,6 +200,16 @@ public class CloudRequest {
 		return params;
 	}
 
+	/**
+	 * Returns the compiled parameters of the request.
+	 * @return Compiled parameters.
+	 */
+	@JsonIgnore
+	public synchronized Map<String, StringTemplate> getParamsTemplate() {
+		ensureCompiled();
+		return paramsTemplate;
+	}
+
 	/**
 	 * Returns the URI of the request.
 	 * @return URI of the request.
@@ -100,6 +218,24 @@ public class CloudRequest {
 		return uri;
 	}
 
+	/**
+	 * Returns the compiled URI of the request.
+	 * @return Compiled URI.
+	 */
+	@JsonIgnore
+	public synchronized StringTemplate getUriTemplate() {
+		ensureCompiled();
+		return uriTemplate;
+	}
+
+	/**
+	 * Determines if the request can carry parts of an upload in parallel and in any order. The upload session must accept them.
+	 * @return If the parts can be sent in parallel.
+	 */
+	public boolean isParallel() {
+		return parallel;
+	}
+
 	/**
 	 * Sets the authorization parameter for accessing protected resources. Null or empty to disable.
 	 * @param authorizationParam Authorization parameter.
@@ -114,6 +250,7 @@ public class CloudRequest {
 	 */
 	public void setBody(String body) {
 		this.body = body;
+		this.compiled = false;
 	}
 
 	/**
@@ -122,6 +259,7 @@ public class CloudRequest {
 	 */
 	public void setHeaders(Map<String, String> headers) {
 		this.headers = headers;
+		this.compiled = false;
 	}
 
 	/**
@@ -130,6 +268,7 @@ public class CloudRequest {
 	 */
 	public void setJsonBody(Map<String, Object> jsonBody) {
 		this.jsonBody = jsonBody;
+		this.compiled = false;
 	}
 
 	/**
@@ -138,6 +277,7 @@ public class CloudRequest {
 	 */
 	public void setMapping(Map<String, String> mapping) {
 		this.mapping = mapping;
+		this.compiled = false;
 	}
 
 	/**
@@ -148,12 +288,29 @@ public class CloudRequest {
 		this.method = method;
 	}
 
+	/**
+	 * Sets the pagination of the results. Null if the results are returned at once.
+	 * @param pagination Pagination of the results.
+	 */
+	public void setPagination(Pagination pagination) {
+		this.pagination = pagination;
+	}
+
+	/**
+	 * Sets if the request can carry parts of an upload in parallel and in any order.
+	 * @param parallel If the parts can be sent in parallel.
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
 	/**
 	 * Sets the list of all parameters of the request.
 	 * @param params List of parameters.
 	 */
 	public void setParams(Map<String, String> params) {
 		this.params = params;
+		this.compiled = false;
 	}
 
 	/**
@@ -162,6 +319,7 @@ public class CloudRequest {
 	 */
 	public void setUri(String uri) {
 		this.uri = uri;
+		this.compiled = false;
 	}
 
 }
@@ -1,6 +1,7 @@
 package cz.zcu.kiv.multicloud.json;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 import cz.zcu.kiv.multicloud.filesystem.FileType;
 import cz.zcu.kiv.multicloud.oauth2.OAuth2Grant;
@@ -57,6 +58,8 @@ public class CloudSettings {
 	/** Default root folder of the storage. */
 	@JsonProperty("root_folder")
 	private FileInfo rootFolder;
+	/** Transfer capabilities of the storage. */
+	private TransferSettings transfer;
 
 	/** Account info request parameters. */
 	@JsonProperty("account_info_request")
@@ -85,6 +88,9 @@ public class CloudSettings {
 	/** File update finishing parameters. */
 	@JsonProperty("update_file_finish_request")
 	private CloudRequest updateFileFinishRequest;
+	/** Upload session status request parameters. */
+	@JsonProperty("upload_status_request")
+	private CloudRequest uploadStatusRequest;
 	/** Folder create request parameters. */
 	@JsonProperty("create_dir_request")
 	private CloudRequest createDirRequest;
@@ -113,6 +119,39 @@ public class CloudSettings {
 	@JsonProperty("metadata_request")
 	private CloudRequest metadataRequest;
 
+	/**
+	 * Compiles all the storage requests into templates, so they are not parsed again for each operation.
+	 * @throws JsonProcessingException If JSON body of some request cannot be serialized.
+	 */
+	public void compileRequests() throws JsonProcessingException {
+		CloudRequest[] requests = {
+				accountInfoRequest,
+				accountQuotaRequest,
+				downloadFileRequest,
+				uploadFileBeginRequest,
+				uploadFileRequest,
+				uploadFileFinishRequest,
+				updateFileBeginRequest,
+				updateFileRequest,
+				updateFileFinishRequest,
+				uploadStatusRequest,
+				createDirRequest,
+				listDirBeginRequest,
+				listDirRequest,
+				renameRequest,
+				copyRequest,
+				moveRequest,
+				deleteRequest,
+				searchRequest,
+				metadataRequest
+		};
+		for (CloudRequest request: requests) {
+			if (request != null) {
+				request.compile();
+			}
+		}
+	}
+
 	/**
 	 * Returns the account information request parameters.
 	 * @return Account information request parameters.
@@ -313,6 +352,14 @@ public class CloudSettings {
 		return tokenRequest;
 	}
 
+	/**
+	 * Returns the transfer capabilities of the storage.
+	 * @return Transfer capabilities.
+	 */
+	public TransferSettings getTransfer() {
+		return transfer;
+	}
+
 	/**
 	 * Returns the request to begin file update.
 	 * @return File update begin request.
@@ -361,6 +408,14 @@ public class CloudSettings {
 		return uploadFileRequest;
 	}
 
+	/**
+	 * Returns the request to query the offset confirmed by an upload session.
+	 * @return Upload session status request.
+	 */
+	public CloudRequest getUploadStatusRequest() {
+		return uploadStatusRequest;
+	}
+
 	/**
 	 * Returns the username used in authorization.
 	 * @return Username.
@@ -567,6 +622,14 @@ public class CloudSettings {
 		this.tokenRequest = tokenRequest;
 	}
 
+	/**
+	 * Sets the transfer capabilities of the storage.
+	 * @param transfer Transfer capabilities.
+	 */
+	public void setTransfer(TransferSettings transfer) {
+		this.transfer = transfer;
+	}
+
 	/**
 	 * Sets the request to begin file update.
 	 * @param updateFileBeginRequest File update begin request.
@@ -615,6 +678,14 @@ public class CloudSettings {
 		this.uploadFileRequest = uploadFileRequest;
 	}
 
+	/**
+	 * Sets the request to query the offset confirmed by an upload session.
+	 * @param uploadStatusRequest Upload session status request.
+	 */
+	public void setUploadStatusRequest(CloudRequest uploadStatusRequest) {
+		this.uploadStatusRequest = uploadStatusRequest;
+	}
+
 	/**
 	 * Sets the username used in authorization.
 	 * @param username Username.
@@ -0,0 +1,105 @@
+package cz.zcu.kiv.multicloud.json;
+
+/**
+ * cz.zcu.kiv.multicloud.json/DownloadJournal.java			<br /><br />
+ *
+ * Bean for holding the state of an interrupted download. Completed parts of the file are stored as a bitmap of units of fixed size.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class DownloadJournal {
+
+	/** Identifier of the source file. */
+	private String id;
+	/** Checksum of the source file. */
+	private String checksum;
+	/** Size of the source file. */
+	private long size;
+	/** Size of one unit of the bitmap. */
+	private long unitSize;
+	/** Bitmap of the completed units. */
+	private byte[] bitmap;
+
+	/**
+	 * Returns the bitmap of the completed units.
+	 * @return Bitmap of the completed units.
+	 */
+	public byte[] getBitmap() {
+		return bitmap;
+	}
+
+	/**
+	 * Returns the checksum of the source file.
+	 * @return Checksum of the file.
+	 */
+	public String getChecksum() {
+		return checksum;
+	}
+
+	/**
+	 * Returns the identifier of the source file.
+	 * @return Identifier of the file.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the size of the source file.
+	 * @return Size of the file.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the size of one unit of the bitmap.
+	 * @return Size of the unit.
+	 */
+	public long getUnitSize() {
+		return unitSize;
+	}
+
+	/**
+	 * Sets the bitmap of the completed units.
+	 * @param bitmap Bitmap of the completed units.
+	 */
+	public void setBitmap(byte[] bitmap) {
+		this.bitmap = bitmap;
+	}
+
+	/**
+	 * Sets the checksum of the source file.
+	 * @param checksum Checksum of the file.
+	 */
+	public void setChecksum(String checksum) {
+		this.checksum = checksum;
+	}
+
+	/**
+	 * Sets the identifier of the source file.
+	 * @param id Identifier of the file.
+	 */
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	/**
+	 * Sets the size of the source file.
+	 * @param size Size of the file.
+	 */
+	public void setSize(long size) {
+		this.size = size;
+	}
+
+	/**
+	 * Sets the size of one unit of the bitmap.
+	 * @param unitSize Size of the unit.
+	 */
+	public void setUnitSize(long unitSize) {
+		this.unitSize = unitSize;
+	}
+
+}
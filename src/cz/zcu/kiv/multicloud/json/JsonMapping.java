@@ -0,0 +1,419 @@
+package cz.zcu.kiv.multicloud.json;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * cz.zcu.kiv.multicloud.json/JsonMapping.java			<br /><br />
+ *
+ * Compiled mapping of the values in the JSON response of a cloud storage service.
+ * The mapping is applied to every object in the response while it is being read by a streaming parser.
+ * Mapped values are written to a token buffer, which can be bound directly to the target type without building any tree.
+ * If more values are mapped to one field, strings are concatenated and numbers are summed.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class JsonMapping {
+
+	/** Separator for multiple JSON value mapped into one. */
+	public static final String MAPPING_SEPARATOR = ";";
+	/** Separator for selecting path in the JSON response. */
+	public static final String PATH_SEPARATOR = "/";
+	/** Name of the field holding the response, if the root of the response is not an object. */
+	public static final String CONTENT_FIELD = "content";
+
+	/** Placeholder for the null value. */
+	private static final Object NULL_VALUE = new Object();
+
+	/**
+	 * Path to the value in the response, that is mapped to a field.
+	 */
+	private static class Source {
+
+		/** Path to the value. */
+		private final String[] path;
+		/** Index of the slot for the value. */
+		private final int slot;
+
+		/**
+		 * Ctor with path and slot supplied.
+		 * @param path Path to the value.
+		 * @param slot Index of the slot for the value.
+		 */
+		public Source(String[] path, int slot) {
+			this.path = path;
+			this.slot = slot;
+		}
+
+	}
+
+	/**
+	 * Source of a value, that is partially matched by the fields read so far.
+	 */
+	private static class Pending {
+
+		/** Source of the value. */
+		private final Source source;
+		/** Index of the next path segment to be matched. */
+		private final int depth;
+		/** Slots of the object the value is mapped in. */
+		private final Object[] values;
+
+		/**
+		 * Ctor with necessary parameters.
+		 * @param source Source of the value.
+		 * @param depth Index of the next path segment to be matched.
+		 * @param values Slots of the object the value is mapped in.
+		 */
+		public Pending(Source source, int depth, Object[] values) {
+			this.source = source;
+			this.depth = depth;
+			this.values = values;
+		}
+
+	}
+
+	/**
+	 * Compiles the mapping of the values. Each key of the map is the name of the resulting field and the value contains paths to the original values.
+	 * @param mapping Mapping to be compiled.
+	 * @return Compiled mapping.
+	 */
+	public static JsonMapping compile(Map<String, String> mapping) {
+		if (mapping == null || mapping.isEmpty()) {
+			return new JsonMapping(new String[0], new int[] { 0 }, Collections.<String, List<Source>>emptyMap());
+		}
+		String[] targets = new String[mapping.size()];
+		int[] offsets = new int[mapping.size() + 1];
+		List<String[]> paths = new ArrayList<>();
+		int t = 0;
+		for (Entry<String, String> entry: mapping.entrySet()) {
+			targets[t] = entry.getKey();
+			/* the original value of the resulting field comes first */
+			paths.add(new String[] { entry.getKey() });
+			for (String submapping: entry.getValue().split(MAPPING_SEPARATOR)) {
+				paths.add(submapping.split(PATH_SEPARATOR));
+			}
+			offsets[++t] = paths.size();
+		}
+		Map<String, List<Source>> sources = new HashMap<>();
+		for (int slot = 0; slot < paths.size(); slot++) {
+			String[] path = paths.get(slot);
+			List<Source> list = sources.get(path[0]);
+			if (list == null) {
+				list = new ArrayList<>();
+				sources.put(path[0], list);
+			}
+			list.add(new Source(path, slot));
+		}
+		return new JsonMapping(targets, offsets, sources);
+	}
+
+	/**
+	 * Combines the value already mapped to a field with another value.
+	 * @param existing Value already mapped.
+	 * @param value Value to be added.
+	 * @return Combined value.
+	 */
+	private static Object combine(Object existing, Object value) {
+		if (value instanceof String) {
+			if (existing instanceof String) {
+				return (String) existing + value;
+			}
+		} else if (value instanceof Long) {
+			if (existing instanceof Long) {
+				return (Long) existing + (Long) value;
+			} else if (existing instanceof Double) {
+				return (Double) existing + (Long) value;
+			}
+		} else if (value instanceof Double) {
+			if (existing instanceof Number) {
+				return ((Number) existing).doubleValue() + (Double) value;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Writes the captured value to the generator.
+	 * @param out Generator to write to.
+	 * @param value Value to be written.
+	 * @throws IOException If writing failed.
+	 */
+	private static void writeValue(JsonGenerator out, Object value) throws IOException {
+		if (value instanceof String) {
+			out.writeString((String) value);
+		} else if (value instanceof Long) {
+			out.writeNumber((Long) value);
+		} else if (value instanceof Double) {
+			out.writeNumber((Double) value);
+		} else if (value instanceof Boolean) {
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof TokenBuffer) {
+			((TokenBuffer) value).serialize(out);
+		} else {
+			out.writeNull();
+		}
+	}
+
+	/** Names of the resulting fields. */
+	private final String[] targets;
+	/** Index of the first slot of each resulting field. */
+	private final int[] offsets;
+	/** Sources of the values indexed by the first segment of their path. */
+	private final Map<String, List<Source>> sources;
+
+	/**
+	 * Ctor with compiled mapping supplied.
+	 * @param targets Names of the resulting fields.
+	 * @param offsets Index of the first slot of each resulting field.
+	 * @param sources Sources of the values indexed by the first segment of their path.
+	 */
+	private JsonMapping(String[] targets, int[] offsets, Map<String, List<Source>> sources) {
+		this.targets = targets;
+		this.offsets = offsets;
+		this.sources = sources;
+	}
+
+	/**
+	 * Reads the current value from the parser and keeps it for later use.
+	 * @param parser Parser positioned at the value.
+	 * @param nested Sources of the values inside the value.
+	 * @return Captured value.
+	 * @throws IOException If reading failed.
+	 */
+	private Object capture(JsonParser parser, List<Pending> nested) throws IOException {
+		switch (parser.getCurrentToken()) {
+		case VALUE_STRING:
+			return parser.getText();
+		case VALUE_NUMBER_INT:
+			if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+				return parser.getBigIntegerValue().longValue();
+			}
+			return parser.getLongValue();
+		case VALUE_NUMBER_FLOAT:
+			return parser.getDoubleValue();
+		case VALUE_TRUE:
+			return Boolean.TRUE;
+		case VALUE_FALSE:
+			return Boolean.FALSE;
+		case START_OBJECT:
+		case START_ARRAY:
+			TokenBuffer buffer = new TokenBuffer(parser.getCodec());
+			transform(parser, buffer, nested);
+			return buffer;
+		default:
+			return NULL_VALUE;
+		}
+	}
+
+	/**
+	 * Returns if the mapping contains no values to be mapped.
+	 * @return If the mapping is empty.
+	 */
+	public boolean isEmpty() {
+		return (targets.length == 0);
+	}
+
+	/**
+	 * Reads the whole response from the parser and applies the mapping. If the root of the response is not an object, it is wrapped in an object as the "content" field.
+	 * @param parser Parser of the response.
+	 * @return Buffer with the mapped response. Null if the response is empty.
+	 * @throws IOException If reading of the response failed.
+	 */
+	public TokenBuffer map(JsonParser parser) throws IOException {
+		return map(parser, null);
+	}
+
+	/**
+	 * Reads the whole response from the parser and applies the mapping. If the root of the response is not an object, it is wrapped in an object as the "content" field.
+	 * Also extracts the values at the supplied paths from the root object of the response. The values are left in the response unchanged.
+	 * @param parser Parser of the response.
+	 * @param extracted Map with the paths of the values to be extracted as keys. The text of the values found is put in the map. Might be null.
+	 * @return Buffer with the mapped response. Null if the response is empty.
+	 * @throws IOException If reading of the response failed.
+	 */
+	public TokenBuffer map(JsonParser parser, Map<String, String> extracted) throws IOException {
+		JsonToken token = parser.nextToken();
+		if (token == null) {
+			return null;
+		}
+		TokenBuffer out = new TokenBuffer(parser.getCodec());
+		if (token == JsonToken.START_OBJECT) {
+			List<Pending> pending = null;
+			String[] paths = null;
+			Object[] values = null;
+			if (extracted != null && !extracted.isEmpty()) {
+				pending = new ArrayList<>();
+				paths = extracted.keySet().toArray(new String[extracted.size()]);
+				values = new Object[paths.length];
+				for (int i = 0; i < paths.length; i++) {
+					pending.add(new Pending(new Source(paths[i].split(PATH_SEPARATOR), i), 0, values));
+				}
+			}
+			transformObject(parser, out, pending);
+			for (int i = 0; paths != null && i < paths.length; i++) {
+				if (values[i] == null || values[i] == NULL_VALUE || values[i] instanceof TokenBuffer) {
+					extracted.put(paths[i], null);
+				} else {
+					extracted.put(paths[i], values[i].toString());
+				}
+			}
+		} else {
+			out.writeStartObject();
+			Object[] values = transformField(CONTENT_FIELD, parser, out, null, null);
+			writeMapped(out, values);
+			out.writeEndObject();
+		}
+		return out;
+	}
+
+	/**
+	 * Copies the current value from the parser to the generator and applies the mapping to all the objects inside.
+	 * @param parser Parser positioned at the value.
+	 * @param out Generator to write to.
+	 * @param pending Sources of the values inside the value.
+	 * @throws IOException If reading or writing failed.
+	 */
+	private void transform(JsonParser parser, JsonGenerator out, List<Pending> pending) throws IOException {
+		switch (parser.getCurrentToken()) {
+		case START_OBJECT:
+			transformObject(parser, out, pending);
+			break;
+		case START_ARRAY:
+			out.writeStartArray();
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				transform(parser, out, null);
+			}
+			out.writeEndArray();
+			break;
+		default:
+			out.copyCurrentEvent(parser);
+			break;
+		}
+	}
+
+	/**
+	 * Copies the current field from the parser to the generator, or captures its value, if it is mapped.
+	 * @param name Name of the field.
+	 * @param parser Parser positioned at the value of the field.
+	 * @param out Generator to write to.
+	 * @param pending Sources of the values inside the enclosing object.
+	 * @param values Slots of the enclosing object. Might be null if not yet created.
+	 * @return Slots of the enclosing object.
+	 * @throws IOException If reading or writing failed.
+	 */
+	private Object[] transformField(String name, JsonParser parser, JsonGenerator out, List<Pending> pending, Object[] values) throws IOException {
+		List<Source> matched = sources.get(name);
+		if (matched == null && pending == null) {
+			out.writeFieldName(name);
+			transform(parser, out, null);
+			return values;
+		}
+		List<Pending> captures = null;
+		List<Pending> nested = null;
+		boolean renamed = false;
+		List<Pending> candidates = new ArrayList<>();
+		if (matched != null) {
+			if (values == null) {
+				values = new Object[offsets[targets.length]];
+			}
+			for (Source source: matched) {
+				candidates.add(new Pending(source, 0, values));
+				if (source.path.length == 1) {
+					renamed = true;
+				}
+			}
+		}
+		if (pending != null) {
+			for (Pending p: pending) {
+				if (p.source.path[p.depth].equals(name)) {
+					candidates.add(p);
+				}
+			}
+		}
+		for (Pending p: candidates) {
+			if (p.depth == p.source.path.length - 1) {
+				if (captures == null) {
+					captures = new ArrayList<>();
+				}
+				captures.add(p);
+			} else {
+				if (nested == null) {
+					nested = new ArrayList<>();
+				}
+				nested.add(new Pending(p.source, p.depth + 1, p.values));
+			}
+		}
+		if (captures == null) {
+			out.writeFieldName(name);
+			transform(parser, out, nested);
+		} else {
+			Object value = capture(parser, nested);
+			for (Pending p: captures) {
+				p.values[p.source.slot] = value;
+			}
+			/* fields mapped in this object are written at its end, values taken by the enclosing object stay in place */
+			if (!renamed) {
+				out.writeFieldName(name);
+				writeValue(out, value);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Copies the current object from the parser to the generator and applies the mapping to it.
+	 * @param parser Parser positioned at the start of the object.
+	 * @param out Generator to write to.
+	 * @param pending Sources of the values inside the object.
+	 * @throws IOException If reading or writing failed.
+	 */
+	private void transformObject(JsonParser parser, JsonGenerator out, List<Pending> pending) throws IOException {
+		Object[] values = null;
+		out.writeStartObject();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			parser.nextToken();
+			values = transformField(name, parser, out, pending, values);
+		}
+		writeMapped(out, values);
+		out.writeEndObject();
+	}
+
+	/**
+	 * Writes all the mapped fields of an object.
+	 * @param out Generator to write to.
+	 * @param values Slots of the object.
+	 * @throws IOException If writing failed.
+	 */
+	private void writeMapped(JsonGenerator out, Object[] values) throws IOException {
+		if (values == null) {
+			return;
+		}
+		for (int t = 0; t < targets.length; t++) {
+			Object result = values[offsets[t]];
+			for (int slot = offsets[t] + 1; slot < offsets[t + 1]; slot++) {
+				if (values[slot] != null && values[slot] != NULL_VALUE) {
+					result = combine(result, values[slot]);
+				}
+			}
+			if (result != null) {
+				out.writeFieldName(targets[t]);
+				writeValue(out, result);
+			}
+		}
+	}
+
+}
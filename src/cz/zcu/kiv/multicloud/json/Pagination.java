@@ -0,0 +1,64 @@
+package cz.zcu.kiv.multicloud.json;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * cz.zcu.kiv.multicloud.json/Pagination.java			<br /><br />
+ *
+ * Bean for holding information about the pagination of the results returned by the cloud storage.
+ * The response contains either a continuation token, which is sent back in a parameter of the next request, or a link to the next page.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class Pagination {
+
+	/** Path to the continuation token or the link to the next page in the response. */
+	@JsonProperty("next")
+	private String next;
+	/** Name of the request parameter holding the continuation token. Null if the response contains a link to the next page. */
+	@JsonProperty("param")
+	private String param;
+
+	/**
+	 * Returns the path to the continuation token or the link to the next page in the response.
+	 * @return Path to the next page.
+	 */
+	public String getNext() {
+		return next;
+	}
+
+	/**
+	 * Returns the name of the request parameter holding the continuation token.
+	 * @return Name of the parameter.
+	 */
+	public String getParam() {
+		return param;
+	}
+
+	/**
+	 * Determines if the response contains a link to the next page instead of a continuation token.
+	 * @return If the next page is requested using a link.
+	 */
+	public boolean isLink() {
+		return (param == null || param.isEmpty());
+	}
+
+	/**
+	 * Sets the path to the continuation token or the link to the next page in the response.
+	 * @param next Path to the next page.
+	 */
+	public void setNext(String next) {
+		this.next = next;
+	}
+
+	/**
+	 * Sets the name of the request parameter holding the continuation token. Null or empty if the response contains a link to the next page.
+	 * @param param Name of the parameter.
+	 */
+	public void setParam(String param) {
+		this.param = param;
+	}
+
+}
@@ -0,0 +1,196 @@
+package cz.zcu.kiv.multicloud.json;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * cz.zcu.kiv.multicloud.json/TransferSettings.java			<br /><br />
+ *
+ * Bean for holding the transfer capabilities of a cloud storage service provider. Sizes are in bytes, zero value means that the provider does not restrict it.
+ * Chunks of both uploads and downloads are sized within the limits of the provider and as multiples of the alignment, if the provider requires it.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class TransferSettings {
+
+	/** Minimum size of a chunk. */
+	@JsonProperty("min_chunk_size")
+	private long minChunkSize;
+	/** Maximum size of a chunk accepted in a single request. */
+	@JsonProperty("max_chunk_size")
+	private long maxChunkSize;
+	/** Preferred size of a chunk. */
+	@JsonProperty("chunk_size")
+	private long chunkSize;
+	/** Size the chunks must be multiples of. */
+	@JsonProperty("chunk_alignment")
+	private long chunkAlignment;
+	/** Maximum number of parts transferred in parallel. */
+	@JsonProperty("max_parallel_parts")
+	private int maxParallelParts;
+	/** If the provider supports range requests for downloads. */
+	@JsonProperty("ranges")
+	private boolean ranges;
+	/** Value sent as the size of an upload of unknown length, until its end is reached. Null if the provider needs the size in advance. */
+	@JsonProperty("unknown_size")
+	private String unknownSize;
+
+	/**
+	 * Empty ctor.
+	 */
+	public TransferSettings() {
+		minChunkSize = 0;
+		maxChunkSize = 0;
+		chunkSize = 0;
+		chunkAlignment = 0;
+		maxParallelParts = 0;
+		ranges = true;
+		unknownSize = null;
+	}
+
+	/**
+	 * Fits the size of a chunk into the limits of the provider. The size is rounded down to a multiple of the alignment, unless it would drop below the minimum.
+	 * @param size Desired size of the chunk.
+	 * @return Size of the chunk accepted by the provider.
+	 */
+	public long alignChunkSize(long size) {
+		long aligned = size;
+		if (maxChunkSize > 0) {
+			aligned = Math.min(aligned, maxChunkSize);
+		}
+		aligned = Math.max(aligned, minChunkSize);
+		if (chunkAlignment > 1) {
+			aligned -= aligned % chunkAlignment;
+			if (aligned < Math.max(minChunkSize, 1)) {
+				aligned += chunkAlignment;
+			}
+		}
+		return aligned;
+	}
+
+	/**
+	 * Returns the size the chunks must be multiples of.
+	 * @return Alignment of the chunks.
+	 */
+	public long getChunkAlignment() {
+		return chunkAlignment;
+	}
+
+	/**
+	 * Returns the preferred size of a chunk.
+	 * @return Preferred size of a chunk.
+	 */
+	public long getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Returns the maximum size of a chunk accepted in a single request.
+	 * @return Maximum size of a chunk.
+	 */
+	public long getMaxChunkSize() {
+		return maxChunkSize;
+	}
+
+	/**
+	 * Returns the maximum number of parts transferred in parallel.
+	 * @return Maximum number of parallel parts.
+	 */
+	public int getMaxParallelParts() {
+		return maxParallelParts;
+	}
+
+	/**
+	 * Returns the minimum size of a chunk.
+	 * @return Minimum size of a chunk.
+	 */
+	public long getMinChunkSize() {
+		return minChunkSize;
+	}
+
+	/**
+	 * Returns the value sent as the size of an upload of unknown length.
+	 * @return Value for unknown size.
+	 */
+	public String getUnknownSize() {
+		return unknownSize;
+	}
+
+	/**
+	 * Determines if the provider supports range requests for downloads.
+	 * @return If ranges are supported.
+	 */
+	public boolean isRanges() {
+		return ranges;
+	}
+
+	/**
+	 * Limits the number of parts transferred in parallel to the maximum of the provider.
+	 * @param parts Desired number of parts.
+	 * @return Number of parts allowed by the provider.
+	 */
+	public int limitParallelParts(int parts) {
+		if (maxParallelParts > 0) {
+			return Math.min(parts, maxParallelParts);
+		}
+		return parts;
+	}
+
+	/**
+	 * Sets the size the chunks must be multiples of.
+	 * @param chunkAlignment Alignment of the chunks.
+	 */
+	public void setChunkAlignment(long chunkAlignment) {
+		this.chunkAlignment = chunkAlignment;
+	}
+
+	/**
+	 * Sets the preferred size of a chunk.
+	 * @param chunkSize Preferred size of a chunk.
+	 */
+	public void setChunkSize(long chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Sets the maximum size of a chunk accepted in a single request.
+	 * @param maxChunkSize Maximum size of a chunk.
+	 */
+	public void setMaxChunkSize(long maxChunkSize) {
+		this.maxChunkSize = maxChunkSize;
+	}
+
+	/**
+	 * Sets the maximum number of parts transferred in parallel.
+	 * @param maxParallelParts Maximum number of parallel parts.
+	 */
+	public void setMaxParallelParts(int maxParallelParts) {
+		this.maxParallelParts = maxParallelParts;
+	}
+
+	/**
+	 * Sets the minimum size of a chunk.
+	 * @param minChunkSize Minimum size of a chunk.
+	 */
+	public void setMinChunkSize(long minChunkSize) {
+		this.minChunkSize = minChunkSize;
+	}
+
+	/**
+	 * Sets if the provider supports range requests for downloads.
+	 * @param ranges If ranges are supported.
+	 */
+	public void setRanges(boolean ranges) {
+		this.ranges = ranges;
+	}
+
+	/**
+	 * Sets the value sent as the size of an upload of unknown length.
+	 * @param unknownSize Value for unknown size.
+	 */
+	public void setUnknownSize(String unknownSize) {
+		this.unknownSize = unknownSize;
+	}
+
+}
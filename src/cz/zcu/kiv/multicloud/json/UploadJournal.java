@@ -0,0 +1,71 @@
+package cz.zcu.kiv.multicloud.json;
+
+import java.util.Map;
+
+/**
+ * cz.zcu.kiv.multicloud.json/UploadJournal.java			<br /><br />
+ *
+ * Bean for holding the upload sessions of an interrupted upload of a local file. The sessions are stored by their destination, the file is identified by its size and time of last modification.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class UploadJournal {
+
+	/** Size of the uploaded file. */
+	private long size;
+	/** Time of last modification of the uploaded file. */
+	private long modified;
+	/** Upload sessions by their destination. */
+	private Map<String, UploadSession> sessions;
+
+	/**
+	 * Returns the time of last modification of the uploaded file.
+	 * @return Time of last modification.
+	 */
+	public long getModified() {
+		return modified;
+	}
+
+	/**
+	 * Returns the upload sessions by their destination.
+	 * @return Upload sessions.
+	 */
+	public Map<String, UploadSession> getSessions() {
+		return sessions;
+	}
+
+	/**
+	 * Returns the size of the uploaded file.
+	 * @return Size of the file.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Sets the time of last modification of the uploaded file.
+	 * @param modified Time of last modification.
+	 */
+	public void setModified(long modified) {
+		this.modified = modified;
+	}
+
+	/**
+	 * Sets the upload sessions by their destination.
+	 * @param sessions Upload sessions.
+	 */
+	public void setSessions(Map<String, UploadSession> sessions) {
+		this.sessions = sessions;
+	}
+
+	/**
+	 * Sets the size of the uploaded file.
+	 * @param size Size of the file.
+	 */
+	public void setSize(long size) {
+		this.size = size;
+	}
+
+}
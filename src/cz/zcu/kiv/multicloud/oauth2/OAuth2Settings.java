@@ -3,6 +3,8 @@ package cz.zcu.kiv.multicloud.oauth2;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.http.impl.client.CloseableHttpClient;
+
 /**
  * cz.zcu.kiv.multicloud.oauth2/OAuth2Settings.java			<br /><br />
  *
@@ -41,6 +43,8 @@ public class OAuth2Settings {
 	private final Map<String, String> extraAuthorizeParams;
 	/** Additional parameters passed to the token server. */
 	private final Map<String, String> extraTokenParams;
+	/** Shared HTTP client for communication with the authorization server. */
+	private CloseableHttpClient client;
 
 	/**
 	 * Ctor.
@@ -76,6 +80,14 @@ public class OAuth2Settings {
 		return authorizeUri;
 	}
 
+	/**
+	 * Returns the shared HTTP client for communication with the authorization server.
+	 * @return Shared HTTP client.
+	 */
+	public CloseableHttpClient getClient() {
+		return client;
+	}
+
 	/**
 	 * Returns the client identifier.
 	 * @return Client identifier.
@@ -180,6 +192,14 @@ public class OAuth2Settings {
 		this.authorizeUri = authorizeUri;
 	}
 
+	/**
+	 * Sets the shared HTTP client for communication with the authorization server. The client is not closed by the grants.
+	 * @param client Shared HTTP client.
+	 */
+	public void setClient(CloseableHttpClient client) {
+		this.client = client;
+	}
+
 	/**
 	 * Sets the client identifier.
 	 * @param clientId Client identifier.
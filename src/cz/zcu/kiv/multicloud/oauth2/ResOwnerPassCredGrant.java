@@ -51,6 +51,8 @@ public class ResOwnerPassCredGrant implements OAuth2Grant {
 	protected String tokenServer;
 	/** Parameters passed to the authorization server. */
 	protected Map<String, String> tokenParams;
+	/** Shared HTTP client. If null, a new client is created for the request. */
+	protected CloseableHttpClient sharedClient;
 
 	/**
 	 * Ctor.
@@ -158,17 +160,23 @@ public class ResOwnerPassCredGrant implements OAuth2Grant {
 	 * Sends a POST request to obtain an access token.
 	 */
 	private void obtainAccessToken() {
+		CloseableHttpClient client = null;
+		CloseableHttpResponse response = null;
+		JsonParser jp = null;
 		try {
 			token = new OAuth2Token();
 			error = new OAuth2Error();
 			/* build the request and send it to the token server */
-			CloseableHttpClient client = HttpClients.createDefault();
+			client = sharedClient;
+			if (client == null) {
+				client = HttpClients.createDefault();
+			}
 			HttpPost request = new HttpPost(tokenServer);
 			request.setEntity(new UrlEncodedFormEntity(Utils.mapToList(tokenParams)));
-			CloseableHttpResponse response = client.execute(request);
+			response = client.execute(request);
 			HttpEntity entity = response.getEntity();
 			/* get the response and parse it */
-			JsonParser jp = json.getFactory().createParser(entity.getContent());
+			jp = json.getFactory().createParser(entity.getContent());
 			while (jp.nextToken() != null) {
 				JsonToken jsonToken = jp.getCurrentToken();
 				switch (jsonToken) {
@@ -202,12 +210,32 @@ public class ResOwnerPassCredGrant implements OAuth2Grant {
 					break;
 				}
 			}
-			jp.close();
-			response.close();
-			client.close();
-		} catch (IOException e) {
+		} catch (IOException | IllegalArgumentException e) {
 			error.setType(OAuth2ErrorType.SERVER_ERROR);
 			error.setDescription("Failed to obtain access token from the server.");
+		} finally {
+			/* the connection returns to the pool even if the response could not be parsed */
+			if (jp != null) {
+				try {
+					jp.close();
+				} catch (IOException e) {
+					/* ignore closing exception */
+				}
+			}
+			if (response != null) {
+				try {
+					response.close();
+				} catch (IOException e) {
+					/* ignore closing exception */
+				}
+			}
+			if (sharedClient == null && client != null) {
+				try {
+					client.close();
+				} catch (IOException e) {
+					/* ignore closing exception */
+				}
+			}
 		}
 		/* notify all waiting objects */
 		synchronized (waitObject) {
@@ -225,6 +253,7 @@ public class ResOwnerPassCredGrant implements OAuth2Grant {
 		if (settings == null) {
 			throw new OAuth2SettingsException("Missing settings.");
 		}
+		sharedClient = settings.getClient();
 		if (Utils.isNullOrEmpty(settings.getTokenUri())) {
 			throw new OAuth2SettingsException("Token server URI missing.");
 		} else {
@@ -3,8 +3,10 @@ package cz.zcu.kiv.multicloud.utils;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -18,6 +20,7 @@ import cz.zcu.kiv.multicloud.json.Json;
  * cz.zcu.kiv.multicloud.utils/FileAccountManager.java			<br /><br />
  *
  * Class for managing user accounts for different cloud storage services. It uses files as a storage medium.
+ * Access to the accounts is synchronized and the collections returned are snapshots, safe to iterate while the accounts change.
  *
  * @author Jaromír Staněk
  * @version 1.0
@@ -35,7 +38,7 @@ public class FileAccountManager implements AccountManager {
 	 * Get an already existing instance.
 	 * @return Instance of this class.
 	 */
-	public static FileAccountManager getInstance() {
+	public static synchronized FileAccountManager getInstance() {
 		if (instance == null) {
 			instance = new FileAccountManager();
 		}
@@ -63,7 +66,7 @@ public class FileAccountManager implements AccountManager {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void addAccountSettings(AccountSettings settings) {
+	public synchronized void addAccountSettings(AccountSettings settings) {
 		if (Utils.isNullOrEmpty(settings.getAccountId())) {
 			return;
 		}
@@ -74,7 +77,7 @@ public class FileAccountManager implements AccountManager {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public AccountSettings getAccountSettings(String accountId) {
+	public synchronized AccountSettings getAccountSettings(String accountId) {
 		return accounts.get(accountId);
 	}
 
@@ -82,16 +85,16 @@ public class FileAccountManager implements AccountManager {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Collection<AccountSettings> getAllAccountSettings() {
-		return accounts.values();
+	public synchronized Collection<AccountSettings> getAllAccountSettings() {
+		return new ArrayList<>(accounts.values());
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Set<String> getIdentifiers() {
-		return accounts.keySet();
+	public synchronized Set<String> getIdentifiers() {
+		return new HashSet<>(accounts.keySet());
 	}
 
 	/**
@@ -106,7 +109,7 @@ public class FileAccountManager implements AccountManager {
 	 * Loads {@link cz.zcu.kiv.multicloud.json.AccountSettings} from the default file.
 	 * @throws IOException If the file cannot be loaded.
 	 */
-	public void loadAccountSettings() throws IOException {
+	public synchronized void loadAccountSettings() throws IOException {
 		if (settingsFile != null) {
 			loadAccountSettings(settingsFile);
 		} else {
@@ -119,7 +122,7 @@ public class FileAccountManager implements AccountManager {
 	 * @param file Account settings file.
 	 * @throws IOException If the file cannot be loaded.
 	 */
-	public void loadAccountSettings(File file) throws IOException {
+	public synchronized void loadAccountSettings(File file) throws IOException {
 		if (file.exists() && !file.isFile()) {
 			throw new FileNotFoundException("Destination is not a file.");
 		} else {
@@ -134,7 +137,7 @@ public class FileAccountManager implements AccountManager {
 	 * @param file Path to user account settings file.
 	 * @throws IOException If the file cannot be loaded.
 	 */
-	public void loadAccountSettings(String file) throws IOException {
+	public synchronized void loadAccountSettings(String file) throws IOException {
 		loadAccountSettings(new File(file));
 	}
 
@@ -142,7 +145,7 @@ public class FileAccountManager implements AccountManager {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void removeAccountSettings(String accountId) {
+	public synchronized void removeAccountSettings(String accountId) {
 		accounts.remove(accountId);
 	}
 
@@ -150,7 +153,7 @@ public class FileAccountManager implements AccountManager {
 	 * Saves {@link cz.zcu.kiv.multicloud.json.AccountSettings} to the default file.
 	 */
 	@Override
-	public void saveAccountSettings() {
+	public synchronized void saveAccountSettings() {
 		try {
 			if (settingsFile != null) {
 				saveAccountSettings(settingsFile);
@@ -167,7 +170,7 @@ public class FileAccountManager implements AccountManager {
 	 * @param file User account settings file.
 	 * @throws IOException If the file cannot be saved.
 	 */
-	public void saveAccountSettings(File file) throws IOException {
+	public synchronized void saveAccountSettings(File file) throws IOException {
 		settingsFile = file;
 		ObjectMapper om = json.getMapper();
 		om.writerWithDefaultPrettyPrinter().writeValue(file, accounts);
@@ -178,7 +181,7 @@ public class FileAccountManager implements AccountManager {
 	 * @param file Path to user account settings file.
 	 * @throws IOException If the file cannot be saved.
 	 */
-	public void saveAccountSettings(String file) throws IOException {
+	public synchronized void saveAccountSettings(String file) throws IOException {
 		saveAccountSettings(new File(file));
 	}
 
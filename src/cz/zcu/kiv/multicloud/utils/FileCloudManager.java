@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -21,6 +22,7 @@ import cz.zcu.kiv.multicloud.json.Json;
  * cz.zcu.kiv.multicloud.utils/FileCloudManager.java			<br /><br />
  *
  * Class for managing settings for different cloud storage service providers.
+ * Access to the loaded settings is synchronized, so the settings can be looked up while other operations are running.
  *
  * @author Jaromír Staněk
  * @version 1.0
@@ -40,7 +42,7 @@ public class FileCloudManager implements CloudManager {
 	 * Get an already existing instance.
 	 * @return Instance of this class.
 	 */
-	public static FileCloudManager getInstance() {
+	public static synchronized FileCloudManager getInstance() {
 		if (instance == null) {
 			instance = new FileCloudManager();
 		}
@@ -64,15 +66,15 @@ public class FileCloudManager implements CloudManager {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Collection<CloudSettings> getAllCloudSettings() {
-		return settings.values();
+	public synchronized Collection<CloudSettings> getAllCloudSettings() {
+		return new ArrayList<>(settings.values());
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public CloudSettings getCloudSettings(String cloudName) {
+	public synchronized CloudSettings getCloudSettings(String cloudName) {
 		return settings.get(cloudName);
 	}
 
@@ -80,15 +82,15 @@ public class FileCloudManager implements CloudManager {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Set<String> getIdentifiers() {
-		return settings.keySet();
+	public synchronized Set<String> getIdentifiers() {
+		return new HashSet<>(settings.keySet());
 	}
 
 	/**
 	 * Load {@link cz.zcu.kiv.multicloud.json.CloudSettings} from default location.
 	 * @throws IOException If the location doesn't exist or some files are unreadable.
 	 */
-	public void loadCloudSettings() throws IOException {
+	public synchronized void loadCloudSettings() throws IOException {
 		loadCloudSettings(new File(DEFAULT_FOLDER));
 	}
 
@@ -98,7 +100,7 @@ public class FileCloudManager implements CloudManager {
 	 * @param path Path to be loaded.
 	 * @throws IOException If the location doesn't exist or some files are unreadable.
 	 */
-	public void loadCloudSettings(File path) throws IOException {
+	public synchronized void loadCloudSettings(File path) throws IOException {
 		if (path.isDirectory()) {
 			loadFolder(path);
 		} else if (path.isFile()) {
@@ -112,7 +114,7 @@ public class FileCloudManager implements CloudManager {
 	 * @param path Path to be loaded.
 	 * @throws IOException If the location doesn't exist or some files are unreadable.
 	 */
-	public void loadCloudSettings(String path) throws IOException {
+	public synchronized void loadCloudSettings(String path) throws IOException {
 		loadCloudSettings(new File(path));
 	}
 
@@ -128,6 +130,7 @@ public class FileCloudManager implements CloudManager {
 		if (Utils.isNullOrEmpty(cs.getSettingsId())) {
 			throw new JsonMappingException("File must contain \"name\" property.");
 		}
+		cs.compileRequests();
 		if (!settings.containsKey(cs.getSettingsId())) {
 			settings.put(cs.getSettingsId(), cs);
 		}
@@ -6,8 +6,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
@@ -23,6 +25,7 @@ import cz.zcu.kiv.multicloud.oauth2.OAuth2Token;
  * cz.zcu.kiv.multicloud.utils/FileCredentialStore.java			<br /><br />
  *
  * Implementation of the {@link cz.zcu.kiv.multicloud.utils.CredentialStore} using simple {java.io.File} as a base for storing the tokens.
+ * All methods are synchronized and collections returned are copies, so the store can be shared by concurrent operations.
  *
  * @author Jaromír Staněk
  * @version 1.0
@@ -97,7 +100,7 @@ public class FileCredentialStore implements CredentialStore {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void deleteCredential(String identifier) {
+	public synchronized void deleteCredential(String identifier) {
 		tokens.remove(identifier);
 		save();
 	}
@@ -137,8 +140,8 @@ public class FileCredentialStore implements CredentialStore {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Set<String> getIdentifiers() {
-		return tokens.keySet();
+	public synchronized Set<String> getIdentifiers() {
+		return new HashSet<>(tokens.keySet());
 	}
 
 	/**
@@ -161,8 +164,8 @@ public class FileCredentialStore implements CredentialStore {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Collection<OAuth2Token> getTokens() {
-		return tokens.values();
+	public synchronized Collection<OAuth2Token> getTokens() {
+		return new ArrayList<>(tokens.values());
 	}
 
 	/**
@@ -207,15 +210,15 @@ public class FileCredentialStore implements CredentialStore {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Set<Entry<String, OAuth2Token>> retrieveAllCredentials() {
-		return tokens.entrySet();
+	public synchronized Set<Entry<String, OAuth2Token>> retrieveAllCredentials() {
+		return new HashMap<>(tokens).entrySet();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public OAuth2Token retrieveCredential(String identifier) {
+	public synchronized OAuth2Token retrieveCredential(String identifier) {
 		return tokens.get(identifier);
 	}
 
@@ -257,7 +260,7 @@ public class FileCredentialStore implements CredentialStore {
 	 * Sets the file to use as a credential store.
 	 * @param credentialFile File to use.
 	 */
-	public void setCredentialFile(File credentialFile) {
+	public synchronized void setCredentialFile(File credentialFile) {
 		this.credentialFile = credentialFile;
 		load();
 	}
@@ -284,7 +287,7 @@ public class FileCredentialStore implements CredentialStore {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public String storeCredential(OAuth2Token token) {
+	public synchronized String storeCredential(OAuth2Token token) {
 		String identifier = generateRandomId();
 		tokens.put(identifier, token);
 		save();
@@ -295,7 +298,7 @@ public class FileCredentialStore implements CredentialStore {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public String storeCredential(String identifier, OAuth2Token token) {
+	public synchronized String storeCredential(String identifier, OAuth2Token token) {
 		String valid = identifier;
 		if (identifier == null || identifier.length() < MIN_ID_LENGTH) {
 			valid = generateRandomId();
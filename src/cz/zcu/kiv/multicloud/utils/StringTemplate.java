@@ -0,0 +1,257 @@
+package cz.zcu.kiv.multicloud.utils;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import cz.zcu.kiv.multicloud.MultiCloudException;
+
+/**
+ * cz.zcu.kiv.multicloud.utils/StringTemplate.java			<br /><br />
+ *
+ * Tokenized form of a string containing non-generic properties in the form of <code>&lt;property&gt;</code>.
+ * The string is split into literal parts and properties only once, rendering then takes a single pass over the parts.
+ *
+ * @author Jaromír Staněk
+ * @version 1.0
+ *
+ */
+public class StringTemplate {
+
+	/** Character marking the beginning of a property. */
+	public static final char PROPERTY_BEGIN = '<';
+	/** Character marking the end of a property. */
+	public static final char PROPERTY_END = '>';
+	/** Properties that are URL encoded when the template is rendered with encoding enabled. */
+	public static final String[] ENCODED_PROPERTIES = {
+		"path",
+		"source_path",
+		"destination_path"
+	};
+	/** Property with apostrophes escaped when the template is rendered without encoding and contains an apostrophe. */
+	public static final String ESCAPED_PROPERTY = "query";
+
+	/** Property value is inserted as it is. */
+	private static final int RULE_NONE = 0;
+	/** Property value is URL encoded, if encoding is enabled. */
+	private static final int RULE_ENCODE = 1;
+	/** Property value has apostrophes escaped, if encoding is disabled. */
+	private static final int RULE_ESCAPE = 2;
+
+	/** Characters that are left untouched by the URL encoding. */
+	private static final boolean[] UNRESERVED = new boolean[128];
+	/** Hexadecimal digits used in the URL encoding. */
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+	/** Charset used in the URL encoding. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			UNRESERVED[c] = true;
+		}
+		for (char c = 'A'; c <= 'Z'; c++) {
+			UNRESERVED[c] = true;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			UNRESERVED[c] = true;
+		}
+		UNRESERVED['.'] = true;
+		UNRESERVED['-'] = true;
+		UNRESERVED['_'] = true;
+		UNRESERVED['/'] = true;
+	}
+
+	/**
+	 * Splits the supplied string into literal parts and properties.
+	 * @param source String to be compiled.
+	 * @return Compiled template, or null if the source is null.
+	 */
+	public static StringTemplate compile(String source) {
+		if (source == null) {
+			return null;
+		}
+		List<String> literals = new ArrayList<>();
+		List<String> properties = new ArrayList<>();
+		int pos = 0;
+		while (true) {
+			int begin = source.indexOf(PROPERTY_BEGIN, pos);
+			int end = (begin == -1) ? -1 : source.indexOf(PROPERTY_END, begin + 1);
+			if (end == -1) {
+				literals.add(source.substring(pos));
+				break;
+			}
+			literals.add(source.substring(pos, begin));
+			properties.add(source.substring(begin + 1, end));
+			pos = end + 1;
+		}
+		int[] rules = new int[properties.size()];
+		for (int i = 0; i < rules.length; i++) {
+			String property = properties.get(i);
+			rules[i] = RULE_NONE;
+			for (String encoded: ENCODED_PROPERTIES) {
+				if (encoded.equals(property)) {
+					rules[i] = RULE_ENCODE;
+					break;
+				}
+			}
+			if (ESCAPED_PROPERTY.equals(property) && source.indexOf('\'') != -1) {
+				rules[i] = RULE_ESCAPE;
+			}
+		}
+		return new StringTemplate(source, literals.toArray(new String[literals.size()]), properties.toArray(new String[properties.size()]), rules);
+	}
+
+	/**
+	 * Creates a template without any properties. The value is used as it is.
+	 * @param value Literal value.
+	 * @return Template without properties, or null if the value is null.
+	 */
+	public static StringTemplate literal(String value) {
+		if (value == null) {
+			return null;
+		}
+		return new StringTemplate(value, new String[] { value }, new String[0], new int[0]);
+	}
+
+	/**
+	 * URL encodes the supplied value, leaving the path separators untouched.
+	 * @param sb Builder to append the encoded value to.
+	 * @param value Value to be encoded.
+	 */
+	private static void encode(StringBuilder sb, String value) {
+		int len = value.length();
+		int i = 0;
+		while (i < len) {
+			char c = value.charAt(i);
+			if (c < 128 && UNRESERVED[c]) {
+				sb.append(c);
+				i++;
+			} else {
+				/* encode the whole run of reserved characters at once to keep surrogate pairs together */
+				int j = i + 1;
+				while (j < len) {
+					char n = value.charAt(j);
+					if (n < 128 && UNRESERVED[n]) {
+						break;
+					}
+					j++;
+				}
+				for (byte b: value.substring(i, j).getBytes(UTF8)) {
+					sb.append('%');
+					sb.append(HEX_DIGITS[(b >> 4) & 0x0F]);
+					sb.append(HEX_DIGITS[b & 0x0F]);
+				}
+				i = j;
+			}
+		}
+	}
+
+	/**
+	 * Escapes apostrophes in the supplied value.
+	 * @param sb Builder to append the escaped value to.
+	 * @param value Value to be escaped.
+	 */
+	private static void escape(StringBuilder sb, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\'') {
+				sb.append('\\');
+			}
+			sb.append(c);
+		}
+	}
+
+	/** Original string. */
+	private final String source;
+	/** Literal parts of the string. There is always one more literal than properties. */
+	private final String[] literals;
+	/** Names of the properties between the literal parts. */
+	private final String[] properties;
+	/** Rules for inserting property values. */
+	private final int[] rules;
+	/** Sum of the lengths of all literal parts. */
+	private final int literalLength;
+
+	/**
+	 * Private ctor.
+	 * @param source Original string.
+	 * @param literals Literal parts of the string.
+	 * @param properties Names of the properties.
+	 * @param rules Rules for inserting property values.
+	 */
+	private StringTemplate(String source, String[] literals, String[] properties, int[] rules) {
+		this.source = source;
+		this.literals = literals;
+		this.properties = properties;
+		this.rules = rules;
+		int length = 0;
+		for (String literal: literals) {
+			length += literal.length();
+		}
+		this.literalLength = length;
+	}
+
+	/**
+	 * Returns the names of all the properties in the template.
+	 * @return Names of the properties.
+	 */
+	public String[] getProperties() {
+		return properties.clone();
+	}
+
+	/**
+	 * Returns the original string.
+	 * @return Original string.
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Determines if the template contains no properties.
+	 * @return If the template contains no properties.
+	 */
+	public boolean isLiteral() {
+		return (properties.length == 0);
+	}
+
+	/**
+	 * Replaces all the properties with the values supplied.
+	 * @param values Values of the properties.
+	 * @param encode If the path properties should be URL encoded.
+	 * @return String with the properties replaced.
+	 * @throws MultiCloudException If a property value is missing.
+	 */
+	public String render(Map<String, String> values, boolean encode) throws MultiCloudException {
+		if (properties.length == 0) {
+			return source;
+		}
+		StringBuilder sb = new StringBuilder(literalLength + 16 * properties.length);
+		for (int i = 0; i < properties.length; i++) {
+			sb.append(literals[i]);
+			String value = values.get(properties[i]);
+			if (value == null) {
+				throw new MultiCloudException("Missing parameter.");
+			}
+			if (encode && rules[i] == RULE_ENCODE) {
+				encode(sb, value);
+			} else if (!encode && rules[i] == RULE_ESCAPE) {
+				escape(sb, value);
+			} else {
+				sb.append(value);
+			}
+		}
+		sb.append(literals[properties.length]);
+		return sb.toString();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return source;
+	}
+
+}